@@ -2,10 +2,9 @@ package javato.activetesting;
 
 import javato.activetesting.activechecker.ActiveChecker;
 import javato.activetesting.analysis.AnalysisImpl;
-import javato.activetesting.hybridracedetection.HybridRaceTracker;
+import javato.activetesting.hybridracedetection.StripedRaceTracker;
 import javato.activetesting.lockset.LockSet;
-import javato.activetesting.lockset.LockSetTracker;
-import javato.activetesting.reentrant.IgnoreRentrantLock;
+import javato.activetesting.lockset.LocalLockSetTracker;
 import javato.activetesting.vc.VectorClockTracker;
 import javato.activetesting.common.Parameters;
 
@@ -42,97 +41,72 @@ import javato.activetesting.common.Parameters;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class PDataLockRaceAnalysis extends AnalysisImpl {
+    // no global lock; see StripedRaceTracker
     private VectorClockTracker vcTracker;
-    private LockSetTracker lsTracker;
-    private IgnoreRentrantLock ignoreRentrantLock;
-    private HybridRaceTracker eb;
+    private LocalLockSetTracker lsTracker;
+    private StripedRaceTracker eb;
 
     public void initialize() {
         synchronized (ActiveChecker.lock) {
             vcTracker = new VectorClockTracker();
-            lsTracker = new LockSetTracker();
-            ignoreRentrantLock = new IgnoreRentrantLock();
-            eb = new HybridRaceTracker();
+            lsTracker = new LocalLockSetTracker();
+            eb = new StripedRaceTracker();
         }
     }
 
     public void lockBefore(Integer iid, Integer thread, Integer lock, Object actualLock) {
-        synchronized (ActiveChecker.lock) {
-            if (ignoreRentrantLock.lockBefore(thread, lock)) {
-                if (Parameters.trackLockRaces) {
-                    LockSet ls = lsTracker.getLockSet(thread);
-                    Long mem = (long) lock;
-                    eb.checkRace(iid, thread, mem , false, vcTracker.getVectorClock(thread), ls,true,false);
-                    eb.addEvent(iid, thread, mem, false, vcTracker.getVectorClock(thread), ls);
-                }
-                boolean isDeadlock = lsTracker.lockBefore(iid, thread, lock);
+        if (Parameters.trackLockRaces) {
+            // checked before the lock is added to the lockset of thread
+            LockSet ls = lsTracker.getLockSet(thread);
+            if (!ls.contains(lock)) {
+                Long mem = (long) lock;
+                eb.checkRaceAndAddEvent(iid, thread, mem, false, vcTracker.getVectorClock(thread), ls, true, false);
             }
         }
+        lsTracker.lockBefore(iid, thread, lock);
     }
 
     public void unlockAfter(Integer iid, Integer thread, Integer lock) {
-        synchronized (ActiveChecker.lock) {
-            if (ignoreRentrantLock.unlockAfter(thread, lock)) {
-                lsTracker.unlockAfter(thread);
-            }
-        }
+        lsTracker.unlockAfter(thread, lock);
     }
 
     public void startBefore(Integer iid, Integer parent, Integer child) {
-        synchronized (ActiveChecker.lock) {
-            vcTracker.startBefore(parent, child);
-        }
+        vcTracker.startBefore(parent, child);
     }
 
     public void waitAfter(Integer iid, Integer thread, Integer lock) {
         if (!Parameters.trackLockRaces) {
-            synchronized (ActiveChecker.lock) {
-                vcTracker.waitAfter(thread, lock);
-            }
+            vcTracker.waitAfter(thread, lock);
         }
     }
 
     public void notifyBefore(Integer iid, Integer thread, Integer lock) {
         if (!Parameters.trackLockRaces) {
-            synchronized (ActiveChecker.lock) {
-                vcTracker.notifyBefore(thread, lock);
-            }
+            vcTracker.notifyBefore(thread, lock);
         }
     }
 
     public void notifyAllBefore(Integer iid, Integer thread, Integer lock) {
         if (!Parameters.trackLockRaces) {
-            synchronized (ActiveChecker.lock) {
-                vcTracker.notifyBefore(thread, lock);
-            }
+            vcTracker.notifyBefore(thread, lock);
         }
     }
 
     public void joinAfter(Integer iid, Integer parent, Integer child) {
-        synchronized (ActiveChecker.lock) {
-            vcTracker.joinAfter(parent, child);
-        }
+        vcTracker.joinAfter(parent, child);
     }
 
     public void readBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
-        synchronized (ActiveChecker.lock) {
-            LockSet ls = lsTracker.getLockSet(thread);
-            eb.checkRace(iid, thread, memory, true, vcTracker.getVectorClock(thread), ls, false,isVolatile);
-            eb.addEvent(iid, thread, memory, true, vcTracker.getVectorClock(thread), ls);
-        }
+        LockSet ls = lsTracker.getLockSet(thread);
+        eb.checkRaceAndAddEvent(iid, thread, memory, true, vcTracker.getVectorClock(thread), ls, false, isVolatile);
     }
 
     public void writeBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
-        synchronized (ActiveChecker.lock) {
-            LockSet ls = lsTracker.getLockSet(thread);
-            eb.checkRace(iid, thread, memory, false, vcTracker.getVectorClock(thread), ls, false,isVolatile);
-            eb.addEvent(iid, thread, memory, false, vcTracker.getVectorClock(thread), ls);
-        }
+        LockSet ls = lsTracker.getLockSet(thread);
+        eb.checkRaceAndAddEvent(iid, thread, memory, false, vcTracker.getVectorClock(thread), ls, false, isVolatile);
     }
 
     public void finish() {
-        synchronized (ActiveChecker.lock) {
-            eb.dumpRaces();
-        }
+        eb.dumpRaces();
     }
 }
@@ -2,10 +2,9 @@ package javato.activetesting;
 
 import javato.activetesting.activechecker.ActiveChecker;
 import javato.activetesting.analysis.AnalysisImpl;
-import javato.activetesting.hybridracedetection.HybridRaceTracker;
+import javato.activetesting.hybridracedetection.StripedRaceTracker;
 import javato.activetesting.lockset.LockSet;
-import javato.activetesting.lockset.LockSetTracker;
-import javato.activetesting.reentrant.IgnoreRentrantLock;
+import javato.activetesting.lockset.LocalLockSetTracker;
 import javato.activetesting.vc.VectorClockTracker;
 import javato.activetesting.common.Parameters;
 
@@ -42,82 +41,57 @@ import javato.activetesting.common.Parameters;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class PMissedNotifyAnalysis extends AnalysisImpl {
+    // no global lock; see StripedRaceTracker
     private VectorClockTracker vcTracker;
-    private LockSetTracker lsTracker;
-    private IgnoreRentrantLock ignoreRentrantLock;
-    private HybridRaceTracker eb;
+    private LocalLockSetTracker lsTracker;
+    private StripedRaceTracker eb;
 
     public void initialize() {
         synchronized (ActiveChecker.lock) {
             vcTracker = new VectorClockTracker();
-            lsTracker = new LockSetTracker();
-            ignoreRentrantLock = new IgnoreRentrantLock();
-            eb = new HybridRaceTracker();
+            lsTracker = new LocalLockSetTracker();
+            eb = new StripedRaceTracker();
         }
     }
 
     public void lockBefore(Integer iid, Integer thread, Integer lock, Object actualLock) {
-        synchronized (ActiveChecker.lock) {
-            if (ignoreRentrantLock.lockBefore(thread, lock)) {
-                lsTracker.lockBefore(iid, thread, lock);
-            }
-        }
+        lsTracker.lockBefore(iid, thread, lock);
     }
 
     public void waitBefore(Integer iid, Integer thread, Integer lock) {
-        synchronized (ActiveChecker.lock) {
-            Integer acquireIid = lsTracker.getLockAcquireIID(thread,lock);
-            Long mem = (long) lock;
-            eb.checkRace(acquireIid, thread, mem , false, vcTracker.getVectorClock(thread), LockSet.emptySet,true,false);
-            eb.addEvent(acquireIid, thread, mem, false, vcTracker.getVectorClock(thread), LockSet.emptySet);
-
-        }
+        Integer acquireIid = lsTracker.getLockAcquireIID(thread, lock);
+        Long mem = (long) lock;
+        eb.checkRaceAndAddEvent(acquireIid, thread, mem, false, vcTracker.getVectorClock(thread), LockSet.emptySet, true, false);
     }
 
     public void unlockAfter(Integer iid, Integer thread, Integer lock) {
-        synchronized (ActiveChecker.lock) {
-            if (ignoreRentrantLock.unlockAfter(thread, lock)) {
-                lsTracker.unlockAfter(thread);
-            }
-        }
+        lsTracker.unlockAfter(thread, lock);
     }
 
     public void startBefore(Integer iid, Integer parent, Integer child) {
-        synchronized (ActiveChecker.lock) {
-            vcTracker.startBefore(parent, child);
-        }
+        vcTracker.startBefore(parent, child);
     }
 
     public void waitAfter(Integer iid, Integer thread, Integer lock) {
     }
 
     public void notifyBefore(Integer iid, Integer thread, Integer lock) {
-        synchronized (ActiveChecker.lock) {
-            Integer acquireIid = lsTracker.getLockAcquireIID(thread,lock);
-            Long mem = (long) lock;
-            eb.checkRace(acquireIid, thread, mem , true, vcTracker.getVectorClock(thread), LockSet.emptySet,true,false);
-            eb.addEvent(acquireIid, thread, mem, true, vcTracker.getVectorClock(thread), LockSet.emptySet);
-        }
+        Integer acquireIid = lsTracker.getLockAcquireIID(thread, lock);
+        Long mem = (long) lock;
+        eb.checkRaceAndAddEvent(acquireIid, thread, mem, true, vcTracker.getVectorClock(thread), LockSet.emptySet, true, false);
     }
 
     public void notifyAllBefore(Integer iid, Integer thread, Integer lock) {
-        synchronized (ActiveChecker.lock) {
-            Integer acquireIid = lsTracker.getLockAcquireIID(thread,lock);
-            Long mem = (long) lock;
-            eb.checkRace(acquireIid, thread, mem , true, vcTracker.getVectorClock(thread), LockSet.emptySet,true,false);
-            eb.addEvent(acquireIid, thread, mem, true, vcTracker.getVectorClock(thread), LockSet.emptySet);
-        }
+        Integer acquireIid = lsTracker.getLockAcquireIID(thread, lock);
+        Long mem = (long) lock;
+        eb.checkRaceAndAddEvent(acquireIid, thread, mem, true, vcTracker.getVectorClock(thread), LockSet.emptySet, true, false);
     }
 
     public void joinAfter(Integer iid, Integer parent, Integer child) {
-        synchronized (ActiveChecker.lock) {
-            vcTracker.joinAfter(parent, child);
-        }
+        vcTracker.joinAfter(parent, child);
     }
 
     public void finish() {
-        synchronized (ActiveChecker.lock) {
-            eb.dumpRaces();
-        }
+        eb.dumpRaces();
     }
 }
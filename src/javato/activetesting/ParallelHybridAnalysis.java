@@ -0,0 +1,160 @@
+package javato.activetesting;
+
+import javato.activetesting.activechecker.ActiveChecker;
+import javato.activetesting.analysis.AnalysisImpl;
+import javato.activetesting.hybridracedetection.ShardedRaceTracker;
+import javato.activetesting.lockset.LockSet;
+import javato.activetesting.lockset.LockSetTracker;
+import javato.activetesting.reentrant.IgnoreRentrantLock;
+import javato.activetesting.vc.VectorClock;
+import javato.activetesting.vc.VectorClockTracker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class ParallelHybridAnalysis extends AnalysisImpl {
+    private VectorClockTracker vcTracker;
+    private LockSetTracker lsTracker;
+    private IgnoreRentrantLock ignoreRentrantLock;
+    private ShardedRaceTracker eb;
+    // immutable copies of a thread's vector clock and lockset, shared by all its
+    // accesses until its next synchronization event
+    private Map<Integer, VectorClock> vcSnapshots;
+    private Map<Integer, LockSet> lsSnapshots;
+
+    public void initialize() {
+        synchronized (ActiveChecker.lock) {
+            vcTracker = new VectorClockTracker();
+            lsTracker = new LockSetTracker();
+            ignoreRentrantLock = new IgnoreRentrantLock();
+            eb = new ShardedRaceTracker();
+            vcSnapshots = new HashMap<Integer, VectorClock>();
+            lsSnapshots = new HashMap<Integer, LockSet>();
+        }
+    }
+
+    private VectorClock getVectorClock(Integer thread) {
+        VectorClock vc = vcSnapshots.get(thread);
+        if (vc == null) {
+            vc = new VectorClock(vcTracker.getVectorClock(thread));
+            vcSnapshots.put(thread, vc);
+        }
+        return vc;
+    }
+
+    private LockSet getLockSet(Integer thread) {
+        LockSet ls = lsSnapshots.get(thread);
+        if (ls == null) {
+            ls = lsTracker.getLockSet(thread);
+            lsSnapshots.put(thread, ls);
+        }
+        return ls;
+    }
+
+    public void lockBefore(Integer iid, Integer thread, Integer lock, Object actualLock) {
+        synchronized (ActiveChecker.lock) {
+            if (ignoreRentrantLock.lockBefore(thread, lock)) {
+                boolean isDeadlock = lsTracker.lockBefore(iid, thread, lock);
+                lsSnapshots.remove(thread);
+            }
+        }
+    }
+
+    public void waitBefore(Integer iid, Integer thread, Integer lock) {
+        synchronized (ActiveChecker.lock) {
+            Integer acquireIid = lsTracker.getLockAcquireIID(thread, lock);
+            Long mem = (long) lock;
+            eb.checkRaceAndAddEvent(acquireIid, thread, mem, false, getVectorClock(thread), LockSet.emptySet, true, false);
+        }
+    }
+
+    public void unlockAfter(Integer iid, Integer thread, Integer lock) {
+        synchronized (ActiveChecker.lock) {
+            if (ignoreRentrantLock.unlockAfter(thread, lock)) {
+                lsTracker.unlockAfter(thread);
+                lsSnapshots.remove(thread);
+            }
+        }
+    }
+
+    public void startBefore(Integer iid, Integer parent, Integer child) {
+        synchronized (ActiveChecker.lock) {
+            vcTracker.startBefore(parent, child);
+            vcSnapshots.remove(parent);
+            vcSnapshots.remove(child);
+        }
+    }
+
+    public void notifyBefore(Integer iid, Integer thread, Integer lock) {
+        synchronized (ActiveChecker.lock) {
+            Integer acquireIid = lsTracker.getLockAcquireIID(thread, lock);
+            Long mem = (long) lock;
+            eb.checkRaceAndAddEvent(acquireIid, thread, mem, true, getVectorClock(thread), LockSet.emptySet, true, false);
+        }
+    }
+
+    public void notifyAllBefore(Integer iid, Integer thread, Integer lock) {
+        synchronized (ActiveChecker.lock) {
+            Integer acquireIid = lsTracker.getLockAcquireIID(thread, lock);
+            Long mem = (long) lock;
+            eb.checkRaceAndAddEvent(acquireIid, thread, mem, true, getVectorClock(thread), LockSet.emptySet, true, false);
+        }
+    }
+
+    public void joinAfter(Integer iid, Integer parent, Integer child) {
+        synchronized (ActiveChecker.lock) {
+            vcTracker.joinAfter(parent, child);
+            vcSnapshots.remove(parent);
+        }
+    }
+
+    public void readBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
+        synchronized (ActiveChecker.lock) {
+            eb.checkRaceAndAddEvent(iid, thread, memory, true, getVectorClock(thread), getLockSet(thread), false, isVolatile);
+        }
+    }
+
+    public void writeBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
+        synchronized (ActiveChecker.lock) {
+            eb.checkRaceAndAddEvent(iid, thread, memory, false, getVectorClock(thread), getLockSet(thread), false, isVolatile);
+        }
+    }
+
+    public void finish() {
+        synchronized (ActiveChecker.lock) {
+            eb.dumpRaces();
+        }
+    }
+}
@@ -1,12 +1,13 @@
 package javato.activetesting;
 
 import javato.activetesting.analysis.AnalysisImpl;
+import javato.activetesting.analysis.Observer;
 import javato.activetesting.analysis.ObserverForActiveTesting;
 import javato.activetesting.analysis.DeterministicAnalysisImpl;
 import javato.activetesting.hybridracedetection.CommutativePair;
 import javato.activetesting.hybridracedetection.HybridRaceTracker;
 import javato.activetesting.common.Parameters;
-import javato.activetesting.common.MutableLong;
+import javato.activetesting.common.IIDVisitCounter;
 import javato.activetesting.activechecker.ActiveChecker;
 import javato.activetesting.threadrepro.EqualObjectBreakpoint;
 import javato.activetesting.deterministicscheduler.StallBreaker;
@@ -15,8 +16,6 @@ import javato.activetesting.reentrant.IgnoreRentrantLock;
 import javato.activetesting.igoodlock.Pair;
 
 import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.TreeMap;
 import java.io.PrintWriter;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -55,7 +54,7 @@ import java.io.IOException;
  */
 public class PredictestAnalysis extends AnalysisImpl {
     private CommutativePair racePair;
-    private Map<Integer, MutableLong> iidVisitCount = new TreeMap<Integer, MutableLong>();;
+    private IIDVisitCounter iidVisitCount = new IIDVisitCounter(Observer.getIidCount());
     volatile private int done = 0;
     volatile private boolean isLock = false;
     volatile private EqualObjectBreakpoint eq1 = null, eq2 = null;
@@ -70,13 +69,7 @@ public class PredictestAnalysis extends AnalysisImpl {
 
     private long incAndGetVisitCount(Integer iid) {
         if (Parameters.LOG_IID_VISIT_COUNT) {
-            MutableLong l = iidVisitCount.get(iid);
-            if (l==null) {
-                l = new MutableLong(0);
-                iidVisitCount.put(iid,l);
-            }
-            (l.val)++;
-            return l.val;
+            return iidVisitCount.incAndGet(iid);
         }
         return 0;
     }
@@ -0,0 +1,146 @@
+package javato.activetesting;
+
+import java.io.IOException;
+
+import javato.activetesting.activechecker.ActiveChecker;
+import javato.activetesting.analysis.EventType;
+import javato.activetesting.analysis.PrimitiveAnalysisImpl;
+import javato.activetesting.common.Parameters;
+import javato.activetesting.trace.TraceWriter;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class TraceRecorderAnalysis extends PrimitiveAnalysisImpl {
+    private TraceWriter trace;
+
+    public void initialize() {
+        synchronized (ActiveChecker.lock) {
+            try {
+                trace = new TraceWriter(Parameters.TRACE_FILE);
+            } catch (IOException e) {
+                System.err.println("Cannot create trace file " + Parameters.TRACE_FILE);
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+    }
+
+    // after finish, the writer drops the events of the threads that are still running
+    private void record(int type, int iid, int x, int y, long memory) {
+        synchronized (ActiveChecker.lock) {
+            try {
+                trace.write(type, iid, x, y, memory);
+            } catch (IOException e) {
+                System.err.println("Cannot write trace file " + Parameters.TRACE_FILE);
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+    }
+
+    public void lockBefore(int iid, int thread, int lock, Object actualLock) {
+        record(EventType.LOCK_BEFORE, iid, thread, lock, 0);
+    }
+
+    public void unlockAfter(int iid, int thread, int lock) {
+        record(EventType.UNLOCK_AFTER, iid, thread, lock, 0);
+    }
+
+    public void newExprAfter(int iid, int object, int objOnWhichMethodIsInvoked) {
+        record(EventType.NEW_EXPR_AFTER, iid, object, objOnWhichMethodIsInvoked, 0);
+    }
+
+    public void methodEnterBefore(int iid, int thread) {
+        record(EventType.METHOD_ENTER_BEFORE, iid, thread, 0, 0);
+    }
+
+    public void methodExitAfter(int iid, int thread) {
+        record(EventType.METHOD_EXIT_AFTER, iid, thread, 0, 0);
+    }
+
+    public void startBefore(int iid, int parent, int child) {
+        record(EventType.START_BEFORE, iid, parent, child, 0);
+    }
+
+    public void startAfter(int iid, int parent, Object child) {
+        record(EventType.START_AFTER, iid, parent, 0, 0);
+    }
+
+    public void waitBefore(int iid, int thread, int lock) {
+        record(EventType.WAIT_BEFORE, iid, thread, lock, 0);
+    }
+
+    public void waitAfter(int iid, int thread, int lock) {
+        record(EventType.WAIT_AFTER, iid, thread, lock, 0);
+    }
+
+    public void notifyBefore(int iid, int thread, int lock) {
+        record(EventType.NOTIFY_BEFORE, iid, thread, lock, 0);
+    }
+
+    public void notifyAllBefore(int iid, int thread, int lock) {
+        record(EventType.NOTIFY_ALL_BEFORE, iid, thread, lock, 0);
+    }
+
+    public void joinAfter(int iid, int parent, int child) {
+        record(EventType.JOIN_AFTER, iid, parent, child, 0);
+    }
+
+    public void readBefore(int iid, int thread, long memory, boolean isVolatile) {
+        record(isVolatile ? EventType.VOLATILE_READ_BEFORE : EventType.READ_BEFORE, iid, thread, 0, memory);
+    }
+
+    public void writeBefore(int iid, int thread, long memory, boolean isVolatile) {
+        record(isVolatile ? EventType.VOLATILE_WRITE_BEFORE : EventType.WRITE_BEFORE, iid, thread, 0, memory);
+    }
+
+    public void openDeterministicBlock(int bid) {
+        record(EventType.OPEN_DETERMINISTIC_BLOCK, 0, bid, 0, 0);
+    }
+
+    public void closeDeterministicBlock(int bid) {
+        record(EventType.CLOSE_DETERMINISTIC_BLOCK, 0, bid, 0, 0);
+    }
+
+    public void finish() {
+        synchronized (ActiveChecker.lock) {
+            try {
+                trace.close();
+                System.out.println("Recorded " + trace.getNumberOfEvents() + " events to " + Parameters.TRACE_FILE);
+            } catch (IOException e) {
+                System.err.println("Cannot close trace file " + Parameters.TRACE_FILE);
+                e.printStackTrace();
+            }
+        }
+    }
+}
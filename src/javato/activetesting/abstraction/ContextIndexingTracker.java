@@ -2,6 +2,7 @@ package javato.activetesting.abstraction;
 
 import java.util.List;
 import java.util.LinkedList;
+import javato.activetesting.reentrant.ThreadLocal;
 
 /**
  * Copyright (c) 2007-2008,
@@ -36,47 +37,53 @@ import java.util.LinkedList;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class ContextIndexingTracker {
+    // keyed by thread id rather than by the current thread so that the tracker
+    // also works when events are delivered from another thread (see EventPipeline)
     public ThreadLocal contextStack = new ThreadLocal() {
-        protected synchronized Object initialValue() {
+        public Object initialValue() {
             return new ContextIndexingPerThread();
         }
     };
 
-    public void methodEnterBefore(Integer iid) {
-        ((ContextIndexingPerThread)contextStack.get()).methodEnterBefore(iid);
+    private ContextIndexingPerThread get(Integer thread) {
+        return (ContextIndexingPerThread) contextStack.get(thread);
     }
 
-    public void methodExitAfter(Integer iid) {
-        ((ContextIndexingPerThread)contextStack.get()).methodExitAfter(iid);
+    public void methodEnterBefore(Integer iid, Integer thread) {
+        get(thread).methodEnterBefore(iid);
     }
 
-    public void blockEnterBefore(Integer iid) {
-        ((ContextIndexingPerThread)contextStack.get()).blockEnterBefore(iid);
+    public void methodExitAfter(Integer iid, Integer thread) {
+        get(thread).methodExitAfter(iid);
     }
 
-    public void blockExitAfter(Integer iid) {
-        ((ContextIndexingPerThread)contextStack.get()).blockExitAfter(iid);
+    public void blockEnterBefore(Integer iid, Integer thread) {
+        get(thread).blockEnterBefore(iid);
     }
 
-    public void newExprAfter(Integer iid, Integer o, int k) {
-        ((ContextIndexingPerThread)contextStack.get()).newExprAfter(iid,o,k);
+    public void blockExitAfter(Integer iid, Integer thread) {
+        get(thread).blockExitAfter(iid);
     }
 
-    public void logIid(Integer iid) {
-	((ContextIndexingPerThread)contextStack.get()).logIid(iid);
+    public void newExprAfter(Integer iid, Integer thread, Integer o, int k) {
+        get(thread).newExprAfter(iid,o,k);
     }
 
-    public List<Integer> getContextForObjectCreation(Integer o) {
-        return ((ContextIndexingPerThread)contextStack.get()).getContextForObjectCreation(o);
+    public void logIid(Integer iid, Integer thread) {
+	get(thread).logIid(iid);
     }
 
-    public List<Integer> getContext(Integer iid, int k) {
-        return ((ContextIndexingPerThread)contextStack.get()).getContext(iid,k);
+    public List<Integer> getContextForObjectCreation(Integer thread, Integer o) {
+        return get(thread).getContextForObjectCreation(o);
+    }
+
+    public List<Integer> getContext(Integer iid, Integer thread, int k) {
+        return get(thread).getContext(iid,k);
 
     }
 
-    public List<Integer> getContext(Integer iid) {
-        return ((ContextIndexingPerThread)contextStack.get()).getContext(iid,Integer.MAX_VALUE);
+    public List<Integer> getContext(Integer iid, Integer thread) {
+        return get(thread).getContext(iid,Integer.MAX_VALUE);
 
     }
 
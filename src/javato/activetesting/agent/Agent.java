@@ -0,0 +1,105 @@
+package javato.activetesting.agent;
+
+import javato.activetesting.common.Parameters;
+
+import java.io.File;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.util.ArrayList;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class Agent {
+    public static final String OBSERVER = "javato.activetesting.analysis.ObserverForActiveTesting";
+    // class and field names that may be seen for the first time during a run
+    private static final int SYMBOL_HEADROOM = 1 << 20;
+
+    /**
+     * instruments application classes as they are loaded, instead of running
+     * InstrumentorForActiveTesting on them beforehand.  Run the program with
+     * -javaagent:lib/javato-agent.jar (see the agent target in build.xml); classes
+     * under the prefixes in javato.app.boot.list are instrumented too, although
+     * they are loaded by the boot loader.
+     *
+     * @param args
+     * @param inst
+     */
+    public static void premain(String args, Instrumentation inst) {
+        final IidRegistry registry = new IidRegistry(new File(Parameters.agentRegistryFile));
+        // the observer reads these when it is loaded, i.e. after premain; object
+        // ids start above every symbol this run can add
+        int firstObjectId = registry.getSymbolCount() + SYMBOL_HEADROOM;
+        registry.setSymbolLimit(firstObjectId);
+        IidRegistry.writeInteger(Parameters.usedObjectId, firstObjectId);
+        IidRegistry.writeInteger(Parameters.iidCountFile, registry.getIidCount());
+        IidRegistry.setActive(registry);
+
+        AgentTransformer transformer = new AgentTransformer(new ClassInstrumenter(registry, OBSERVER),
+                split(Parameters.agentBootList), split(Parameters.agentExcludeList));
+        inst.addTransformer(transformer, true);
+        if (inst.isRetransformClassesSupported()) {
+            ArrayList<Class> loaded = new ArrayList<Class>();
+            for (Class c : inst.getAllLoadedClasses()) {
+                if (c.getClassLoader() == null && inst.isModifiableClass(c)
+                        && transformer.isInstrumented(c.getName().replace('.', '/'), true)) {
+                    loaded.add(c);
+                }
+            }
+            if (!loaded.isEmpty()) {
+                try {
+                    inst.retransformClasses(loaded.toArray(new Class[loaded.size()]));
+                } catch (UnmodifiableClassException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                registry.save();
+            }
+        });
+    }
+
+    // javato.app.boot.list style: comma separated, with / or . between package names
+    private static String[] split(String list) {
+        ArrayList<String> ret = new ArrayList<String>();
+        for (String s : list.split(",")) {
+            s = s.trim().replace('.', '/');
+            if (s.length() > 0) {
+                ret.add(s);
+            }
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+}
@@ -0,0 +1,97 @@
+package javato.activetesting.agent;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class AgentTransformer implements ClassFileTransformer {
+    // the analysis itself, the bytecode library it runs on, and the JDK
+    private static final String[] EXCLUDED = {"javato/", "edu/berkeley/cs/detcheck/", "org/objectweb/asm/",
+            "java/", "javax/", "sun/", "com/sun/", "jdk/"};
+
+    private final ClassInstrumenter instrumenter;
+    private final String[] bootPrefixes;
+    private final String[] excluded;
+
+    /**
+     * @param instrumenter
+     * @param bootPrefixes prefixes of classes to instrument even if the boot loader loads them
+     * @param excluded     prefixes of further classes not to instrument
+     */
+    public AgentTransformer(ClassInstrumenter instrumenter, String[] bootPrefixes, String[] excluded) {
+        this.instrumenter = instrumenter;
+        this.bootPrefixes = bootPrefixes;
+        this.excluded = excluded;
+    }
+
+    /**
+     * tells whether classes with the given internal name are instrumented
+     *
+     * @param className
+     * @param isBoot    whether the class is loaded by the boot loader
+     * @return
+     */
+    public boolean isInstrumented(String className, boolean isBoot) {
+        if (className == null || className.startsWith("javato/")) {
+            return false;
+        }
+        if (startsWithAny(className, bootPrefixes)) {
+            return true;
+        }
+        return !isBoot && !startsWithAny(className, EXCLUDED) && !startsWithAny(className, excluded);
+    }
+
+    private static boolean startsWithAny(String s, String[] prefixes) {
+        for (String p : prefixes) {
+            if (p.length() > 0 && s.startsWith(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (!isInstrumented(className, loader == null)) {
+            return null;
+        }
+        try {
+            return instrumenter.instrument(loader, className, classfileBuffer);
+        } catch (Throwable e) {
+            // e.g. a class file newer than ASM understands; it runs uninstrumented
+            System.err.println("Not instrumenting " + className + ": " + e);
+            return null;
+        }
+    }
+}
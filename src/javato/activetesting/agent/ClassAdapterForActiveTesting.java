@@ -0,0 +1,103 @@
+package javato.activetesting.agent;
+
+import org.objectweb.asm.ClassAdapter;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class ClassAdapterForActiveTesting extends ClassAdapter {
+    final String observer;
+    final ClassHierarchy hierarchy;
+    private final IidRegistry registry;
+    private final Map<String, Integer> maxLocals;
+    private final int base;
+    private final List<String> lines;
+    private String fileName = "unknown.java";
+    private String packagePrefix = "";
+
+    /**
+     * @param cv
+     * @param observer  internal name of the class whose my* methods are called
+     * @param hierarchy
+     * @param registry  where symbols come from
+     * @param maxLocals max_locals of each method, keyed by name + descriptor
+     * @param base      the iid of the first instrumentation call
+     * @param lines     receives file.html#line of each iid handed out, in order
+     */
+    ClassAdapterForActiveTesting(ClassVisitor cv, String observer, ClassHierarchy hierarchy, IidRegistry registry,
+                                 Map<String, Integer> maxLocals, int base, List<String> lines) {
+        super(cv);
+        this.observer = observer;
+        this.hierarchy = hierarchy;
+        this.registry = registry;
+        this.maxLocals = maxLocals;
+        this.base = base;
+        this.lines = lines;
+    }
+
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        int sep = name.lastIndexOf('/');
+        packagePrefix = sep < 0 ? "" : name.substring(0, sep + 1);
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    public void visitSource(String source, String debug) {
+        if (source != null) {
+            fileName = packagePrefix + source;
+        }
+        super.visitSource(source, debug);
+    }
+
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+        Integer locals = maxLocals.get(name + desc);
+        if (mv == null || locals == null || (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0) {
+            return mv;
+        }
+        return new MethodAdapterForActiveTesting(this, mv, access, name, locals);
+    }
+
+    int newIid(int line) {
+        lines.add(fileName + ".html#" + line);
+        return base + lines.size() - 1;
+    }
+
+    int getSymbol(String name) {
+        return registry.getSymbol(name);
+    }
+}
@@ -0,0 +1,273 @@
+package javato.activetesting.agent;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class ClassHierarchy {
+    // weak, so that the cache of hierarchies, keyed by loader, does not keep loaders alive
+    private final WeakReference<ClassLoader> loader;
+    // internal name -> class, or null if its class file cannot be found
+    private final HashMap<String, ClassInfo> classes = new HashMap<String, ClassInfo>();
+
+    /**
+     * what the instrumentation needs to know about a class, read from its class
+     * file so that the class does not have to be loaded
+     */
+    static class ClassInfo implements ClassVisitor {
+        String name;
+        String superName;
+        String[] interfaces;
+        int access;
+        // field name -> access flags
+        final HashMap<String, Integer> fields = new HashMap<String, Integer>();
+        // method name + descriptor -> access flags
+        final HashMap<String, Integer> methods = new HashMap<String, Integer>();
+
+        boolean is(int flag) {
+            return (access & flag) != 0;
+        }
+
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.name = name;
+            this.access = access;
+            this.superName = superName;
+            this.interfaces = interfaces == null ? new String[0] : interfaces;
+        }
+
+        public void visitSource(String source, String debug) {
+        }
+
+        public void visitOuterClass(String owner, String name, String desc) {
+        }
+
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            return null;
+        }
+
+        public void visitAttribute(Attribute attr) {
+        }
+
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+        }
+
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            fields.put(name, access);
+            return null;
+        }
+
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            methods.put(name + desc, access);
+            return null;
+        }
+
+        public void visitEnd() {
+        }
+    }
+
+    /**
+     * a field or method together with the class that declares it
+     */
+    static class Member {
+        final ClassInfo owner;
+        final int access;
+
+        Member(ClassInfo owner, int access) {
+            this.owner = owner;
+            this.access = access;
+        }
+
+        boolean is(int flag) {
+            return (access & flag) != 0;
+        }
+    }
+
+    /**
+     * @param loader the loader whose classes are instrumented, or null for the boot loader
+     */
+    ClassHierarchy(ClassLoader loader) {
+        this.loader = loader == null ? null : new WeakReference<ClassLoader>(loader);
+    }
+
+    /**
+     * adds the class being instrumented, whose bytes we already have
+     *
+     * @param cr
+     * @return
+     */
+    synchronized ClassInfo add(ClassReader cr) {
+        ClassInfo c = new ClassInfo();
+        cr.accept(c, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        classes.put(c.name, c);
+        return c;
+    }
+
+    synchronized ClassInfo get(String name) {
+        if (classes.containsKey(name)) {
+            return classes.get(name);
+        }
+        ClassInfo c = null;
+        try {
+            byte[] bytes = read(name);
+            if (bytes != null) {
+                c = new ClassInfo();
+                new ClassReader(bytes).accept(c, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            }
+        } catch (Exception e) {
+            // a class file that ASM cannot parse is treated like a missing one
+            c = null;
+        }
+        classes.put(name, c);
+        return c;
+    }
+
+    private byte[] read(String name) throws IOException {
+        String path = name + ".class";
+        ClassLoader l = loader == null ? null : loader.get();
+        if (loader != null && l == null) {
+            return null;
+        }
+        InputStream in = l == null ? ClassLoader.getSystemResourceAsStream(path) : l.getResourceAsStream(path);
+        if (in == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * resolves a field reference the way the JVM does: the class itself, then
+     * its superinterfaces, then its superclass
+     *
+     * @param owner
+     * @param name
+     * @return the field, or null if some class on the way cannot be read
+     */
+    Member resolveField(String owner, String name) {
+        ClassInfo c = get(owner);
+        if (c == null) {
+            return null;
+        }
+        Integer access = c.fields.get(name);
+        if (access != null) {
+            return new Member(c, access);
+        }
+        for (String i : c.interfaces) {
+            Member m = resolveField(i, name);
+            if (m != null) {
+                return m;
+            }
+        }
+        return c.superName == null ? null : resolveField(c.superName, name);
+    }
+
+    /**
+     * resolves a method reference: the class and its superclasses, then the
+     * superinterfaces
+     *
+     * @param owner
+     * @param name
+     * @param desc
+     * @return the method, or null if it is not found
+     */
+    Member resolveMethod(String owner, String name, String desc) {
+        for (String s = owner; s != null;) {
+            ClassInfo c = get(s);
+            if (c == null) {
+                return null;
+            }
+            Integer access = c.methods.get(name + desc);
+            if (access != null) {
+                return new Member(c, access);
+            }
+            s = c.superName;
+        }
+        return resolveInterfaceMethod(owner, name + desc);
+    }
+
+    private Member resolveInterfaceMethod(String owner, String sig) {
+        ClassInfo c = get(owner);
+        if (c == null) {
+            return null;
+        }
+        for (String i : c.interfaces) {
+            ClassInfo ic = get(i);
+            if (ic == null) {
+                continue;
+            }
+            Integer access = ic.methods.get(sig);
+            if (access != null) {
+                return new Member(ic, access);
+            }
+            Member m = resolveInterfaceMethod(i, sig);
+            if (m != null) {
+                return m;
+            }
+        }
+        return c.superName == null ? null : resolveInterfaceMethod(c.superName, sig);
+    }
+
+    boolean isThreadSubType(String name) {
+        for (String s = name; s != null;) {
+            if (s.equals("java/lang/Thread")) {
+                return true;
+            }
+            ClassInfo c = get(s);
+            if (c == null) {
+                return false;
+            }
+            s = c.superName;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,211 @@
+package javato.activetesting.agent;
+
+import javato.activetesting.common.Parameters;
+import javato.activetesting.instrumentor.FuzzingTargets;
+import javato.activetesting.instrumentor.TargetedClassAdapter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class ClassInstrumenter {
+    private final IidRegistry registry;
+    private final String observer;
+    // everything besides the class bytes that the iids of a class depend on
+    private final String context;
+    private final FuzzingTargets targets;
+    private final WeakHashMap<ClassLoader, ClassHierarchy> hierarchies = new WeakHashMap<ClassLoader, ClassHierarchy>();
+
+    /**
+     * @param registry
+     * @param observerClass the class whose my* methods the instrumented code calls,
+     *                      normally javato.activetesting.analysis.ObserverForActiveTesting
+     */
+    public ClassInstrumenter(IidRegistry registry, String observerClass) {
+        this(registry, observerClass, Parameters.instrTargeted ? FuzzingTargets.read(Parameters.ERROR_LOG_FILE) : null);
+    }
+
+    /**
+     * @param registry
+     * @param observerClass
+     * @param targets       if not null, only the calls the active checker needs
+     *                      for these targets are kept; iids are unaffected
+     */
+    public ClassInstrumenter(IidRegistry registry, String observerClass, FuzzingTargets targets) {
+        this.registry = registry;
+        this.observer = observerClass.replace('.', '/');
+        this.targets = targets;
+        StringBuilder sb = new StringBuilder();
+        sb.append(Parameters.ignoreArrays).append(Parameters.ignoreMethods).append(Parameters.ignoreAlloc)
+                .append(Parameters.ignoreFields).append(Parameters.ignoreConcurrency).append(observer);
+        try {
+            sb.append(hash(readAll(MethodAdapterForActiveTesting.class.getResourceAsStream("MethodAdapterForActiveTesting.class"))));
+        } catch (Exception e) {
+            // then classes keep their iids when only the agent changes
+        }
+        try {
+            context = hash(sb.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * returns the instrumented class file, or null if nothing in it is instrumented.
+     * A class keeps the iids it got the first time it was instrumented, in this
+     * run or an earlier one, as long as its bytes do not change.
+     *
+     * @param loader    the defining loader, or null for the boot loader
+     * @param className internal name
+     * @param bytes
+     * @return
+     */
+    public byte[] instrument(ClassLoader loader, String className, byte[] bytes) {
+        ClassReader cr = new ClassReader(bytes);
+        ClassHierarchy hierarchy = getHierarchy(loader);
+        hierarchy.add(cr);
+        HashMap<String, Integer> maxLocals = readMaxLocals(cr);
+        String key = hash(bytes) + ":" + context;
+        int base = registry.lookup(className, key);
+        ArrayList<String> lines = new ArrayList<String>();
+        byte[] ret = transform(cr, hierarchy, maxLocals, Math.max(base, 0), lines);
+        if (lines.isEmpty()) {
+            return null;
+        }
+        if (base < 0) {
+            // the number of iids is only known now
+            base = registry.allocate(className, key, lines);
+            if (base != 0) {
+                lines.clear();
+                ret = transform(cr, hierarchy, maxLocals, base, lines);
+            }
+        }
+        return ret;
+    }
+
+    private byte[] transform(ClassReader cr, ClassHierarchy hierarchy, HashMap<String, Integer> maxLocals,
+                             int base, ArrayList<String> lines) {
+        // stack map frames are copied as they are: no branches are added and
+        // the temporaries lie above every local the frames describe
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        ClassVisitor cv = targets == null ? cw : new TargetedClassAdapter(cw, observer, targets);
+        cr.accept(new ClassAdapterForActiveTesting(cv, observer, hierarchy, registry, maxLocals, base, lines), 0);
+        return cw.toByteArray();
+    }
+
+    private synchronized ClassHierarchy getHierarchy(ClassLoader loader) {
+        ClassHierarchy h = hierarchies.get(loader);
+        if (h == null) {
+            h = new ClassHierarchy(loader);
+            hierarchies.put(loader, h);
+        }
+        return h;
+    }
+
+    // max_locals of each method, keyed by name + descriptor, read straight from the Code attributes
+    private static HashMap<String, Integer> readMaxLocals(ClassReader cr) {
+        HashMap<String, Integer> ret = new HashMap<String, Integer>();
+        char[] buf = new char[cr.b.length];
+        // access, this_class, super_class, interfaces
+        int u = cr.header + 6;
+        u += 2 + 2 * cr.readUnsignedShort(u);
+        int n = cr.readUnsignedShort(u);
+        u += 2;
+        for (; n > 0; n--) {
+            // access, name, descriptor, attributes
+            u = skipAttributes(cr, u + 6);
+        }
+        n = cr.readUnsignedShort(u);
+        u += 2;
+        for (; n > 0; n--) {
+            String method = cr.readUTF8(u + 2, buf) + cr.readUTF8(u + 4, buf);
+            int v = u + 8;
+            for (int a = cr.readUnsignedShort(u + 6); a > 0; a--) {
+                if (cr.readUTF8(v, buf).equals("Code")) {
+                    // max_stack, max_locals
+                    ret.put(method, cr.readUnsignedShort(v + 8));
+                }
+                v += 6 + cr.readInt(v + 2);
+            }
+            u = v;
+        }
+        return ret;
+    }
+
+    // u points to an attributes_count; returns the offset just after the attributes
+    private static int skipAttributes(ClassReader cr, int u) {
+        int v = u + 2;
+        for (int a = cr.readUnsignedShort(u); a > 0; a--) {
+            v += 6 + cr.readInt(v + 2);
+        }
+        return v;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] d = MessageDigest.getInstance("MD5").digest(bytes);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : d) {
+                sb.append(Integer.toHexString((b >> 4) & 0xf)).append(Integer.toHexString(b & 0xf));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package javato.activetesting.agent;
+
+import javato.activetesting.common.IidToLineIndex;
+import javato.activetesting.common.Parameters;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class IidRegistry {
+    private static final int VERSION = 1;
+
+    // the registry of the running agent, if any
+    private static volatile IidRegistry active = null;
+
+    private final File file;
+    private State state;
+    // symbol indices must stay below the first object id, which is fixed at startup
+    private int symbolLimit = Integer.MAX_VALUE;
+
+    private static class Entry implements Serializable {
+        String key;
+        int base;
+        int count;
+    }
+
+    private static class State implements Serializable {
+        int version = VERSION;
+        // class name -> the iid range given to it
+        HashMap<String, Entry> classes = new HashMap<String, Entry>();
+        // iid -> file.html#line, as in iidToLine.map
+        ArrayList<String> lines = new ArrayList<String>();
+        HashMap<String, Integer> symbols = new HashMap<String, Integer>();
+    }
+
+    /**
+     * opens the registry saved in file, or starts an empty one if there is none
+     *
+     * @param file
+     */
+    public IidRegistry(File file) {
+        this.file = file;
+        state = load(file);
+        if (state == null || state.version != VERSION) {
+            state = new State();
+        }
+    }
+
+    private static State load(File f) {
+        if (f == null || !f.exists()) {
+            return null;
+        }
+        try {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(f)));
+            try {
+                return (State) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            System.err.println("Ignoring unreadable iid registry " + f + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * returns the first iid of the class if it was instrumented before with
+     * the same key, or -1
+     *
+     * @param className
+     * @param key       hash of the class bytes and the instrumentation flags
+     * @return
+     */
+    public synchronized int lookup(String className, String key) {
+        Entry e = state.classes.get(className);
+        if (e != null && e.key.equals(key)) {
+            return e.base;
+        }
+        return -1;
+    }
+
+    /**
+     * gives the class a fresh range of lines.size() iids, unless it already has
+     * one for the same key; iids are never reused, so a changed class does not
+     * inherit the iids of its old version
+     *
+     * @param className
+     * @param key
+     * @param lines     file.html#line of each iid of the class
+     * @return the first iid of the range
+     */
+    public synchronized int allocate(String className, String key, List<String> lines) {
+        Entry e = state.classes.get(className);
+        if (e != null && e.key.equals(key) && e.count == lines.size()) {
+            return e.base;
+        }
+        e = new Entry();
+        e.key = key;
+        e.base = state.lines.size();
+        e.count = lines.size();
+        state.lines.addAll(lines);
+        state.classes.put(className, e);
+        return e.base;
+    }
+
+    /**
+     * returns the index of a class or field name, numbered from 1 as by
+     * the SymbolTables of the offline instrumentor
+     *
+     * @param name
+     * @return
+     */
+    public synchronized int getSymbol(String name) {
+        Integer ret = state.symbols.get(name);
+        if (ret == null) {
+            ret = state.symbols.size() + 1;
+            if (ret >= symbolLimit) {
+                System.err.println("More than " + (symbolLimit - 1) + " class and field names; remove "
+                        + Parameters.agentRegistryFile + " and run again");
+                System.exit(1);
+            }
+            state.symbols.put(name, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * returns one more than the largest symbol index, like SymbolTables.getSize
+     *
+     * @return
+     */
+    public synchronized int getSymbolCount() {
+        return state.symbols.size() + 1;
+    }
+
+    public synchronized void setSymbolLimit(int limit) {
+        symbolLimit = limit;
+    }
+
+    public synchronized int getIidCount() {
+        return state.lines.size();
+    }
+
+    /**
+     * returns file#line of an iid, or null if it is not known
+     *
+     * @param iid
+     * @return
+     */
+    public synchronized String getLine(int iid) {
+        if (iid < 0 || iid >= state.lines.size()) {
+            return null;
+        }
+        String s = state.lines.get(iid);
+        int sep = s.lastIndexOf(".html#");
+        return sep < 0 ? s : s.substring(0, sep) + s.substring(sep + 5);
+    }
+
+    /**
+     * writes the registry, and iidToLine.map, iidToLine.idx and javato.iidcount
+     * for the tools that read those after the run
+     */
+    public synchronized void save() {
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeObject(state);
+            out.close();
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(Parameters.iidToLineMapFile)));
+            out.writeObject(state.lines);
+            out.close();
+            IidToLineIndex.write(Parameters.iidToLineIndexFile, state.lines);
+            writeInteger(Parameters.iidCountFile, state.lines.size());
+        } catch (IOException e) {
+            System.err.println("Error while writing " + file);
+            e.printStackTrace();
+        }
+    }
+
+    static void writeInteger(String file, int val) {
+        try {
+            PrintWriter pw = new PrintWriter(new FileWriter(file));
+            pw.println(val);
+            pw.close();
+        } catch (IOException e) {
+            System.err.println("Error while writing to " + file);
+            System.exit(1);
+        }
+    }
+
+    public static IidRegistry getActive() {
+        return active;
+    }
+
+    public static void setActive(IidRegistry r) {
+        active = r;
+    }
+
+    /**
+     * returns file#line of an iid handed out by the running agent, or null
+     *
+     * @param iid
+     * @return
+     */
+    public static String lookupLine(int iid) {
+        IidRegistry r = active;
+        return r == null ? null : r.getLine(iid);
+    }
+}
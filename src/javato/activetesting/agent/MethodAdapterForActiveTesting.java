@@ -0,0 +1,478 @@
+package javato.activetesting.agent;
+
+import javato.activetesting.common.Parameters;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodAdapter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class MethodAdapterForActiveTesting extends MethodAdapter implements Opcodes {
+    private static final String DETERMINISM = "edu/berkeley/cs/detcheck/Determinism";
+    private static final String OBJECT_INT = "(ILjava/lang/Object;I)V";
+    private static final String INT_OBJECT = "(ILjava/lang/Object;)V";
+
+    private static final int NONSYNC = 0;
+    private static final int SYNC = 1;
+    private static final int UNKNOWN = 2;
+
+    private final ClassAdapterForActiveTesting cls;
+    private final boolean isStatic;
+    private final boolean isConstructor;
+    // temporaries go above the method's own locals
+    private final int firstTemp;
+    private int line = 0;
+    // false in a constructor until it has called this() or super()
+    private boolean thisInitialized;
+    // objects created by NEW whose constructor has not been called yet; TRUE once DUPed
+    private final ArrayList<Boolean> pendingNews = new ArrayList<Boolean>();
+    private boolean afterNew = false;
+
+    MethodAdapterForActiveTesting(ClassAdapterForActiveTesting cls, MethodVisitor mv, int access, String name, int maxLocals) {
+        super(mv);
+        this.cls = cls;
+        isStatic = (access & ACC_STATIC) != 0;
+        isConstructor = name.equals("<init>");
+        thisInitialized = !isConstructor;
+        firstTemp = maxLocals;
+    }
+
+    private int newIid() {
+        return cls.newIid(line);
+    }
+
+    private void push(int v) {
+        if (v >= -1 && v <= 5) {
+            mv.visitInsn(ICONST_0 + v);
+        } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, v);
+        } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, v);
+        } else {
+            mv.visitLdcInsn(v);
+        }
+    }
+
+    private void call(String name, String desc) {
+        mv.visitMethodInsn(INVOKESTATIC, cls.observer, name, desc);
+    }
+
+    // calls name(iid)
+    private void callWithIid(String name, int iid) {
+        push(iid);
+        call(name, "(I)V");
+    }
+
+    // calls name(iid, the object in local)
+    private void callWithLocal(String name, int iid, int local) {
+        push(iid);
+        mv.visitVarInsn(ALOAD, local);
+        call(name, INT_OBJECT);
+    }
+
+    public void visitLineNumber(int line, Label start) {
+        this.line = line;
+        super.visitLineNumber(line, start);
+    }
+
+    public void visitLabel(Label label) {
+        afterNew = false;
+        super.visitLabel(label);
+    }
+
+    public void visitInsn(int opcode) {
+        if (opcode == DUP && afterNew) {
+            pendingNews.set(pendingNews.size() - 1, Boolean.TRUE);
+        }
+        afterNew = false;
+        if (opcode >= IALOAD && opcode <= SALOAD && !Parameters.ignoreArrays) {
+            // arr idx -> arr idx arr idx iid -> arr idx iid arr idx
+            mv.visitInsn(DUP2);
+            push(newIid());
+            mv.visitInsn(DUP_X2);
+            mv.visitInsn(POP);
+            call("myReadBefore", OBJECT_INT);
+        } else if (opcode >= IASTORE && opcode <= SASTORE && !Parameters.ignoreArrays) {
+            Type t = arrayElementType(opcode);
+            mv.visitVarInsn(t.getOpcode(ISTORE), firstTemp);
+            mv.visitInsn(DUP2);
+            push(newIid());
+            mv.visitInsn(DUP_X2);
+            mv.visitInsn(POP);
+            call("myWriteBefore", OBJECT_INT);
+            mv.visitVarInsn(t.getOpcode(ILOAD), firstTemp);
+        } else if (opcode == MONITORENTER && !Parameters.ignoreConcurrency) {
+            mv.visitInsn(DUP);
+            push(newIid());
+            mv.visitInsn(SWAP);
+            call("myLockBefore", INT_OBJECT);
+        } else if (opcode == MONITOREXIT && !Parameters.ignoreConcurrency) {
+            int iid = newIid();
+            mv.visitInsn(DUP);
+            mv.visitInsn(MONITOREXIT);
+            push(iid);
+            mv.visitInsn(SWAP);
+            call("myUnlockAfter", INT_OBJECT);
+            return;
+        }
+        super.visitInsn(opcode);
+    }
+
+    private static Type arrayElementType(int storeOpcode) {
+        switch (storeOpcode) {
+            case LASTORE:
+                return Type.LONG_TYPE;
+            case FASTORE:
+                return Type.FLOAT_TYPE;
+            case DASTORE:
+                return Type.DOUBLE_TYPE;
+            case AASTORE:
+                return Type.getType(Object.class);
+            default:
+                return Type.INT_TYPE;
+        }
+    }
+
+    public void visitIntInsn(int opcode, int operand) {
+        afterNew = false;
+        super.visitIntInsn(opcode, operand);
+        if (opcode == NEWARRAY) {
+            newExprAfter();
+        }
+    }
+
+    public void visitVarInsn(int opcode, int var) {
+        afterNew = false;
+        super.visitVarInsn(opcode, var);
+    }
+
+    public void visitTypeInsn(int opcode, String type) {
+        afterNew = false;
+        super.visitTypeInsn(opcode, type);
+        if (opcode == NEW) {
+            pendingNews.add(Boolean.FALSE);
+            afterNew = true;
+        } else if (opcode == ANEWARRAY) {
+            newExprAfter();
+        }
+    }
+
+    public void visitMultiANewArrayInsn(String desc, int dims) {
+        afterNew = false;
+        super.visitMultiANewArrayInsn(desc, dims);
+        newExprAfter();
+    }
+
+    public void visitJumpInsn(int opcode, Label label) {
+        afterNew = false;
+        super.visitJumpInsn(opcode, label);
+    }
+
+    public void visitLdcInsn(Object cst) {
+        afterNew = false;
+        super.visitLdcInsn(cst);
+    }
+
+    public void visitIincInsn(int var, int increment) {
+        afterNew = false;
+        super.visitIincInsn(var, increment);
+    }
+
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label[] labels) {
+        afterNew = false;
+        super.visitTableSwitchInsn(min, max, dflt, labels);
+    }
+
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        afterNew = false;
+        super.visitLookupSwitchInsn(dflt, keys, labels);
+    }
+
+    // the new object or array is on top of the stack
+    private void newExprAfter() {
+        if (Parameters.ignoreAlloc || (!isStatic && !thisInitialized)) {
+            // this cannot be passed before super() returns
+            return;
+        }
+        mv.visitInsn(DUP);
+        push(newIid());
+        mv.visitInsn(SWAP);
+        if (isStatic) {
+            call("myNewExprInAStaticMethodAfter", INT_OBJECT);
+        } else {
+            mv.visitVarInsn(ALOAD, 0);
+            call("myNewExprInANonStaticMethodAfter", "(ILjava/lang/Object;Ljava/lang/Object;)V");
+        }
+    }
+
+    public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+        afterNew = false;
+        boolean isInstance = opcode == GETFIELD || opcode == PUTFIELD;
+        if (Parameters.ignoreFields
+                || (isInstance && isConstructor && (!thisInitialized || name.equals("this$0") || name.startsWith("val$")))) {
+            super.visitFieldInsn(opcode, owner, name, desc);
+            return;
+        }
+        ClassHierarchy.Member f = cls.hierarchy.resolveField(owner, name);
+        boolean isVolatile = f != null && f.is(ACC_VOLATILE);
+        boolean isRead = opcode == GETFIELD || opcode == GETSTATIC;
+        String hook = isRead ? (isVolatile ? "myVReadBefore" : "myReadBefore")
+                : (isVolatile ? "myVWriteBefore" : "myWriteBefore");
+        if (isInstance) {
+            if (opcode == GETFIELD) {
+                mv.visitInsn(DUP);
+            } else if (Type.getType(desc).getSize() == 2) {
+                // obj v -> v obj v -> v obj -> obj v obj
+                mv.visitInsn(DUP2_X1);
+                mv.visitInsn(POP2);
+                mv.visitInsn(DUP_X2);
+            } else {
+                // obj v -> obj v obj v -> obj v obj
+                mv.visitInsn(DUP2);
+                mv.visitInsn(POP);
+            }
+            push(newIid());
+            mv.visitInsn(SWAP);
+            push(cls.getSymbol(name));
+            call(hook, OBJECT_INT);
+        } else {
+            String declaringClass = f == null ? owner : f.owner.name;
+            push(newIid());
+            push(cls.getSymbol(declaringClass.replace('/', '.')));
+            push(cls.getSymbol(name));
+            call(hook, "(III)V");
+        }
+        super.visitFieldInsn(opcode, owner, name, desc);
+    }
+
+    public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+        afterNew = false;
+        if (name.equals("<init>")) {
+            visitConstructorCall(opcode, owner, name, desc);
+        } else if (opcode == INVOKESTATIC) {
+            visitStaticCall(owner, name, desc);
+        } else {
+            visitInstanceCall(opcode, owner, name, desc);
+        }
+    }
+
+    private void visitConstructorCall(int opcode, String owner, String name, String desc) {
+        boolean isNew = opcode == INVOKESPECIAL && !pendingNews.isEmpty();
+        boolean isDuped = isNew && pendingNews.remove(pendingNews.size() - 1);
+        int enterIid = Parameters.ignoreMethods ? -1 : newIid();
+        int exitIid = Parameters.ignoreMethods ? -1 : newIid();
+        if (enterIid >= 0) {
+            callWithIid("myMethodEnterBefore", enterIid);
+        }
+        super.visitMethodInsn(opcode, owner, name, desc);
+        if (exitIid >= 0) {
+            callWithIid("myMethodExitAfter", exitIid);
+        }
+        if (!isNew && isConstructor) {
+            thisInitialized = true;
+        }
+        if (isDuped) {
+            newExprAfter();
+        }
+    }
+
+    private void visitStaticCall(String owner, String name, String desc) {
+        int enterIid = Parameters.ignoreMethods ? -1 : newIid();
+        int exitIid = Parameters.ignoreMethods ? -1 : newIid();
+        String lockClass = null;
+        int lockIid = -1, unlockIid = -1, classSymbol = 0;
+        if (!Parameters.ignoreConcurrency) {
+            ClassHierarchy.Member m = cls.hierarchy.resolveMethod(owner, name, desc);
+            if (m != null && m.is(ACC_SYNCHRONIZED)) {
+                lockClass = m.owner.name.replace('/', '.');
+                classSymbol = cls.getSymbol(lockClass);
+                lockIid = newIid();
+                unlockIid = newIid();
+            }
+        }
+        String detHook = null;
+        if (owner.equals(DETERMINISM) && desc.equals("()V")) {
+            if (name.equals("openDeterministicBlock")) {
+                detHook = "myOpenDeterministicBlock";
+            } else if (name.equals("closeDeterministicBlock")) {
+                detHook = "myCloseDeterministicBlock";
+            }
+        }
+        int detIid = detHook == null ? -1 : newIid();
+
+        if (enterIid >= 0) {
+            callWithIid("myMethodEnterBefore", enterIid);
+        }
+        if (lockClass != null) {
+            push(lockIid);
+            push(classSymbol);
+            mv.visitLdcInsn(lockClass);
+            call("myLockBefore", "(IILjava/lang/String;)V");
+        }
+        if (detHook != null) {
+            callWithIid(detHook, detIid);
+        }
+        super.visitMethodInsn(INVOKESTATIC, owner, name, desc);
+        if (lockClass != null) {
+            push(unlockIid);
+            push(classSymbol);
+            call("myUnlockAfter", "(II)V");
+        }
+        if (exitIid >= 0) {
+            callWithIid("myMethodExitAfter", exitIid);
+        }
+    }
+
+    private void visitInstanceCall(int opcode, String owner, String name, String desc) {
+        String before = null, after = null;
+        if (!Parameters.ignoreConcurrency) {
+            boolean noArgs = desc.equals("()V");
+            boolean timed = desc.equals("(J)V") || desc.equals("(JI)V");
+            if (name.equals("wait") && (noArgs || timed)) {
+                before = "myWaitBefore";
+                after = "myWaitAfter";
+            } else if (name.equals("notify") && noArgs) {
+                before = "myNotifyBefore";
+            } else if (name.equals("notifyAll") && noArgs) {
+                before = "myNotifyAllBefore";
+            } else if (name.equals("start") && noArgs && cls.hierarchy.isThreadSubType(owner)) {
+                before = "myStartBefore";
+                after = "myStartAfter";
+            } else if (name.equals("join") && (noArgs || timed) && cls.hierarchy.isThreadSubType(owner)) {
+                after = "myJoinAfter";
+            }
+        }
+        int beforeIid = before == null ? -1 : newIid();
+        int afterIid = after == null ? -1 : newIid();
+        int enterIid = Parameters.ignoreMethods ? -1 : newIid();
+        int exitIid = Parameters.ignoreMethods ? -1 : newIid();
+        int status = Parameters.ignoreConcurrency ? NONSYNC : getSyncStatus(opcode, owner, name, desc);
+        int lockIid = status == NONSYNC ? -1 : newIid();
+        int unlockIid = status == NONSYNC ? -1 : newIid();
+
+        if (before == null && after == null && status == NONSYNC) {
+            if (enterIid >= 0) {
+                callWithIid("myMethodEnterBefore", enterIid);
+            }
+            super.visitMethodInsn(opcode, owner, name, desc);
+            if (exitIid >= 0) {
+                callWithIid("myMethodExitAfter", exitIid);
+            }
+            return;
+        }
+
+        // the hooks need the receiver, which is below the arguments: park the
+        // arguments and the receiver in temporaries
+        Type[] args = Type.getArgumentTypes(desc);
+        int[] slots = new int[args.length];
+        int next = firstTemp;
+        for (int i = 0; i < args.length; i++) {
+            slots[i] = next;
+            next += args[i].getSize();
+        }
+        int receiver = next;
+        for (int i = args.length - 1; i >= 0; i--) {
+            mv.visitVarInsn(args[i].getOpcode(ISTORE), slots[i]);
+        }
+        mv.visitVarInsn(ASTORE, receiver);
+
+        if (before != null) {
+            callWithLocal(before, beforeIid, receiver);
+        }
+        if (enterIid >= 0) {
+            callWithIid("myMethodEnterBefore", enterIid);
+        }
+        if (status == SYNC) {
+            callWithLocal("myLockBeforeCall", lockIid, receiver);
+        } else if (status == UNKNOWN) {
+            push(lockIid);
+            mv.visitVarInsn(ALOAD, receiver);
+            mv.visitLdcInsn(subSignature(name, args));
+            call("myLockBefore", "(ILjava/lang/Object;Ljava/lang/String;)V");
+        }
+
+        mv.visitVarInsn(ALOAD, receiver);
+        for (int i = 0; i < args.length; i++) {
+            mv.visitVarInsn(args[i].getOpcode(ILOAD), slots[i]);
+        }
+        super.visitMethodInsn(opcode, owner, name, desc);
+
+        if (status != NONSYNC) {
+            push(unlockIid);
+            push(lockIid);
+            call("myUnlockAfterCall", "(II)V");
+        }
+        if (exitIid >= 0) {
+            callWithIid("myMethodExitAfter", exitIid);
+        }
+        if (after != null) {
+            callWithLocal(after, afterIid, receiver);
+        }
+    }
+
+    /**
+     * like VisitorForActiveTesting.getSyncStatus, but only calls that cannot
+     * dispatch are decided here: the classes that could override a method
+     * may not have been loaded yet
+     */
+    private int getSyncStatus(int opcode, String owner, String name, String desc) {
+        if (owner.startsWith("[")) {
+            // clone() of an array
+            return NONSYNC;
+        }
+        ClassHierarchy.Member m = cls.hierarchy.resolveMethod(owner, name, desc);
+        if (m == null) {
+            return UNKNOWN;
+        }
+        ClassHierarchy.ClassInfo c = cls.hierarchy.get(owner);
+        if (opcode == INVOKESPECIAL || m.is(ACC_PRIVATE) || m.is(ACC_FINAL)
+                || m.owner.is(ACC_FINAL) || (c != null && c.is(ACC_FINAL))) {
+            return m.is(ACC_SYNCHRONIZED) ? SYNC : NONSYNC;
+        }
+        return UNKNOWN;
+    }
+
+    // the Soot sub-signature without return type, e.g. foo(int,java.lang.String)
+    private static String subSignature(String name, Type[] args) {
+        StringBuilder sb = new StringBuilder(name).append('(');
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(args[i].getClassName());
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,129 @@
+package javato.activetesting.analysis;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class AnalysisAdapter implements PrimitiveAnalysis {
+    // an analysis written against the boxed interface, e.g. HybridAnalysis
+    private Analysis next;
+
+    public AnalysisAdapter(Analysis next) {
+        this.next = next;
+    }
+
+    public Analysis getAnalysis() {
+        return next;
+    }
+
+    public void initialize() {
+    }
+
+    public void lockBefore(int iid, int thread, int lock, Object actualLock) {
+        next.lockBefore(iid, thread, lock, actualLock);
+    }
+
+    public void unlockAfter(int iid, int thread, int lock) {
+        next.unlockAfter(iid, thread, lock);
+    }
+
+    public void newExprAfter(int iid, int object, int objOnWhichMethodIsInvoked) {
+        next.newExprAfter(iid, object, objOnWhichMethodIsInvoked);
+    }
+
+    public void methodEnterBefore(int iid, int thread) {
+        next.methodEnterBefore(iid, thread);
+    }
+
+    public void methodExitAfter(int iid, int thread) {
+        next.methodExitAfter(iid, thread);
+    }
+
+    public void startBefore(int iid, int parent, int child) {
+        next.startBefore(iid, parent, child);
+    }
+
+    public void startAfter(int iid, int parent, Object child) {
+        next.startAfter(iid, parent, child);
+    }
+
+    public void waitBefore(int iid, int thread, int lock) {
+        next.waitBefore(iid, thread, lock);
+    }
+
+    public void waitAfter(int iid, int thread, int lock) {
+        next.waitAfter(iid, thread, lock);
+    }
+
+    public void notifyBefore(int iid, int thread, int lock) {
+        next.notifyBefore(iid, thread, lock);
+    }
+
+    public void notifyAllBefore(int iid, int thread, int lock) {
+        next.notifyAllBefore(iid, thread, lock);
+    }
+
+    public void joinAfter(int iid, int parent, int child) {
+        next.joinAfter(iid, parent, child);
+    }
+
+    public void readBefore(int iid, int thread, long memory, boolean isVolatile) {
+        next.readBefore(iid, thread, memory, isVolatile);
+    }
+
+    public void writeBefore(int iid, int thread, long memory, boolean isVolatile) {
+        next.writeBefore(iid, thread, memory, isVolatile);
+    }
+
+    public void writeAfter(int iid, Thread thread, String local, Object value, String type) {
+        next.writeAfter(iid, thread, local, value, type);
+    }
+
+    public void openDeterministicBlock(int bid) {
+        next.openDeterministicBlock(bid);
+    }
+
+    public void closeDeterministicBlock(int bid) {
+        next.closeDeterministicBlock(bid);
+    }
+
+    public void requireDeterministic(int thread, Object invariant) {
+        next.requireDeterministic(thread, invariant);
+    }
+
+    public void assertDeterministic(int thread, Object invariant) {
+        next.assertDeterministic(thread, invariant);
+    }
+
+    public void finish() {
+        next.finish();
+    }
+}
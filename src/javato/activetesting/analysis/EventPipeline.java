@@ -0,0 +1,328 @@
+package javato.activetesting.analysis;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class EventPipeline implements PrimitiveAnalysis {
+    private static final int WORDS_PER_EVENT = 4;
+    private static final int SPINS_BEFORE_PARK = 64;
+    private static final long PARK_NANOS = 50000;
+
+    private final PrimitiveAnalysis next;
+    private final int capacity;
+    // global ticket; the consumer delivers events in ticket order, which is the
+    // order in which they would have been serialized on ActiveChecker.lock
+    private final AtomicLong sequence = new AtomicLong(0);
+    private volatile EventBuffer[] buffers = new EventBuffer[0];
+    private final Consumer consumer;
+    private volatile boolean closing = false;
+    private volatile boolean closed = false;
+
+    private final ThreadLocal<EventBuffer> buffer = new ThreadLocal<EventBuffer>() {
+        protected EventBuffer initialValue() {
+            EventBuffer b = new EventBuffer(Thread.currentThread(), capacity);
+            register(b);
+            return b;
+        }
+    };
+
+    /**
+     * single producer (the owning thread), single consumer ring of encoded events
+     */
+    private static final class EventBuffer {
+        final Thread owner;
+        final long[] words;
+        final Object[] objects;
+        final int mask;
+        volatile long head = 0;
+        volatile long tail = 0;
+
+        EventBuffer(Thread owner, int capacity) {
+            this.owner = owner;
+            words = new long[capacity * WORDS_PER_EVENT];
+            objects = new Object[capacity];
+            mask = capacity - 1;
+        }
+
+        long peek() {
+            long h = head;
+            if (h == tail) {
+                return -1;
+            }
+            return words[((int) h & mask) * WORDS_PER_EVENT];
+        }
+    }
+
+    private class Consumer extends Thread {
+        Consumer() {
+            super("javato-event-consumer");
+            setDaemon(true);
+        }
+
+        public void run() {
+            long ticket = 0;
+            EventBuffer last = null;
+            int idle = 0;
+            while (true) {
+                EventBuffer b = (last != null && last.peek() == ticket) ? last : find(ticket);
+                if (b != null) {
+                    deliver(b);
+                    ticket++;
+                    last = b;
+                    idle = 0;
+                } else if (closing && ticket == sequence.get()) {
+                    break;
+                } else if (++idle < SPINS_BEFORE_PARK) {
+                    Thread.yield();
+                } else {
+                    if (idle == SPINS_BEFORE_PARK) {
+                        reap();
+                    }
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+            closed = true;
+        }
+    }
+
+    /**
+     * @param next       the analysis that receives the events, always from the consumer thread
+     * @param finishHook the shutdown hook next registered for itself, or null; the pipeline
+     *                   takes it over so that next.finish() runs only after the buffers are drained
+     * @param capacity   events per thread buffer, rounded up to a power of two
+     */
+    public EventPipeline(PrimitiveAnalysis next, Thread finishHook, int capacity) {
+        this.next = next;
+        int n = 1;
+        while (n < capacity) n <<= 1;
+        this.capacity = n;
+        if (finishHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(finishHook);
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+            }
+        }
+        consumer = new Consumer();
+        consumer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                EventPipeline.this.finish();
+            }
+        });
+    }
+
+    public PrimitiveAnalysis getAnalysis() {
+        return next;
+    }
+
+    private synchronized void register(EventBuffer b) {
+        EventBuffer[] old = buffers;
+        EventBuffer[] bs = new EventBuffer[old.length + 1];
+        System.arraycopy(old, 0, bs, 0, old.length);
+        bs[old.length] = b;
+        buffers = bs;
+    }
+
+    // drops the buffers of terminated threads once they have been drained
+    private synchronized void reap() {
+        EventBuffer[] old = buffers;
+        int live = 0;
+        for (EventBuffer b : old) {
+            if (b.owner.isAlive() || b.head != b.tail) live++;
+        }
+        if (live == old.length) {
+            return;
+        }
+        EventBuffer[] bs = new EventBuffer[live];
+        int i = 0;
+        for (EventBuffer b : old) {
+            if (b.owner.isAlive() || b.head != b.tail) bs[i++] = b;
+        }
+        buffers = bs;
+    }
+
+    private EventBuffer find(long ticket) {
+        for (EventBuffer b : buffers) {
+            if (b.peek() == ticket) {
+                return b;
+            }
+        }
+        return null;
+    }
+
+    private void deliver(EventBuffer b) {
+        long h = b.head;
+        int slot = (int) h & b.mask;
+        int w = slot * WORDS_PER_EVENT;
+        long typeAndIid = b.words[w + 1];
+        long xy = b.words[w + 2];
+        long memory = b.words[w + 3];
+        Object o = b.objects[slot];
+        b.objects[slot] = null;
+        try {
+            EventType.dispatch(next, (int) (typeAndIid >>> 32), (int) typeAndIid, (int) (xy >>> 32), (int) xy, memory, o);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        b.head = h + 1;
+    }
+
+    private void publish(int type, int iid, int x, int y, long memory, Object o) {
+        EventBuffer b = buffer.get();
+        long tail = b.tail;
+        if (tail - b.head >= capacity && !awaitSpace(b, tail)) {
+            return;
+        }
+        int slot = (int) tail & b.mask;
+        int w = slot * WORDS_PER_EVENT;
+        b.words[w] = sequence.getAndIncrement();
+        b.words[w + 1] = ((long) type << 32) | (iid & 0xffffffffL);
+        b.words[w + 2] = ((long) x << 32) | (y & 0xffffffffL);
+        b.words[w + 3] = memory;
+        b.objects[slot] = o;
+        b.tail = tail + 1;
+    }
+
+    // space is reserved before a ticket is taken, so the consumer never waits on a full buffer
+    private boolean awaitSpace(EventBuffer b, long tail) {
+        int spins = 0;
+        while (tail - b.head >= capacity) {
+            if (closed) {
+                return false;
+            }
+            if (++spins < SPINS_BEFORE_PARK) {
+                Thread.yield();
+            } else {
+                LockSupport.unpark(consumer);
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        return true;
+    }
+
+    public void initialize() {
+    }
+
+    public void lockBefore(int iid, int thread, int lock, Object actualLock) {
+        publish(EventType.LOCK_BEFORE, iid, thread, lock, 0, actualLock);
+    }
+
+    public void unlockAfter(int iid, int thread, int lock) {
+        publish(EventType.UNLOCK_AFTER, iid, thread, lock, 0, null);
+    }
+
+    public void newExprAfter(int iid, int object, int objOnWhichMethodIsInvoked) {
+        publish(EventType.NEW_EXPR_AFTER, iid, object, objOnWhichMethodIsInvoked, 0, null);
+    }
+
+    public void methodEnterBefore(int iid, int thread) {
+        publish(EventType.METHOD_ENTER_BEFORE, iid, thread, 0, 0, null);
+    }
+
+    public void methodExitAfter(int iid, int thread) {
+        publish(EventType.METHOD_EXIT_AFTER, iid, thread, 0, 0, null);
+    }
+
+    public void startBefore(int iid, int parent, int child) {
+        publish(EventType.START_BEFORE, iid, parent, child, 0, null);
+    }
+
+    public void startAfter(int iid, int parent, Object child) {
+        publish(EventType.START_AFTER, iid, parent, 0, 0, child);
+    }
+
+    public void waitBefore(int iid, int thread, int lock) {
+        publish(EventType.WAIT_BEFORE, iid, thread, lock, 0, null);
+    }
+
+    public void waitAfter(int iid, int thread, int lock) {
+        publish(EventType.WAIT_AFTER, iid, thread, lock, 0, null);
+    }
+
+    public void notifyBefore(int iid, int thread, int lock) {
+        publish(EventType.NOTIFY_BEFORE, iid, thread, lock, 0, null);
+    }
+
+    public void notifyAllBefore(int iid, int thread, int lock) {
+        publish(EventType.NOTIFY_ALL_BEFORE, iid, thread, lock, 0, null);
+    }
+
+    public void joinAfter(int iid, int parent, int child) {
+        publish(EventType.JOIN_AFTER, iid, parent, child, 0, null);
+    }
+
+    public void readBefore(int iid, int thread, long memory, boolean isVolatile) {
+        publish(isVolatile ? EventType.VOLATILE_READ_BEFORE : EventType.READ_BEFORE, iid, thread, 0, memory, null);
+    }
+
+    public void writeBefore(int iid, int thread, long memory, boolean isVolatile) {
+        publish(isVolatile ? EventType.VOLATILE_WRITE_BEFORE : EventType.WRITE_BEFORE, iid, thread, 0, memory, null);
+    }
+
+    public void writeAfter(int iid, Thread thread, String local, Object value, String type) {
+        publish(EventType.WRITE_AFTER, iid, 0, 0, 0, new Object[]{thread, local, value, type});
+    }
+
+    public void openDeterministicBlock(int bid) {
+        publish(EventType.OPEN_DETERMINISTIC_BLOCK, 0, bid, 0, 0, null);
+    }
+
+    public void closeDeterministicBlock(int bid) {
+        publish(EventType.CLOSE_DETERMINISTIC_BLOCK, 0, bid, 0, 0, null);
+    }
+
+    public void requireDeterministic(int thread, Object invariant) {
+        publish(EventType.REQUIRE_DETERMINISTIC, 0, thread, 0, 0, invariant);
+    }
+
+    public void assertDeterministic(int thread, Object invariant) {
+        publish(EventType.ASSERT_DETERMINISTIC, 0, thread, 0, 0, invariant);
+    }
+
+    /**
+     * drains all buffers into the analysis and then finishes it
+     */
+    public void finish() {
+        closing = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        next.finish();
+    }
+}
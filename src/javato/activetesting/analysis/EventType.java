@@ -0,0 +1,150 @@
+package javato.activetesting.analysis;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public final class EventType {
+    // one constant per PrimitiveAnalysis callback; volatile accesses get their own type
+    public static final int LOCK_BEFORE = 0;
+    public static final int UNLOCK_AFTER = 1;
+    public static final int NEW_EXPR_AFTER = 2;
+    public static final int METHOD_ENTER_BEFORE = 3;
+    public static final int METHOD_EXIT_AFTER = 4;
+    public static final int START_BEFORE = 5;
+    public static final int START_AFTER = 6;
+    public static final int WAIT_BEFORE = 7;
+    public static final int WAIT_AFTER = 8;
+    public static final int NOTIFY_BEFORE = 9;
+    public static final int NOTIFY_ALL_BEFORE = 10;
+    public static final int JOIN_AFTER = 11;
+    public static final int READ_BEFORE = 12;
+    public static final int VOLATILE_READ_BEFORE = 13;
+    public static final int WRITE_BEFORE = 14;
+    public static final int VOLATILE_WRITE_BEFORE = 15;
+    public static final int WRITE_AFTER = 16;
+    public static final int OPEN_DETERMINISTIC_BLOCK = 17;
+    public static final int CLOSE_DETERMINISTIC_BLOCK = 18;
+    public static final int REQUIRE_DETERMINISTIC = 19;
+    public static final int ASSERT_DETERMINISTIC = 20;
+
+    public static final int N_TYPES = 21;
+
+    private EventType() {
+    }
+
+    /**
+     * delivers an encoded event to an analysis.  An event is the tuple
+     * (type, iid, x, y, memory, o) where x is the thread (or the parent, the
+     * new object, or the block id), y is the lock (or the child, or the receiver
+     * of a new expression), memory is the accessed location and o carries the
+     * actual lock, the child thread, the invariant, or for WRITE_AFTER an
+     * Object[] {thread, local, value, type}.
+     *
+     * @param a
+     * @param type
+     * @param iid
+     * @param x
+     * @param y
+     * @param memory
+     * @param o
+     */
+    public static void dispatch(PrimitiveAnalysis a, int type, int iid, int x, int y, long memory, Object o) {
+        switch (type) {
+            case LOCK_BEFORE:
+                a.lockBefore(iid, x, y, o);
+                break;
+            case UNLOCK_AFTER:
+                a.unlockAfter(iid, x, y);
+                break;
+            case NEW_EXPR_AFTER:
+                a.newExprAfter(iid, x, y);
+                break;
+            case METHOD_ENTER_BEFORE:
+                a.methodEnterBefore(iid, x);
+                break;
+            case METHOD_EXIT_AFTER:
+                a.methodExitAfter(iid, x);
+                break;
+            case START_BEFORE:
+                a.startBefore(iid, x, y);
+                break;
+            case START_AFTER:
+                a.startAfter(iid, x, o);
+                break;
+            case WAIT_BEFORE:
+                a.waitBefore(iid, x, y);
+                break;
+            case WAIT_AFTER:
+                a.waitAfter(iid, x, y);
+                break;
+            case NOTIFY_BEFORE:
+                a.notifyBefore(iid, x, y);
+                break;
+            case NOTIFY_ALL_BEFORE:
+                a.notifyAllBefore(iid, x, y);
+                break;
+            case JOIN_AFTER:
+                a.joinAfter(iid, x, y);
+                break;
+            case READ_BEFORE:
+                a.readBefore(iid, x, memory, false);
+                break;
+            case VOLATILE_READ_BEFORE:
+                a.readBefore(iid, x, memory, true);
+                break;
+            case WRITE_BEFORE:
+                a.writeBefore(iid, x, memory, false);
+                break;
+            case VOLATILE_WRITE_BEFORE:
+                a.writeBefore(iid, x, memory, true);
+                break;
+            case WRITE_AFTER:
+                Object[] args = (Object[]) o;
+                a.writeAfter(iid, (Thread) args[0], (String) args[1], args[2], (String) args[3]);
+                break;
+            case OPEN_DETERMINISTIC_BLOCK:
+                a.openDeterministicBlock(x);
+                break;
+            case CLOSE_DETERMINISTIC_BLOCK:
+                a.closeDeterministicBlock(x);
+                break;
+            case REQUIRE_DETERMINISTIC:
+                a.requireDeterministic(x, o);
+                break;
+            case ASSERT_DETERMINISTIC:
+                a.assertDeterministic(x, o);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type " + type);
+        }
+    }
+}
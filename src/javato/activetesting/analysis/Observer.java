@@ -1,7 +1,9 @@
 package javato.activetesting.analysis;
 
+import javato.activetesting.agent.IidRegistry;
+import javato.activetesting.common.ObjectIdMap;
+import javato.activetesting.common.IidToLineIndex;
 import javato.activetesting.common.Parameters;
-import javato.activetesting.common.WeakIdentityHashMap;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -40,11 +42,25 @@ import java.util.ArrayList;
  */
 public class Observer {
 
-    private static WeakIdentityHashMap objectMap = new WeakIdentityHashMap(3511);
-    private static int currentId = readInteger(Parameters.usedObjectId, 1);
+    private static ObjectIdMap objectMap = new ObjectIdMap(readInteger(Parameters.usedObjectId, 1));
+    // iidToLine.idx, mapped on first use; iidToLineMap is only read if there is none
+    private static volatile IidToLineIndex iidToLineIndex = null;
+    private static volatile boolean noIidToLineIndex = false;
     private static ArrayList<String> iidToLineMap = null;
+    private static final int iidCount = readInteger(Parameters.iidCountFile, 0);
+
+    // id of the current thread, looked up in objectMap once per thread, and its call stack
+    private static java.lang.ThreadLocal<ThreadContext> context = new java.lang.ThreadLocal<ThreadContext>() {
+        protected ThreadContext initialValue() {
+            return new ThreadContext(objectMap.getId(Thread.currentThread()));
+        }
+    };
 
     public static Long idInt(int f, int s) {
+        return primitiveIdInt(f, s);
+    }
+
+    public static long primitiveIdInt(int f, int s) {
         long l = f;
         l = l << 32;
         l += s;
@@ -52,15 +68,41 @@ public class Observer {
     }
 
     public static String getIidToLine(Integer iid) {
+        // under the load-time agent the files are only written when the program exits
+        String line = IidRegistry.lookupLine(iid);
+        if (line != null) {
+            return line;
+        }
+        IidToLineIndex index = iidToLineIndex;
+        if (index == null && !noIidToLineIndex) {
+            index = openIidToLineIndex();
+        }
+        if (index == null) {
+            return getIidToLineFromMap(iid);
+        }
+        return index.get(iid);
+    }
+
+    private static synchronized IidToLineIndex openIidToLineIndex() {
+        if (iidToLineIndex == null && !noIidToLineIndex) {
+            try {
+                iidToLineIndex = IidToLineIndex.open(Parameters.iidToLineIndexFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            noIidToLineIndex = iidToLineIndex == null;
+        }
+        return iidToLineIndex;
+    }
+
+    // for runs instrumented before iidToLine.idx was written
+    private static synchronized String getIidToLineFromMap(Integer iid) {
         ObjectInputStream in;
-        if (iidToLineMap != null) {
-            return iidToLineMap.get(iid).replaceAll(".html#", "#");
-        } else {
+        if (iidToLineMap == null) {
             try {
                 in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(Parameters.iidToLineMapFile)));
                 iidToLineMap = (ArrayList<String>) in.readObject();
                 in.close();
-                return iidToLineMap.get(iid).replaceAll(".html#", "#");
             } catch (IOException e) {
                 e.printStackTrace();
                 return null;
@@ -69,30 +111,71 @@ public class Observer {
                 return null;
             }
         }
+        String s = iidToLineMap.get(iid);
+        int sep = s.lastIndexOf(".html#");
+        return sep < 0 ? s : s.substring(0, sep) + s.substring(sep + 5);
     }
 
-    synchronized public static Integer uniqueId(Object o) {
-        Object val = objectMap.get(o);
-        if (val == null) {
-            val = currentId++;
-            objectMap.put(o, val);
-        }
-        return (Integer) val;
+    /**
+     * returns the number of iids used by the instrumented code, or 0 if unknown
+     *
+     * @return
+     */
+    public static int getIidCount() {
+        return iidCount;
     }
 
-    synchronized public static Object idToObject(int id) {
-        for (Object ret : objectMap.keySet()) {
-            Integer val = (Integer) objectMap.get(ret);
-            if (val != null) {
-                if (val == id)
-                    return ret;
-            }
+    public static Integer uniqueId(Object o) {
+        return objectMap.getId(o);
+    }
+
+    public static int primitiveUniqueId(Object o) {
+        return objectMap.getId(o);
+    }
+
+    /**
+     * returns uniqueId(Thread.currentThread()) without going through the object map
+     *
+     * @return
+     */
+    public static int currentThreadId() {
+        return context.get().threadId;
+    }
+
+    static ThreadContext currentContext() {
+        return context.get();
+    }
+
+    public static Object idToObject(int id) {
+        Object ret = objectMap.getObject(id);
+        if (ret == null) {
+            return "Unknown Object";
         }
-        return "Unknown Object";
+        return ret;
+    }
+
+    /**
+     * makes pollCollectedObjectId report the objects collected from now on
+     */
+    public static void trackCollectedObjects() {
+        objectMap.trackCollectedIds();
+    }
+
+    /**
+     * returns the id of an object that has been garbage collected, or -1
+     *
+     * @return
+     */
+    public static int pollCollectedObjectId() {
+        return objectMap.pollCollectedId();
     }
 
     public static Long id(Object o, int x) {
-        return idInt(uniqueId(o), x);
+        return primitiveIdInt(objectMap.getId(o), x);
+    }
+
+    public static long primitiveId(Object o, int x) {
+        return primitiveIdInt(objectMap.getId(o), x);
     }
 
     static public int readInteger(String filename, int defaultVal) {
@@ -1,9 +1,9 @@
 package javato.activetesting.analysis;
 
+import javato.activetesting.common.AdaptiveSampler;
 import javato.activetesting.common.Parameters;
 import javato.activetesting.common.IIDAccessCounter;
 
-import java.util.LinkedList;
 
 /**
  * Copyright (c) 2007-2008,
@@ -39,20 +39,40 @@ import java.util.LinkedList;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class ObserverForActiveTesting extends Observer {
-    private static SyncMethodCache cache = new SyncMethodCache();
+    private static SyncMethodCache cache = new SyncMethodCache(getIidCount());
+    private static StaticLockTable staticLocks = new StaticLockTable(readInteger(Parameters.usedObjectId, 1));
     public static Analysis analysis;
+    public static PrimitiveAnalysis primitiveAnalysis;
     //private static AtomicLong counter = new AtomicLong(0);
     //private static boolean stopRW = false;
-    private static IIDAccessCounter counters = new IIDAccessCounter();
+    private static IIDAccessCounter counters = new IIDAccessCounter(getIidCount());
+    private static AdaptiveSampler sampler = Parameters.sampleAccesses ? new AdaptiveSampler() : null;
 
     static {
         System.out.println("Analysis class " + Parameters.analysisClass);
         if (Parameters.analysisClass != null) {
             try {
                 Class t = Class.forName(Parameters.analysisClass);
-                analysis = (Analysis) t.newInstance();
-                if (Parameters.isDeterministicSchedule) {
-                    analysis = new DeterministicAnalysisImpl(analysis);
+                Object a = t.newInstance();
+                if (a instanceof PrimitiveAnalysis) {
+                    if (Parameters.isDeterministicSchedule) {
+                        System.err.println("Deterministic scheduling is not supported for PrimitiveAnalysis " + Parameters.analysisClass);
+                        System.exit(1);
+                    }
+                    primitiveAnalysis = (PrimitiveAnalysis) a;
+                } else {
+                    analysis = (Analysis) a;
+                    if (Parameters.isDeterministicSchedule) {
+                        analysis = new DeterministicAnalysisImpl(analysis);
+                    }
+                    primitiveAnalysis = new AnalysisAdapter(analysis);
+                }
+                if (Parameters.asyncAnalysis) {
+                    if (Parameters.isDeterministicSchedule || a instanceof CheckerAnalysisImpl) {
+                        System.err.println("Asynchronous event delivery is not supported for active checker " + Parameters.analysisClass);
+                        System.exit(1);
+                    }
+                    primitiveAnalysis = new EventPipeline(primitiveAnalysis, a instanceof Thread ? (Thread) a : null, Parameters.asyncBufferSize);
                 }
 
             } catch (Exception e) {
@@ -64,210 +84,236 @@ public class ObserverForActiveTesting extends Observer {
     }
 
 
-    public static java.lang.ThreadLocal lockStack = new java.lang.ThreadLocal() {
-        protected synchronized Object initialValue() {
-            return new LinkedList();
-        }
-    };
-
-    public static java.lang.ThreadLocal iidStack = new java.lang.ThreadLocal() {
-        protected synchronized Object initialValue() {
-            return new LinkedList<Integer>();
-        }
-    };
-
     public static void myMethodEnterBefore(int iid) {
-        analysis.methodEnterBefore(iid, uniqueId(Thread.currentThread()));
+        primitiveAnalysis.methodEnterBefore(iid, currentThreadId());
     }
 
     public static void myMethodExitAfter(int iid) {
-        analysis.methodExitAfter(iid, uniqueId(Thread.currentThread()));
-    }
-
-
+        primitiveAnalysis.methodExitAfter(iid, currentThreadId());
+    }
+
+
+    /**
+     * called before a call that the instrumentor found to be always synchronized
+     * on lock; paired with myUnlockAfterCall(_, iid)
+     *
+     * @param iid
+     * @param lock
+     */
+    public static void myLockBeforeCall(int iid, Object lock) {
+        ThreadContext c = currentContext();
+        int lockId = primitiveUniqueId(lock);
+        c.pushCall(iid, lockId);
+        primitiveAnalysis.lockBefore(iid, c.threadId, lockId, lock);
+    }
+
+    /**
+     * called before a call whose target may or may not be synchronized,
+     * depending on the class of lock; paired with myUnlockAfterCall(_, iid)
+     *
+     * @param iid
+     * @param lock
+     * @param sig
+     */
     public static void myLockBefore(int iid, Object lock, String sig) {
-        boolean isSynchronized = cache.isSynchronized(iid, lock, sig);
-        if (isSynchronized) {
-            ((LinkedList) lockStack.get()).addFirst(lock);
-            analysis.lockBefore(iid, uniqueId(Thread.currentThread()), uniqueId(lock),lock);
+        ThreadContext c = currentContext();
+        if (cache.isSynchronized(iid, lock, sig)) {
+            int lockId = primitiveUniqueId(lock);
+            c.pushCall(iid, lockId);
+            primitiveAnalysis.lockBefore(iid, c.threadId, lockId, lock);
         } else {
-            ((LinkedList) lockStack.get()).addFirst(null);
+            c.pushCall(iid, ThreadContext.NO_LOCK);
         }
-        ((LinkedList<Integer>) iidStack.get()).addFirst(iid);
     }
 
     public static void myLockBefore(int iid, int oid, String className) {
-        Class c = null;
-        try {
-            c = Class.forName(className);
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-        }
-        analysis.lockBefore(iid, uniqueId(Thread.currentThread()), oid, c);
+        primitiveAnalysis.lockBefore(iid, currentThreadId(), oid, staticLocks.get(oid, className));
     }
 
     public static void myLockBefore(int iid, Object lock) {
-        analysis.lockBefore(iid, uniqueId(Thread.currentThread()), uniqueId(lock),lock);
+        primitiveAnalysis.lockBefore(iid, currentThreadId(), primitiveUniqueId(lock),lock);
+    }
+
+    /**
+     * called after a call that was preceded by myLockBefore(entryIid, lock, sig).
+     * Calls that were left by an exception never reach their own
+     * myUnlockAfterCall, so their entries are popped and released here too.
+     *
+     * @param iid
+     * @param entryIid
+     */
+    public static void myUnlockAfterCall(int iid, int entryIid) {
+        ThreadContext c = currentContext();
+        while (!c.isEmpty()) {
+            boolean matched = c.topEntryIid() == entryIid;
+            int lockId = c.popCall();
+            if (lockId != ThreadContext.NO_LOCK) {
+                primitiveAnalysis.unlockAfter(iid, c.threadId, lockId);
+            }
+            if (matched) {
+                return;
+            }
+        }
+        assert false : "no myLockBefore for iid " + entryIid + " in thread " + c.threadId;
     }
 
+    // classes instrumented before myUnlockAfterCall existed allocate the two iids in a row
     public static void myUnlockAfter(int iid) {
-        LinkedList ls = ((LinkedList) lockStack.get());
-        LinkedList<Integer> is = ((LinkedList<Integer>) iidStack.get());
-        Object lock = ls.removeFirst();
-        int entryIid = is.removeFirst();
-        while (iid != entryIid + 1) { // this is a hack; needs better handling in future
-            if (lock != null) {
-                analysis.unlockAfter(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
-            }
-            lock = ls.removeFirst();
-            entryIid = is.removeFirst();
-        }
-        if (iid != entryIid + 1) {
-            System.out.println("thread " + uniqueId(Thread.currentThread()));
-        }
-        assert iid == entryIid + 1;
-        if (lock != null) {
-            analysis.unlockAfter(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
-        }
+        myUnlockAfterCall(iid, iid - 1);
     }
 
     public static void myUnlockAfter(int iid, int oid) {
-        analysis.unlockAfter(iid, uniqueId(Thread.currentThread()), oid);
+        primitiveAnalysis.unlockAfter(iid, currentThreadId(), oid);
     }
 
     public static void myUnlockAfter(int iid, Object lock) {
-        analysis.unlockAfter(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
+        primitiveAnalysis.unlockAfter(iid, currentThreadId(), primitiveUniqueId(lock));
     }
 
     public static void myNewExprInANonStaticMethodAfter(int iid, Object o, Object objOnWhichMethodIsInvoked) {
-        analysis.newExprAfter(iid, uniqueId(o), uniqueId(objOnWhichMethodIsInvoked));
+        primitiveAnalysis.newExprAfter(iid, primitiveUniqueId(o), primitiveUniqueId(objOnWhichMethodIsInvoked));
     }
 
     public static void myNewExprInAStaticMethodAfter(int iid, Object o) {
-        analysis.newExprAfter(iid, uniqueId(o), 0);
+        primitiveAnalysis.newExprAfter(iid, primitiveUniqueId(o), 0);
     }
 
     public static void myStartBefore(int iid, Object t) {
-        analysis.startBefore(iid, uniqueId(Thread.currentThread()), uniqueId(t));
+        primitiveAnalysis.startBefore(iid, currentThreadId(), primitiveUniqueId(t));
     }
 
     public static void myStartAfter(int iid, Object t) {
-        analysis.startAfter(iid, uniqueId(Thread.currentThread()), t);
+        primitiveAnalysis.startAfter(iid, currentThreadId(), t);
     }
 
 
     public static void myWaitBefore(int iid, Object lock) {
-        analysis.waitBefore(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
+        primitiveAnalysis.waitBefore(iid, currentThreadId(), primitiveUniqueId(lock));
     }
 
     public static void myWaitAfter(int iid, Object lock) {
-        analysis.waitAfter(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
+        primitiveAnalysis.waitAfter(iid, currentThreadId(), primitiveUniqueId(lock));
     }
 
     public static void myNotifyBefore(int iid, Object lock) {
-        analysis.notifyBefore(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
+        primitiveAnalysis.notifyBefore(iid, currentThreadId(), primitiveUniqueId(lock));
     }
 
     public static void myNotifyAllBefore(int iid, Object lock) {
-        analysis.notifyAllBefore(iid, uniqueId(Thread.currentThread()), uniqueId(lock));
+        primitiveAnalysis.notifyAllBefore(iid, currentThreadId(), primitiveUniqueId(lock));
     }
 
     public static void myJoinAfter(int iid, Object thread) {
-        analysis.joinAfter(iid, uniqueId(Thread.currentThread()), uniqueId(thread));
+        primitiveAnalysis.joinAfter(iid, currentThreadId(), primitiveUniqueId(thread));
+    }
+
+    private static boolean needToIgnore(int iid) {
+        if (sampler != null) {
+            return sampler.needToIgnore(iid);
+        }
+        return counters.needToIgnore(iid);
+    }
+
+    // volatile accesses synchronize, so they are never sampled out
+    private static boolean needToIgnoreVolatile(int iid) {
+        if (sampler != null) {
+            return false;
+        }
+        return counters.needToIgnore(iid);
     }
 
     public static void myReadBefore(int iid, Object o, int field) {
-        if (counters.needToIgnore(iid)) return;
-        analysis.readBefore(iid, uniqueId(Thread.currentThread()), id(o, field), false);
+        if (needToIgnore(iid)) return;
+        primitiveAnalysis.readBefore(iid, currentThreadId(), primitiveId(o, field), false);
     }
 
     public static void myReadBefore(int iid, int clss, int field) {
-        if (counters.needToIgnore(iid)) return;
-        analysis.readBefore(iid, uniqueId(Thread.currentThread()), idInt(clss, field), false);
+        if (needToIgnore(iid)) return;
+        primitiveAnalysis.readBefore(iid, currentThreadId(), primitiveIdInt(clss, field), false);
     }
 
     public static void myVReadBefore(int iid, Object o, int field) {
-        if (counters.needToIgnore(iid)) return;
-        analysis.readBefore(iid, uniqueId(Thread.currentThread()), id(o, field), true);
+        if (needToIgnoreVolatile(iid)) return;
+        primitiveAnalysis.readBefore(iid, currentThreadId(), primitiveId(o, field), true);
     }
 
     public static void myVReadBefore(int iid, int clss, int field) {
-        if (counters.needToIgnore(iid)) return;
-        analysis.readBefore(iid, uniqueId(Thread.currentThread()), idInt(clss, field), true);
+        if (needToIgnoreVolatile(iid)) return;
+        primitiveAnalysis.readBefore(iid, currentThreadId(), primitiveIdInt(clss, field), true);
     }
 
     public static void myWriteBefore(int iid, Object o, int field) {
-        if (counters.needToIgnore(iid)) return;
-        analysis.writeBefore(iid, uniqueId(Thread.currentThread()), id(o, field), false);
+        if (needToIgnore(iid)) return;
+        primitiveAnalysis.writeBefore(iid, currentThreadId(), primitiveId(o, field), false);
     }
 
     public static void myWriteBefore(int iid, int clss, int field) {
-        if (counters.needToIgnore(iid)) return;
-        analysis.writeBefore(iid, uniqueId(Thread.currentThread()), idInt(clss, field), false);
+        if (needToIgnore(iid)) return;
+        primitiveAnalysis.writeBefore(iid, currentThreadId(), primitiveIdInt(clss, field), false);
     }
 
     public static void myVWriteBefore(int iid, Object o, int field) {
-        if (counters.needToIgnore(iid)) return;
-        analysis.writeBefore(iid, uniqueId(Thread.currentThread()), id(o, field), true);
+        if (needToIgnoreVolatile(iid)) return;
+        primitiveAnalysis.writeBefore(iid, currentThreadId(), primitiveId(o, field), true);
     }
 
     public static void myVWriteBefore(int iid, int clss, int field) {
-        if (counters.needToIgnore(iid)) return;
-        analysis.writeBefore(iid, uniqueId(Thread.currentThread()), idInt(clss, field), true);
+        if (needToIgnoreVolatile(iid)) return;
+        primitiveAnalysis.writeBefore(iid, currentThreadId(), primitiveIdInt(clss, field), true);
     }
 
 
     public static void myWriteAfter(int iid, String local, Object value, String type) {
-        analysis.writeAfter(iid, Thread.currentThread(), local, value, type);
+        primitiveAnalysis.writeAfter(iid, Thread.currentThread(), local, value, type);
     }
 
     public static void myWriteAfter(int iid, String local, byte value) {
-        analysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Byte");
+        primitiveAnalysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Byte");
     }
 
     public static void myWriteAfter(int iid, String local, char value) {
-        analysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Character");
+        primitiveAnalysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Character");
     }
 
     public static void myWriteAfter(int iid, String local, short value) {
-        analysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Short");
+        primitiveAnalysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Short");
     }
 
     public static void myWriteAfter(int iid, String local, int value) {
-        analysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Integer");
+        primitiveAnalysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Integer");
     }
 
     public static void myWriteAfter(int iid, String local, long value) {
-        analysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Long");
+        primitiveAnalysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Long");
     }
 
     public static void myWriteAfter(int iid, String local, float value) {
-        analysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Float");
+        primitiveAnalysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Float");
     }
 
     public static void myWriteAfter(int iid, String local, double value) {
-        analysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Double");
+        primitiveAnalysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Double");
     }
 
     public static void myWriteAfter(int iid, String local, boolean value) {
-        analysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Boolean");
+        primitiveAnalysis.writeAfter(iid, Thread.currentThread(), local, value, "java.lang.Boolean");
     }
 
     public static void myOpenDeterministicBlock(int iid) {
-        analysis.openDeterministicBlock(uniqueId(Thread.currentThread()));
+        primitiveAnalysis.openDeterministicBlock(currentThreadId());
     }
 
     public static void myCloseDeterministicBlock(int iid) {
-        analysis.closeDeterministicBlock(uniqueId(Thread.currentThread()));
+        primitiveAnalysis.closeDeterministicBlock(currentThreadId());
     }
 
     /** Parameter 'invariant' must be serializable. */
     public static void requireDeterministic(Object invariant) {
-        analysis.requireDeterministic(uniqueId(Thread.currentThread()), invariant);
+        primitiveAnalysis.requireDeterministic(currentThreadId(), invariant);
     }
 
     /** Parameter 'invariant' must be serializable. */
     public static void assertDeterministic(Object invariant) {
-        analysis.assertDeterministic(uniqueId(Thread.currentThread()), invariant);
+        primitiveAnalysis.assertDeterministic(currentThreadId(), invariant);
     }
 }
@@ -0,0 +1,92 @@
+package javato.activetesting.analysis;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class StaticLockTable {
+    // class index (see Visitor's SymbolTables) -> the Class whose monitor static synchronized methods take
+    private final AtomicReferenceArray<Class> classes;
+    private final ConcurrentHashMap<Integer, Class> otherClasses = new ConcurrentHashMap<Integer, Class>();
+
+    /**
+     * @param nClasses the number of class indices, i.e. the first object id
+     */
+    StaticLockTable(int nClasses) {
+        classes = new AtomicReferenceArray<Class>(Math.max(0, nClasses));
+    }
+
+    /**
+     * returns the class with the given index, loading it only the first time
+     *
+     * @param oid       the class index passed by the instrumentor
+     * @param className
+     * @return the class, or null if it cannot be found
+     */
+    Class get(int oid, String className) {
+        boolean inRange = oid >= 0 && oid < classes.length();
+        Class c = inRange ? classes.get(oid) : otherClasses.get(oid);
+        if (c == null) {
+            c = load(className);
+            if (c != null) {
+                if (inRange) {
+                    classes.set(oid, c);
+                } else {
+                    otherClasses.put(oid, c);
+                }
+            }
+        }
+        return c;
+    }
+
+    private static Class load(String className) {
+        try {
+            // do not initialize: we are called just before the class's own static call does
+            return Class.forName(className, false, StaticLockTable.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            // with -Xbootclasspath/p:tmpbootclasses the observer is loaded by the boot
+            // loader, which cannot see application classes
+        }
+        try {
+            ClassLoader l = Thread.currentThread().getContextClassLoader();
+            if (l == null) {
+                l = ClassLoader.getSystemClassLoader();
+            }
+            return Class.forName(className, false, l);
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package javato.activetesting.analysis;
 
 import java.lang.reflect.Method;
-import java.util.HashSet;
-import java.util.IdentityHashMap;
-import java.util.TreeSet;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Copyright (c) 2007-2008,
@@ -38,96 +38,109 @@ import java.util.TreeSet;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class SyncMethodCache {
-    private IdentityHashMap<Class, TreeSet<Integer>> synchronizedIids
-            = new IdentityHashMap<Class, TreeSet<Integer>>();
-    private IdentityHashMap<Class, TreeSet<Integer>> nonSynchronizedIids
-            = new IdentityHashMap<Class, TreeSet<Integer>>();
+    // the receiver class last seen at a call site and whether its target is synchronized
+    private static final class Entry {
+        final Class cls;
+        final boolean isSync;
 
-    private IdentityHashMap<Class, HashSet<String>> synchronizedSigs
-            = new IdentityHashMap<Class, HashSet<String>>();
-    private IdentityHashMap<Class, HashSet<String>> nonSynchronizedSigs
-            = new IdentityHashMap<Class, HashSet<String>>();
+        Entry(Class cls, boolean isSync) {
+            this.cls = cls;
+            this.isSync = isSync;
+        }
+    }
+
+    // one monomorphic entry per call site, for iids below the instrumented iid count
+    private final AtomicReferenceArray<Entry> sites;
+    // call sites outside that range
+    private final ConcurrentHashMap<Integer, Entry> otherSites = new ConcurrentHashMap<Integer, Entry>();
+    // class -> sig -> synchronized; filled on inline cache misses
+    private final ConcurrentHashMap<Class, ConcurrentHashMap<String, Boolean>> resolved
+            = new ConcurrentHashMap<Class, ConcurrentHashMap<String, Boolean>>();
 
-    private enum SYNC_STATUS {
-        SYNC, NONSYNC, UNKNOWN
+    public SyncMethodCache() {
+        this(0);
     }
 
-    private SYNC_STATUS getFromCache(int iid, Class cls, String sig) {
-        TreeSet<Integer> syncIids = synchronizedIids.get(cls);
-        if (syncIids != null) {
-            if (syncIids.contains(iid)) return SYNC_STATUS.SYNC;
-        }
-        TreeSet<Integer> nonSyncIids = nonSynchronizedIids.get(cls);
-        if (nonSyncIids != null) {
-            if (nonSyncIids.contains(iid)) return SYNC_STATUS.NONSYNC;
-        }
+    /**
+     * @param nIids the number of iids, see Observer.getIidCount
+     */
+    public SyncMethodCache(int nIids) {
+        sites = new AtomicReferenceArray<Entry>(Math.max(0, nIids));
+    }
 
-        HashSet<String> syncSigs = synchronizedSigs.get(cls);
-        if (syncSigs != null) {
-            if (syncSigs.contains(sig)) return SYNC_STATUS.SYNC;
+    /**
+     * tells whether sig invoked on lock at call site iid runs a synchronized method
+     *
+     * @param iid
+     * @param lock the receiver
+     * @param sig  the Soot sub-signature without return type, e.g. foo(int,java.lang.String)
+     * @return
+     */
+    public boolean isSynchronized(int iid, Object lock, String sig) {
+        Class cls = lock.getClass();
+        boolean inRange = iid >= 0 && iid < sites.length();
+        Entry e = inRange ? sites.get(iid) : otherSites.get(iid);
+        if (e != null && e.cls == cls) {
+            return e.isSync;
         }
-        HashSet<String> nonSyncSigs = nonSynchronizedSigs.get(cls);
-        if (nonSyncSigs != null) {
-            if (nonSyncSigs.contains(sig)) return SYNC_STATUS.NONSYNC;
+        // a racing miss just overwrites the entry with an equally valid one
+        e = new Entry(cls, resolve(cls, sig));
+        if (inRange) {
+            sites.set(iid, e);
+        } else {
+            otherSites.put(iid, e);
         }
-
-        return SYNC_STATUS.UNKNOWN;
+        return e.isSync;
     }
 
-    private void setToCache(int iid, Class cls, String sig, boolean isSync) {
-        if (isSync) {
-            TreeSet<Integer> syncIids = synchronizedIids.get(cls);
-            if (syncIids == null) {
-                syncIids = new TreeSet<Integer>();
-                synchronizedIids.put(cls, syncIids);
-            }
-            syncIids.add(iid);
-            HashSet<String> syncSigs = synchronizedSigs.get(cls);
-            if (syncSigs == null) {
-                syncSigs = new HashSet<String>();
-                synchronizedSigs.put(cls, syncSigs);
-            }
-            syncSigs.add(sig);
-        } else {
-            TreeSet<Integer> nonSyncIids = nonSynchronizedIids.get(cls);
-            if (nonSyncIids == null) {
-                nonSyncIids = new TreeSet<Integer>();
-                nonSynchronizedIids.put(cls, nonSyncIids);
+    private boolean resolve(Class cls, String sig) {
+        ConcurrentHashMap<String, Boolean> sigs = resolved.get(cls);
+        if (sigs == null) {
+            sigs = new ConcurrentHashMap<String, Boolean>();
+            ConcurrentHashMap<String, Boolean> old = resolved.putIfAbsent(cls, sigs);
+            if (old != null) {
+                sigs = old;
             }
-            nonSyncIids.add(iid);
-            HashSet<String> nonSyncSigs = nonSynchronizedSigs.get(cls);
-            if (nonSyncSigs == null) {
-                nonSyncSigs = new HashSet<String>();
-                nonSynchronizedSigs.put(cls, nonSyncSigs);
-            }
-            nonSyncSigs.add(sig);
         }
+        Boolean ret = sigs.get(sig);
+        if (ret == null) {
+            ret = lookup(cls, sig);
+            sigs.put(sig, ret);
+        }
+        return ret;
     }
 
-    public synchronized boolean isSynchronized(int iid, Object lock, String sig) {
-        Class c = lock.getClass();
-        Class cls = c;
-        SYNC_STATUS stat = getFromCache(iid, cls, sig);
-        if (stat == SYNC_STATUS.SYNC) return true;
-        if (stat == SYNC_STATUS.NONSYNC) return false;
-
-        while (c != null) {
-            Method[] ms = c.getDeclaredMethods();
-            for (Method m : ms) {
-                String mname = m.toString();
-                if (mname.indexOf(sig) != -1) {
-                    if (mname.indexOf("synchronized") != -1) {
-                        setToCache(iid, cls, sig, true);
-                        return true;
-                    } else {
-                        setToCache(iid, cls, sig, false);
-                        return false;
-                    }
+    private static boolean lookup(Class cls, String sig) {
+        for (Class c = cls; c != null; c = c.getSuperclass()) {
+            for (Method m : c.getDeclaredMethods()) {
+                if (!m.isBridge() && sig.equals(subSignature(m))) {
+                    return Modifier.isSynchronized(m.getModifiers());
                 }
             }
-            c = c.getSuperclass();
         }
-        setToCache(iid, cls, sig, false);
         return false;
     }
+
+    static String subSignature(Method m) {
+        StringBuilder sb = new StringBuilder(m.getName()).append('(');
+        Class[] ps = m.getParameterTypes();
+        for (int i = 0; i < ps.length; i++) {
+            if (i > 0) sb.append(',');
+            appendTypeName(sb, ps[i]);
+        }
+        return sb.append(')').toString();
+    }
+
+    // the way Soot prints a type: java.lang.String, int[][]
+    private static void appendTypeName(StringBuilder sb, Class c) {
+        int dims = 0;
+        while (c.isArray()) {
+            c = c.getComponentType();
+            dims++;
+        }
+        sb.append(c.getName());
+        for (int i = 0; i < dims; i++) {
+            sb.append("[]");
+        }
+    }
 }
@@ -0,0 +1,79 @@
+package javato.activetesting.analysis;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+final class ThreadContext {
+    // marks a call whose target turned out not to be synchronized
+    static final int NO_LOCK = -1;
+
+    final int threadId;
+    // calls to possibly synchronized methods that have not returned yet, innermost last
+    private int[] entryIids = new int[16];
+    private int[] lockIds = new int[16];
+    private int size = 0;
+
+    ThreadContext(int threadId) {
+        this.threadId = threadId;
+    }
+
+    void pushCall(int entryIid, int lockId) {
+        if (size == entryIids.length) {
+            int[] tmp = new int[size * 2];
+            System.arraycopy(entryIids, 0, tmp, 0, size);
+            entryIids = tmp;
+            tmp = new int[size * 2];
+            System.arraycopy(lockIds, 0, tmp, 0, size);
+            lockIds = tmp;
+        }
+        entryIids[size] = entryIid;
+        lockIds[size] = lockId;
+        size++;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int topEntryIid() {
+        return entryIids[size - 1];
+    }
+
+    /**
+     * pops the innermost call
+     *
+     * @return the id of the lock it acquired, or NO_LOCK
+     */
+    int popCall() {
+        return lockIds[--size];
+    }
+}
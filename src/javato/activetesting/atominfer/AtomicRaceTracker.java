@@ -54,7 +54,7 @@ public class AtomicRaceTracker {
     protected void checkRaceAux(Integer iid, Map<Integer, LinkedList<VCLockPair>> threadLists, Integer t, VectorClock vc, LockSet ls, Long m, UniqueEvent uniqueEvent) {
         for (Integer t2 : threadLists.keySet()) {
             if (!t2.equals(t)) {
-                Long c2 = vc.getValue(t2);
+                long c2 = vc.getValue(t2);
                 LinkedList<VCLockPair> vcs = threadLists.get(t2);
                 for (VCLockPair c : vcs) {
                     if (c2 < c.getClock()) {
@@ -116,7 +116,7 @@ public class AtomicRaceTracker {
         TreeSet<UniqueEvent> uniqueEvents = lockSets.get(ls);
         if (uniqueEvents == null) {
             uniqueEvents = new TreeSet<UniqueEvent>();
-            lockSets.put(new LockSet(ls), uniqueEvents);
+            lockSets.put(ls, uniqueEvents);
         }
         uniqueEvents.add(e);
     }
@@ -50,7 +50,7 @@ public class AtomicityAnalysis extends AnalysisImpl {
     public void lockBefore(Integer iid, Integer thread, Integer lock, Object actualLock) {
         synchronized (ActiveChecker.lock) {
 	    // We count reentrant locks as blocks
-	    List<Integer> context = ciTracker.getContext(iid);
+	    List<Integer> context = ciTracker.getContext(iid, thread);
 	    UniqueEvent e = new UniqueEvent(thread, context, vcTracker.getVectorClock(thread), eventIndex++);
 	    // Do work before adding new block to context
 	    updateSequentialRelation(iid, thread, e);
@@ -62,19 +62,19 @@ public class AtomicityAnalysis extends AnalysisImpl {
 		// Add to lockset
 		boolean isDeadlock = lsTracker.lockBefore(iid, thread, lock);
             }
-	    ciTracker.blockEnterBefore(iid);
+	    ciTracker.blockEnterBefore(iid, thread);
         }
     }
 
     public void unlockAfter(Integer iid, Integer thread, Integer lock) {
         synchronized (ActiveChecker.lock) {
-	    ciTracker.blockExitAfter(iid);
+	    ciTracker.blockExitAfter(iid, thread);
             if (ignoreRentrantLock.unlockAfter(thread, lock)) {
 		// Remove from lockset before checking for lock race
 		lsTracker.unlockAfter(thread);
 	    }
 	    // We count reentrant locks as blocks
-	    List<Integer> context = ciTracker.getContext(iid);
+	    List<Integer> context = ciTracker.getContext(iid, thread);
 	    // Do work after popping block from context
 	    UniqueEvent e = new UniqueEvent(thread, context, vcTracker.getVectorClock(thread), eventIndex++);
 	    updateSequentialRelation(iid, thread, e);
@@ -84,13 +84,13 @@ public class AtomicityAnalysis extends AnalysisImpl {
     public void methodEnterBefore(Integer iid, Integer thread) {
 	synchronized (ActiveChecker.lock) {
 	    allBlocks.add(iid);
-	    ciTracker.methodEnterBefore(iid);
+	    ciTracker.methodEnterBefore(iid, thread);
 	}
     }
 
     public void methodExitAfter(Integer iid, Integer thread) {
 	synchronized (ActiveChecker.lock) {
-	    ciTracker.methodExitAfter(iid);
+	    ciTracker.methodExitAfter(iid, thread);
 	}
     }
 
@@ -131,9 +131,9 @@ public class AtomicityAnalysis extends AnalysisImpl {
 
     public void readBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
         synchronized (ActiveChecker.lock) {
-	    ciTracker.logIid(iid);
+	    ciTracker.logIid(iid, thread);
             LockSet ls = lsTracker.getLockSet(thread);
-	    UniqueEvent e = new UniqueEvent(thread, ciTracker.getContext(iid), vcTracker.getVectorClock(thread), eventIndex++);
+	    UniqueEvent e = new UniqueEvent(thread, ciTracker.getContext(iid, thread), vcTracker.getVectorClock(thread), eventIndex++);
             eb.checkRace(iid, thread, memory, true, vcTracker.getVectorClock(thread), ls, e);
             eb.addEvent(iid, thread, memory, true, vcTracker.getVectorClock(thread), ls, e);
 	    updateSequentialRelation(iid, thread, e);
@@ -142,9 +142,9 @@ public class AtomicityAnalysis extends AnalysisImpl {
 
     public void writeBefore(Integer iid, Integer thread, Long memory, boolean isVolatile) {
         synchronized (ActiveChecker.lock) {
-	    ciTracker.logIid(iid);
+	    ciTracker.logIid(iid, thread);
             LockSet ls = lsTracker.getLockSet(thread);
-	    UniqueEvent e = new UniqueEvent(thread, ciTracker.getContext(iid), vcTracker.getVectorClock(thread), eventIndex++);
+	    UniqueEvent e = new UniqueEvent(thread, ciTracker.getContext(iid, thread), vcTracker.getVectorClock(thread), eventIndex++);
             eb.checkRace(iid, thread, memory, false, vcTracker.getVectorClock(thread), ls, e);
             eb.addEvent(iid, thread, memory, false, vcTracker.getVectorClock(thread), ls, e);
 	    updateSequentialRelation(iid, thread, e);
@@ -175,7 +175,7 @@ public class AtomicityAnalysis extends AnalysisImpl {
      * context as non-atomic.
      */
     private void markBlocksAsNonAtomic(Integer iid, Integer thread) {
-	ListIterator<Integer> it = ciTracker.getContext(iid).listIterator();
+	ListIterator<Integer> it = ciTracker.getContext(iid, thread).listIterator();
 	// Loop over all the block iids and ignore the counts.
 	while (it.hasNext()) {
 	    Integer curBlock = it.next();
@@ -0,0 +1,111 @@
+package javato.activetesting.common;
+
+import java.util.Arrays;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class AdaptiveSampler {
+    /*
+     * Sampling of memory accesses in the spirit of LiteRace: every thread
+     * keeps its own rate for every iid.  An iid starts out fully sampled;
+     * after each burst of samples its sampling period doubles, so cold code
+     * keeps being observed while hot loops quickly drop to one access in
+     * maxPeriod.  Between samples an access only decrements a counter of
+     * the calling thread, without any synchronization.
+     */
+    private final int burst;
+    private final int maxPeriod;
+
+    private final ThreadLocal<Counters> counters = new ThreadLocal<Counters>() {
+        protected Counters initialValue() {
+            return new Counters();
+        }
+    };
+
+    private static final class Counters {
+        // iid -> accesses to skip before the next sample
+        int[] skip = new int[1024];
+        // iid -> samples taken, until the period reaches maxPeriod
+        int[] sampled = new int[1024];
+    }
+
+    public AdaptiveSampler() {
+        this(Parameters.sampleBurst, Parameters.sampleMaxPeriod);
+    }
+
+    /**
+     * @param burst     number of samples taken at each rate before the period doubles
+     * @param maxPeriod the period at which the backoff stops; 1000 means that
+     *                  hot code is sampled at 0.1%
+     */
+    public AdaptiveSampler(int burst, int maxPeriod) {
+        this.burst = Math.max(1, burst);
+        this.maxPeriod = Math.max(1, maxPeriod);
+    }
+
+    /**
+     * returns true iff the access at iid by the current thread is not sampled
+     *
+     * @param iid
+     * @return
+     */
+    public boolean needToIgnore(int iid) {
+        Counters c = counters.get();
+        int[] skip = c.skip;
+        if (iid < skip.length) {
+            int s = skip[iid];
+            if (s > 0) {
+                skip[iid] = s - 1;
+                return true;
+            }
+        } else if (iid >= 0) {
+            int n = Math.max(iid + 1, skip.length * 2);
+            c.skip = Arrays.copyOf(skip, n);
+            c.sampled = Arrays.copyOf(c.sampled, n);
+        } else {
+            return false;
+        }
+        c.skip[iid] = period(c, iid) - 1;
+        return false;
+    }
+
+    private int period(Counters c, int iid) {
+        int n = c.sampled[iid];
+        int shift = n / burst;
+        int period = shift >= 31 ? maxPeriod : Math.min(1 << shift, maxPeriod);
+        if (period < maxPeriod) {
+            c.sampled[iid] = n + 1;
+        }
+        return period;
+    }
+}
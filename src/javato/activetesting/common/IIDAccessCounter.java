@@ -1,6 +1,7 @@
 package javato.activetesting.common;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -36,25 +37,32 @@ import java.util.concurrent.ConcurrentHashMap;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class IIDAccessCounter {
+    // iids below the number handed out by the instrumentor are counted here
+    private final AtomicIntegerArray counts;
     private ConcurrentHashMap<Integer, AtomicInteger> iidToCount;
 
-    //private int[] counts;
-
     public IIDAccessCounter() {
-        iidToCount = new ConcurrentHashMap<Integer, AtomicInteger>(7919);
-        //counts = new int[7919];
+        this(0);
+    }
+
+    /**
+     * @param nIids the number of iids, see javato.activetesting.analysis.Observer.getIidCount
+     */
+    public IIDAccessCounter(int nIids) {
+        counts = new AtomicIntegerArray(Math.max(0, nIids));
+        iidToCount = new ConcurrentHashMap<Integer, AtomicInteger>(nIids > 0 ? 16 : 7919);
     }
 
-//    public boolean needToIgnore(int iid) {
-//        int bucket = iid % 7919;
-//        if (counts[bucket] > Parameters.maxPausesInActiveTesting) return true;
-//        synchronized (this) {
-//            counts[bucket]++;
-//        }
-//        return false;
-//    }
-    public boolean needToIgnore(Integer iid) {
-//        return false;
+    public boolean needToIgnore(int iid) {
+        if (iid >= 0 && iid < counts.length()) {
+            // read first, so that an iid past the limit costs no write; a slot counts
+            // every visit, the map below skips the first, hence the + 1
+            if (counts.get(iid) > Parameters.maxPausesInActiveTesting + 1) {
+                return true;
+            }
+            counts.incrementAndGet(iid);
+            return false;
+        }
         AtomicInteger tmp = iidToCount.get(iid);
         if (tmp==null) {
             tmp = new AtomicInteger(0);
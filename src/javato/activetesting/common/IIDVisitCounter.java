@@ -0,0 +1,79 @@
+package javato.activetesting.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class IIDVisitCounter {
+    // iids below the number handed out by the instrumentor get a slot of their own
+    private final AtomicLongArray counts;
+    // the others, e.g. when javato.iidcount is missing; guarded by itself
+    private final IntObjectMap<MutableLong> overflow = new IntObjectMap<MutableLong>();
+
+    /**
+     * @param nIids the number of iids, see javato.activetesting.analysis.Observer.getIidCount
+     */
+    public IIDVisitCounter(int nIids) {
+        counts = new AtomicLongArray(Math.max(0, nIids));
+    }
+
+    /**
+     * counts a visit of iid
+     *
+     * @param iid
+     * @return the number of visits of iid so far, including this one
+     */
+    public long incAndGet(int iid) {
+        if (iid >= 0 && iid < counts.length()) {
+            return counts.incrementAndGet(iid);
+        }
+        synchronized (overflow) {
+            MutableLong l = overflow.get(iid);
+            if (l == null) {
+                l = new MutableLong(0);
+                overflow.put(iid, l);
+            }
+            return ++l.val;
+        }
+    }
+
+    public long get(int iid) {
+        if (iid >= 0 && iid < counts.length()) {
+            return counts.get(iid);
+        }
+        synchronized (overflow) {
+            MutableLong l = overflow.get(iid);
+            return l == null ? 0 : l.val;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package javato.activetesting.common;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class IidToLineIndex {
+    // file layout, all ints big endian:
+    //   MAGIC, number of iids, number of files,
+    //   per iid: file index, line,
+    //   per file: its name in modified UTF-8 as written by DataOutputStream.writeUTF
+    private static final int MAGIC = 0x4a494931;
+    private static final int HEADER = 12;
+    private static final int ENTRY = 8;
+    private static final String SEPARATOR = ".html#";
+
+    private final MappedByteBuffer buf;
+    private final int nIids;
+    private final String[] files;
+
+    private IidToLineIndex(MappedByteBuffer buf) throws IOException {
+        this.buf = buf;
+        if (buf.getInt(0) != MAGIC) {
+            throw new IOException("Not an iid to line index");
+        }
+        nIids = buf.getInt(4);
+        files = new String[buf.getInt(8)];
+        // the file table is small, so it is decoded once
+        ByteBuffer names = buf.duplicate();
+        names.position(HEADER + nIids * ENTRY);
+        byte[] bytes = new byte[names.remaining()];
+        names.get(bytes);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < files.length; i++) {
+            files[i] = in.readUTF();
+        }
+    }
+
+    /**
+     * maps an index written by write
+     *
+     * @param fileName
+     * @return the index, or null if fileName does not exist
+     * @throws IOException
+     */
+    public static IidToLineIndex open(String fileName) throws IOException {
+        File f = new File(fileName);
+        if (!f.exists()) {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            return new IidToLineIndex(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int size() {
+        return nIids;
+    }
+
+    /**
+     * returns the source position of iid as file#line, or null if iid is unknown
+     *
+     * @param iid
+     * @return
+     */
+    public String get(int iid) {
+        if (iid < 0 || iid >= nIids) {
+            return null;
+        }
+        int off = HEADER + iid * ENTRY;
+        return files[buf.getInt(off)] + "#" + buf.getInt(off + 4);
+    }
+
+    /**
+     * writes an index for the instrumentor's iid to line map, whose entries
+     * have the form file.html#line
+     *
+     * @param fileName
+     * @param iidToLineMap
+     * @throws IOException
+     */
+    public static void write(String fileName, List<String> iidToLineMap) throws IOException {
+        HashMap<String, Integer> fileIds = new HashMap<String, Integer>();
+        int[] fileOf = new int[iidToLineMap.size()];
+        int[] lineOf = new int[iidToLineMap.size()];
+        String[] files = new String[iidToLineMap.size()];
+        int i = 0;
+        for (String s : iidToLineMap) {
+            int sep = s.lastIndexOf(SEPARATOR);
+            String file = sep < 0 ? s : s.substring(0, sep);
+            lineOf[i] = sep < 0 ? 0 : Integer.parseInt(s.substring(sep + SEPARATOR.length()));
+            Integer id = fileIds.get(file);
+            if (id == null) {
+                id = fileIds.size();
+                fileIds.put(file, id);
+                files[id] = file;
+            }
+            fileOf[i] = id;
+            i++;
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(fileOf.length);
+            out.writeInt(fileIds.size());
+            for (i = 0; i < fileOf.length; i++) {
+                out.writeInt(fileOf[i]);
+                out.writeInt(lineOf[i]);
+            }
+            for (i = 0; i < fileIds.size(); i++) {
+                out.writeUTF(files[i]);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
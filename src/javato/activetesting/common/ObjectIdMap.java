@@ -0,0 +1,170 @@
+package javato.activetesting.common;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class ObjectIdMap {
+    private static final int DEFAULT_STRIPES = 64;
+
+    // object -> id, split into independently locked WeakIdentityHashMaps
+    private final WeakIdentityHashMap[] stripes;
+    private final int mask;
+    private final AtomicInteger nextId;
+
+    // id -> object, for O(1) reverse lookup; entries of collected objects are dropped lazily
+    private final ConcurrentHashMap<Integer, IdReference> idToObject;
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    // ids of collected objects not yet polled; null until trackCollectedIds is called
+    private volatile ConcurrentLinkedQueue<Integer> collected = null;
+
+    private static class IdReference extends WeakReference<Object> {
+        final int id;
+
+        IdReference(Object o, int id, ReferenceQueue<Object> queue) {
+            super(o, queue);
+            this.id = id;
+        }
+    }
+
+    public ObjectIdMap(int firstId) {
+        this(firstId, DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param firstId  the id given to the first object seen; ids below it are reserved
+     *                 (see Parameters.usedObjectId)
+     * @param nStripes number of lock stripes, rounded up to a power of two
+     */
+    public ObjectIdMap(int firstId, int nStripes) {
+        int n = 1;
+        while (n < nStripes) n <<= 1;
+        stripes = new WeakIdentityHashMap[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new WeakIdentityHashMap(64);
+        }
+        mask = n - 1;
+        nextId = new AtomicInteger(firstId);
+        idToObject = new ConcurrentHashMap<Integer, IdReference>(3511, 0.75f, n);
+    }
+
+    private WeakIdentityHashMap stripeFor(Object o) {
+        int h = System.identityHashCode(o);
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return stripes[h & mask];
+    }
+
+    /**
+     * returns the id of o, allocating a fresh one the first time o is seen
+     *
+     * @param o
+     * @return
+     */
+    public int getId(Object o) {
+        WeakIdentityHashMap stripe = stripeFor(o);
+        synchronized (stripe) {
+            Integer val = (Integer) stripe.get(o);
+            if (val != null) {
+                return val;
+            }
+            int id = nextId.getAndIncrement();
+            stripe.put(o, id);
+            idToObject.put(id, new IdReference(o, id, queue));
+            expungeStaleReferences();
+            return id;
+        }
+    }
+
+    /**
+     * returns the object with the given id, or null if no live object has that id
+     *
+     * @param id
+     * @return
+     */
+    public Object getObject(int id) {
+        IdReference ref = idToObject.get(id);
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * returns the id that will be given to the next new object
+     *
+     * @return
+     */
+    public int getNextId() {
+        return nextId.get();
+    }
+
+    /**
+     * starts remembering the ids of collected objects for pollCollectedId
+     */
+    public synchronized void trackCollectedIds() {
+        if (collected == null) {
+            collected = new ConcurrentLinkedQueue<Integer>();
+        }
+    }
+
+    /**
+     * returns the id of an object that has been garbage collected since the
+     * last call, or -1 if there is none (or trackCollectedIds was not called).
+     * Each id is returned once; ids are never given to another object.
+     *
+     * @return
+     */
+    public int pollCollectedId() {
+        ConcurrentLinkedQueue<Integer> c = collected;
+        if (c == null) {
+            return -1;
+        }
+        expungeStaleReferences();
+        Integer id = c.poll();
+        return id == null ? -1 : id;
+    }
+
+    private void expungeStaleReferences() {
+        IdReference ref;
+        while ((ref = (IdReference) queue.poll()) != null) {
+            if (idToObject.remove(ref.id, ref)) {
+                ConcurrentLinkedQueue<Integer> c = collected;
+                if (c != null) {
+                    c.add(ref.id);
+                }
+            }
+        }
+    }
+}
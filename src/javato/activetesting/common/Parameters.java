@@ -40,6 +40,10 @@ public class Parameters {
     public static final long livelockCheckerInterval = Long.getLong("javato.activeChecker.livelockCheckerInterval", 200);
     public static final int deadlockCycleLength = Integer.getInteger("javato.deadlock.cycle.length", 2);
     public static final int maxPausesInActiveTesting = Integer.getInteger("javato.max.iid.count",100);
+    // adaptive sampling of non-volatile reads and writes instead of the javato.max.iid.count cutoff
+    public static final boolean sampleAccesses = Boolean.getBoolean("javato.sample");
+    public static final int sampleBurst = Integer.getInteger("javato.sample.burst", 10);
+    public static final int sampleMaxPeriod = Integer.getInteger("javato.sample.maxperiod", 1000);
 
     // hybrid race detection and thrille specific
     public static final int N_VECTOR_CLOCKS_WINDOW = 5;
@@ -52,6 +56,16 @@ public class Parameters {
     public final static boolean removeOlderRace = Boolean.getBoolean("javato.hybrid.removeoldrace");
     public final static boolean removeOlderAccess = Boolean.getBoolean("javato.hybrid.removeoldaccess");
     public static final boolean trackWaitNotifyOnly = Boolean.getBoolean("javato.track.waitnotifyonly");
+    public static final int raceShards = Integer.getInteger("javato.race.shards", Runtime.getRuntime().availableProcessors());
+    public static final int raceStripes = Integer.getInteger("javato.race.stripes", 64);
+    // keep the access history of objects after they are garbage collected
+    public static final boolean keepCollectedHistory = Boolean.getBoolean("javato.race.keepcollected");
+    // bound on the read and write histories kept by the race trackers; 0 means unbounded
+    public static final int maxRaceLocations = Integer.getInteger("javato.race.maxLocations", 0);
+
+    // asynchronous event delivery for passive (predictive) analyses
+    public static final boolean asyncAnalysis = Boolean.getBoolean("javato.activetesting.async");
+    public static final int asyncBufferSize = Integer.getInteger("javato.activetesting.async.buffer", 8192);
 
     // instrumentation specific
     public static final boolean ignoreArrays = Boolean.getBoolean("javato.ignore.arrays");
@@ -59,17 +73,39 @@ public class Parameters {
     public static final boolean ignoreAlloc = Boolean.getBoolean("javato.ignore.allocs");
     public static final boolean ignoreFields = Boolean.getBoolean("javato.ignore.fields");
     public static final boolean ignoreConcurrency = Boolean.getBoolean("javato.ignore.concurrency");
+    // skip accesses to objects that a whole-program escape analysis proves never leave their creating thread
+    public static final boolean ignoreThreadLocal = Boolean.getBoolean("javato.ignore.threadlocal");
+    // skip accesses that repeat an earlier access of the same method with no synchronization in between
+    public static final boolean ignoreRedundant = Boolean.getBoolean("javato.ignore.redundant");
     public static final boolean trackLocals = Boolean.getBoolean("javato.track.locals");
     public static final boolean trackDeterministicLocals
         = Boolean.getBoolean("javato.track.locals.deterministic");
 
     // various files for persistent data and logs
     public static final String iidToLineMapFile = "iidToLine.map";
+    public static final String iidToLineIndexFile = "iidToLine.idx";
     public static final String usedObjectId = "javato.usedids";
+    // number of iids handed out by the instrumentor, for sizing per-iid counters
+    public static final String iidCountFile = "javato.iidcount";
+    // instrumented classes, iids and symbols kept across instrumentation runs
+    public static final String instrCacheDir = System.getProperty("javato.instr.cache.dir", "javato.instrcache");
+    public static final boolean noInstrCache = Boolean.getBoolean("javato.instr.nocache");
+    // number of JVMs that instrument the -process-dir classes in parallel, and the heap of each
+    public static final int instrWorkers = Integer.getInteger("javato.instr.workers", 1);
+    public static final String instrWorkerMemory = System.getProperty("javato.instr.worker.memory", "1024m");
+    // iids and symbols handed out by the load-time instrumentation agent, kept across runs
+    public static final String agentRegistryFile = "javato.agentregistry";
+    // comma separated package prefixes, e.g. java/util, that the agent instruments although
+    // they are loaded by the boot loader, and prefixes that it leaves alone
+    public static final String agentBootList = System.getProperty("javato.app.boot.list", "");
+    public static final String agentExcludeList = System.getProperty("javato.agent.exclude", "");
+    // the agent only instruments what the active checker needs for the races or lock cycles in the error log
+    public static final boolean instrTargeted = Boolean.getBoolean("javato.instr.targeted");
     public static final String ERROR_STAT_FILE = System.getProperty("javato.activetesting.errorstat.file", "error.stat");
     public static final String ERROR_LOG_FILE = System.getProperty("javato.activetesting.errorlog.file", "error.log");
     public static final String ERROR_LIST_FILE = System.getProperty("javato.activetesting.errorlist.file", "error.list");
     public static final String ERROR_STALL_FILE = System.getProperty("javato.activetesting.errorstall.file", "error.stall");
+    public static final String TRACE_FILE = System.getProperty("javato.activetesting.trace.file", "trace.bin");
 
     // entry class and must be specified
     public static final String analysisClass = System.getProperty("javato.activetesting.analysis.class");
@@ -61,6 +61,14 @@ public class CommutativePair implements Serializable {
         isVolatile = aVolatile;
     }
 
+    public Integer getFirstIid() {
+        return x;
+    }
+
+    public Integer getSecondIid() {
+        return y;
+    }
+
     public boolean containsWrite(Integer iid) {
         return (x.equals(iid) && !isXRead) || (y.equals(iid) && !isYRead);
     }
@@ -0,0 +1,292 @@
+package javato.activetesting.hybridracedetection;
+
+import javato.activetesting.common.IntObjectMap;
+import javato.activetesting.common.LongObjectMap;
+import javato.activetesting.lockset.LockSet;
+import javato.activetesting.vc.VectorClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class FastTrackRaceTracker {
+    /*
+     * FastTrack (Flanagan and Freund, PLDI 2009): the last write to a location
+     * is an epoch (thread, clock); so are the reads as long as they are totally
+     * ordered by happens-before.  Only concurrent reads inflate the read state
+     * to one entry per reading thread.  Locks, fork/join, wait and volatile
+     * accesses are synchronization; races are reported in the same
+     * CommutativePair form as HybridRaceTracker.
+     *
+     * The instrumentation calls lockBefore before monitorenter and unlockAfter
+     * after monitorexit, so under contention a thread may join the clock of a
+     * lock before the holder has published its release: its critical section
+     * then looks concurrent with the holder's.  As in HybridRaceTracker, two
+     * accesses made while holding a common lock are therefore never reported.
+     * Accesses outside the critical sections that are ordered only through
+     * such a late release can still be reported.
+     *
+     * Volatile accesses are reported before they happen as well, so a write
+     * reported after a read may still be the one that read sees.  A volatile
+     * read therefore acquires at the next event of its thread, which comes
+     * after the read itself and so after every write the read can see.
+     */
+    private static class Access {
+        final long clock;
+        final int iid;
+        final long visitCount;
+        final LockSet ls;
+
+        Access(long clock, int iid, long visitCount, LockSet ls) {
+            this.clock = clock;
+            this.iid = iid;
+            this.visitCount = visitCount;
+            this.ls = ls;
+        }
+    }
+
+    private static class VarState {
+        // last write; wClock == 0 means not written yet
+        int wThread;
+        long wClock;
+        int wIid;
+        long wCount;
+        LockSet wLs;
+        // last read while reads are ordered; rClock == 0 means not read yet
+        int rThread;
+        long rClock;
+        int rIid;
+        long rCount;
+        LockSet rLs;
+        // thread -> last read, once two reads were concurrent
+        Map<Integer, Access> rShared;
+    }
+
+    private final HybridRaceTracker races;
+    private final IntObjectMap<VectorClock> threads = new IntObjectMap<VectorClock>();
+    private final IntObjectMap<VectorClock> locks = new IntObjectMap<VectorClock>();
+    // thread -> the locks it holds, in the order of acquisition, and their lockset
+    private final IntObjectMap<ArrayList<Integer>> held = new IntObjectMap<ArrayList<Integer>>();
+    private final IntObjectMap<LockSet> lockSets = new IntObjectMap<LockSet>();
+    private final LongObjectMap<VectorClock> volatiles = new LongObjectMap<VectorClock>();
+    // thread -> the volatiles it read since its last event
+    private final IntObjectMap<ArrayList<Long>> pendingReads = new IntObjectMap<ArrayList<Long>>();
+    private int nPendingReads = 0;
+    private final LongObjectMap<VarState> vars = new LongObjectMap<VarState>();
+    private int nSharedReads = 0;
+
+    public FastTrackRaceTracker() {
+        this(new HybridRaceTracker());
+    }
+
+    /**
+     * @param races collects the races; only its list of races and visit counts are used
+     */
+    public FastTrackRaceTracker(HybridRaceTracker races) {
+        this.races = races;
+    }
+
+    private VectorClock getVectorClock(Integer t) {
+        VectorClock vc = threads.get(t);
+        if (vc == null) {
+            vc = new VectorClock();
+            vc.inc(t);
+            threads.put(t, vc);
+        }
+        if (nPendingReads > 0) {
+            ArrayList<Long> pending = pendingReads.get(t);
+            if (pending != null && !pending.isEmpty()) {
+                for (Long m : pending) {
+                    acquire(vc, volatiles.get(m));
+                }
+                nPendingReads -= pending.size();
+                pending.clear();
+            }
+        }
+        return vc;
+    }
+
+    private void acquire(VectorClock vc, VectorClock released) {
+        if (released != null) {
+            vc.updateMax(released);
+        }
+    }
+
+    private LockSet getLockSet(Integer t) {
+        LockSet ls = lockSets.get(t);
+        return ls == null ? LockSet.emptySet : ls;
+    }
+
+    public void lockBefore(Integer t, Integer lock) {
+        acquire(getVectorClock(t), locks.get(lock));
+        ArrayList<Integer> h = held.get(t);
+        if (h == null) {
+            h = new ArrayList<Integer>(4);
+            held.put(t, h);
+        }
+        h.add(lock);
+        lockSets.put(t, getLockSet(t).add(lock));
+    }
+
+    public void unlockAfter(Integer t, Integer lock) {
+        ArrayList<Integer> h = held.get(t);
+        if (h != null && h.lastIndexOf(lock) >= 0) {
+            h.remove(h.lastIndexOf(lock));
+            lockSets.put(t, LockSet.of(h));
+        }
+        VectorClock vc = getVectorClock(t);
+        VectorClock l = locks.get(lock);
+        if (l == null) {
+            locks.put(lock, new VectorClock(vc));
+        } else {
+            l.copyFrom(vc);
+        }
+        vc.inc(t);
+    }
+
+    public void startBefore(Integer parent, Integer child) {
+        VectorClock vc = getVectorClock(parent);
+        VectorClock vc2 = new VectorClock(vc);
+        vc2.inc(child);
+        threads.put(child, vc2);
+        vc.inc(parent);
+    }
+
+    public void joinAfter(Integer parent, Integer child) {
+        VectorClock vc2 = getVectorClock(child);
+        getVectorClock(parent).updateMax(vc2);
+        vc2.inc(child);
+    }
+
+    public void volatileRead(Integer t, Long m) {
+        getVectorClock(t);
+        ArrayList<Long> pending = pendingReads.get(t);
+        if (pending == null) {
+            pending = new ArrayList<Long>(2);
+            pendingReads.put(t, pending);
+        }
+        pending.add(m);
+        nPendingReads++;
+    }
+
+    public void volatileWrite(Integer t, Long m) {
+        VectorClock vc = getVectorClock(t);
+        VectorClock v = volatiles.get(m);
+        if (v == null) {
+            volatiles.put(m, new VectorClock(vc));
+        } else {
+            v.updateMax(vc);
+        }
+        vc.inc(t);
+    }
+
+    public void read(Integer iid, Integer t, Long m) {
+        VectorClock vc = getVectorClock(t);
+        long e = vc.getValue(t);
+        VarState s = vars.get(m);
+        if (s == null) {
+            s = new VarState();
+            vars.put(m, s);
+        }
+        if (s.rShared == null) {
+            if (s.rThread == t && s.rClock == e) return;
+        } else {
+            Access a = s.rShared.get(t);
+            if (a != null && a.clock == e) return;
+        }
+        long visitCount = races.incAndGetVisitCount(iid);
+        LockSet ls = getLockSet(t);
+        if (s.wClock > vc.getValue(s.wThread) && !ls.intersects(s.wLs)) {
+            report(iid, visitCount, true, s.wIid, s.wCount, false);
+        }
+        if (s.rShared != null) {
+            s.rShared.put(t, new Access(e, iid, visitCount, ls));
+        } else if (s.rClock == 0 || s.rThread == t || s.rClock <= vc.getValue(s.rThread)) {
+            s.rThread = t;
+            s.rClock = e;
+            s.rIid = iid;
+            s.rCount = visitCount;
+            s.rLs = ls;
+        } else {
+            s.rShared = new HashMap<Integer, Access>(4);
+            s.rShared.put(s.rThread, new Access(s.rClock, s.rIid, s.rCount, s.rLs));
+            s.rShared.put(t, new Access(e, iid, visitCount, ls));
+            nSharedReads++;
+        }
+    }
+
+    public void write(Integer iid, Integer t, Long m) {
+        VectorClock vc = getVectorClock(t);
+        long e = vc.getValue(t);
+        VarState s = vars.get(m);
+        if (s == null) {
+            s = new VarState();
+            vars.put(m, s);
+        }
+        if (s.wThread == t && s.wClock == e) return;
+        long visitCount = races.incAndGetVisitCount(iid);
+        LockSet ls = getLockSet(t);
+        if (s.wClock > vc.getValue(s.wThread) && !ls.intersects(s.wLs)) {
+            report(iid, visitCount, false, s.wIid, s.wCount, false);
+        }
+        if (s.rShared != null) {
+            for (Map.Entry<Integer, Access> entry : s.rShared.entrySet()) {
+                Access a = entry.getValue();
+                if (a.clock > vc.getValue(entry.getKey()) && !ls.intersects(a.ls)) {
+                    report(iid, visitCount, false, a.iid, a.visitCount, true);
+                }
+            }
+            s.rShared = null;
+            s.rClock = 0;
+        } else if (s.rClock > vc.getValue(s.rThread) && !ls.intersects(s.rLs)) {
+            report(iid, visitCount, false, s.rIid, s.rCount, true);
+        }
+        s.wThread = t;
+        s.wClock = e;
+        s.wIid = iid;
+        s.wCount = visitCount;
+        s.wLs = ls;
+    }
+
+    private void report(Integer iid, long visitCount, boolean isRead1, Integer iid2, long iid2Count, boolean isRead2) {
+        CommutativePair cp = new CommutativePair(iid, visitCount, isRead1, iid2, iid2Count, isRead2, false, false);
+        races.raceDetected(cp, iid, visitCount, iid2, iid2Count, false);
+    }
+
+    public void dumpRaces() {
+        System.out.println("# of memory locations " + vars.size() + " of which inflated to shared reads " + nSharedReads);
+        races.dumpRaces();
+    }
+}
@@ -1,7 +1,7 @@
 package javato.activetesting.hybridracedetection;
 
 import javato.activetesting.common.Parameters;
-import javato.activetesting.common.MutableLong;
+import javato.activetesting.common.IIDVisitCounter;
 import javato.activetesting.lockset.LockSet;
 import javato.activetesting.vc.VectorClock;
 
@@ -44,20 +44,92 @@ public class HybridRaceTracker {
     private LinkedHashSet<CommutativePair> alreadySeenRaces;
 
     // m -> t -> list(vc,ls->Set(iid))
-    private Map<Long, Map<Integer, LinkedList<VCLockPair>>> readMap;
-    private Map<Long, Map<Integer, LinkedList<VCLockPair>>> writeMap;
+    private LocationMap<Location> readMap;
+    private LocationMap<Location> writeMap;
+    private final ShadowMemoryStats shadowMemory;
 
-    private Map<Integer, MutableLong> iidVisitCount;
+    // if maxLocations > 0, at most that many locations keep a history; the
+    // others are evicted by a clock sweep, so a recently accessed location
+    // survives one more round of the hand
+    private final int maxLocations;
+    private Location[] clock;
+    private int hand = 0;
+    private int nLocations = 0;
+
+    /**
+     * the access history of a memory location, either of its reads or of its writes
+     */
+    private static class Location extends TreeMap<Integer, LinkedList<VCLockPair>> {
+        final Long m;
+        final boolean isRead;
+        int slot = -1;
+        boolean referenced = true;
+
+        Location(Long m, boolean isRead) {
+            this.m = m;
+            this.isRead = isRead;
+        }
+    }
+
+    // null unless javato.track.iid.visit.count is set
+    private final IIDVisitCounter iidVisitCount;
     private int lockRaceCount = 0;
     private int dataRaceCount = 0;
 
 
     public HybridRaceTracker() {
-        readMap = new TreeMap<Long, Map<Integer, LinkedList<VCLockPair>>>();
-        writeMap = new TreeMap<Long, Map<Integer, LinkedList<VCLockPair>>>();
-        iidVisitCount = new TreeMap<Integer, MutableLong>();
+        this(getRacesFromFile());
+    }
+
+    /**
+     * @param alreadySeenRaces races that are neither reported nor counted again
+     */
+    public HybridRaceTracker(LinkedHashSet<CommutativePair> alreadySeenRaces) {
+        this(alreadySeenRaces, new ShadowMemoryStats());
+    }
+
+    /**
+     * @param alreadySeenRaces races that are neither reported nor counted again
+     * @param shadowMemory     where the number of memory locations with an access history is counted
+     */
+    public HybridRaceTracker(LinkedHashSet<CommutativePair> alreadySeenRaces, ShadowMemoryStats shadowMemory) {
+        this(alreadySeenRaces, shadowMemory, Parameters.maxRaceLocations);
+    }
 
-        alreadySeenRaces = getRacesFromFile();
+    /**
+     * @param alreadySeenRaces races that are neither reported nor counted again
+     * @param shadowMemory     where the number of memory locations with an access history is counted
+     * @param maxLocations     the number of read and write histories kept, or 0 for no limit
+     */
+    public HybridRaceTracker(LinkedHashSet<CommutativePair> alreadySeenRaces, ShadowMemoryStats shadowMemory,
+                             int maxLocations) {
+        this(alreadySeenRaces, shadowMemory, maxLocations, Parameters.LOG_IID_VISIT_COUNT
+                ? new IIDVisitCounter(javato.activetesting.analysis.Observer.getIidCount()) : null);
+    }
+
+    /**
+     * a tracker for a partition of the memory locations of merged, which
+     * counts into the same shadow memory statistics and visit counts
+     *
+     * @param merged
+     * @param maxLocations the number of read and write histories kept, or 0 for no limit
+     */
+    HybridRaceTracker(HybridRaceTracker merged, int maxLocations) {
+        this(new LinkedHashSet<CommutativePair>(), merged.shadowMemory, maxLocations, merged.iidVisitCount);
+    }
+
+    private HybridRaceTracker(LinkedHashSet<CommutativePair> alreadySeenRaces, ShadowMemoryStats shadowMemory,
+                              int maxLocations, IIDVisitCounter iidVisitCount) {
+        this.shadowMemory = shadowMemory;
+        this.maxLocations = maxLocations;
+        if (maxLocations > 0) {
+            clock = new Location[maxLocations];
+        }
+        readMap = new LocationMap<Location>();
+        writeMap = new LocationMap<Location>();
+        this.iidVisitCount = iidVisitCount;
+
+        this.alreadySeenRaces = alreadySeenRaces;
     }
 
     public static LinkedHashSet<CommutativePair> getRacesFromFile() {
@@ -75,6 +147,14 @@ public class HybridRaceTracker {
         return alreadySeenRaces;
     }
 
+    public LinkedHashSet<CommutativePair> getRaces() {
+        return alreadySeenRaces;
+    }
+
+    public ShadowMemoryStats getShadowMemory() {
+        return shadowMemory;
+    }
+
     public void dumpRaces() {
         ObjectOutputStream out;
         javato.activetesting.analysis.Observer.writeIntegerList(Parameters.ERROR_LIST_FILE, alreadySeenRaces.size());
@@ -85,6 +165,7 @@ public class HybridRaceTracker {
                 cp.printcryptic(System.out);
             }
             System.out.println("# of data races " + dataRaceCount + " and lock races "+lockRaceCount);
+            shadowMemory.print(System.out);
             out.close();
         } catch (IOException e) {
             e.printStackTrace();
@@ -93,10 +174,17 @@ public class HybridRaceTracker {
 
     public void checkRace(Integer iid, Integer t, Long m, boolean isRead, VectorClock vc, LockSet ls,
                           boolean isLock, boolean isVolatile) {
-        Map<Integer, LinkedList<VCLockPair>> threadLists1;
-        Map<Integer, LinkedList<VCLockPair>> threadLists2 = null;
+        checkRace(iid, t, m, isRead, vc, ls, isLock, isVolatile, incAndGetVisitCount(iid));
+    }
 
-        long visitC = incAndGetVisitCount(iid);
+    /**
+     * same as checkRace, but with the visit count of iid computed by the caller
+     * (used when the accesses to different memory locations are checked separately)
+     */
+    public void checkRace(Integer iid, Integer t, Long m, boolean isRead, VectorClock vc, LockSet ls,
+                          boolean isLock, boolean isVolatile, long visitC) {
+        Location threadLists1;
+        Location threadLists2 = null;
 
         if (isRead) {
             threadLists1 = writeMap.get(m);
@@ -105,22 +193,25 @@ public class HybridRaceTracker {
             threadLists2 = readMap.get(m);
         }
         if (threadLists1 != null) {
+            threadLists1.referenced = true;
             checkRaceAux(iid, threadLists1, t, vc, ls, m,visitC,isLock,isRead,false,isVolatile);
         }
         if (threadLists2 != null) {
+            threadLists2.referenced = true;
             checkRaceAux(iid, threadLists2, t, vc, ls, m, visitC,isLock,isRead,true,isVolatile);
         }
     }
 
-    private long incAndGetVisitCount(Integer iid) {
+    /**
+     * counts a visit of iid when javato.track.iid.visit.count is set; safe to
+     * call from several threads
+     *
+     * @param iid
+     * @return the number of visits of iid so far, or 0 if visits are not counted
+     */
+    public long incAndGetVisitCount(Integer iid) {
         if (Parameters.LOG_IID_VISIT_COUNT) {
-            MutableLong l = iidVisitCount.get(iid);
-            if (l==null) {
-                l = new MutableLong(0);
-                iidVisitCount.put(iid,l);
-            }
-            (l.val)++;
-            return l.val;
+            return iidVisitCount.incAndGet(iid);
         }
         return 0;
     }
@@ -130,7 +221,7 @@ public class HybridRaceTracker {
                                 boolean isLock, boolean isRead1, boolean isRead2, boolean isVolatile) {
         for (Integer t2 : threadLists.keySet()) {
             if (!t2.equals(t)) {
-                Long c2 = vc.getValue(t2);
+                long c2 = vc.getValue(t2);
                 LinkedList<VCLockPair> vcs = threadLists.get(t2);
                 for (VCLockPair c : vcs) {
                     if (c2 < c.getClock()) {
@@ -147,32 +238,7 @@ public class HybridRaceTracker {
                                     cp = new CommutativePair(iid, iidVisitCount,isRead1,iid2,iid2Count,isRead2,isLock,isVolatile);
                                     if (Parameters.trackWaitNotifyOnly && !isLock)
                                         return;
-                                    if (!alreadySeenRaces.contains(cp)) {
-                                        //printLocation();
-                                        alreadySeenRaces.add(cp);
-                                        if (isLock) lockRaceCount++;
-                                        else dataRaceCount++;
-                                        if (Parameters.LOG_IID_VISIT_COUNT) {
-                                            if (isLock)
-                                                System.out.print("Lock race between ");
-                                            else
-                                                System.out.print("Data race between ");
-
-                                            System.out.println(javato.activetesting.analysis.Observer.getIidToLine(iid) + ":"+iidVisitCount+ " and "
-                                                    + javato.activetesting.analysis.Observer.getIidToLine(iid2)+":"+iid2Count);
-                                        } else {
-                                            if (isLock)
-                                                System.out.print("Lock race between ");
-                                            else
-                                                System.out.print("Data race between ");
-                                            System.out.println(javato.activetesting.analysis.Observer.getIidToLine(iid) + " and "
-                                                    + javato.activetesting.analysis.Observer.getIidToLine(iid2));
-
-                                        }
-                                    } else if (Parameters.removeOlderRace) {
-                                        alreadySeenRaces.remove(cp);
-                                        alreadySeenRaces.add(cp);
-                                    }
+                                    raceDetected(cp, iid, iidVisitCount, iid2, iid2Count, isLock);
                                 }
                             }
                         }
@@ -185,17 +251,71 @@ public class HybridRaceTracker {
         }
     }
 
+    /**
+     * records or reports a race found by checkRace
+     *
+     * @param cp
+     * @param iid
+     * @param iidVisitCount
+     * @param iid2
+     * @param iid2Count
+     * @param isLock
+     */
+    protected void raceDetected(CommutativePair cp, Integer iid, long iidVisitCount, Integer iid2, long iid2Count,
+                                boolean isLock) {
+        if (!alreadySeenRaces.contains(cp)) {
+            //printLocation();
+            alreadySeenRaces.add(cp);
+            if (isLock) lockRaceCount++;
+            else dataRaceCount++;
+            if (Parameters.LOG_IID_VISIT_COUNT) {
+                if (isLock)
+                    System.out.print("Lock race between ");
+                else
+                    System.out.print("Data race between ");
+
+                System.out.println(javato.activetesting.analysis.Observer.getIidToLine(iid) + ":"+iidVisitCount+ " and "
+                        + javato.activetesting.analysis.Observer.getIidToLine(iid2)+":"+iid2Count);
+            } else {
+                if (isLock)
+                    System.out.print("Lock race between ");
+                else
+                    System.out.print("Data race between ");
+                System.out.println(javato.activetesting.analysis.Observer.getIidToLine(iid) + " and "
+                        + javato.activetesting.analysis.Observer.getIidToLine(iid2));
+
+            }
+        } else if (Parameters.removeOlderRace) {
+            alreadySeenRaces.remove(cp);
+            alreadySeenRaces.add(cp);
+        }
+    }
+
     public void addEvent(Integer iid, Integer t, Long m, boolean isRead, VectorClock vc, LockSet ls) {
-        Map<Long, Map<Integer, LinkedList<VCLockPair>>> currentMap = isRead ? readMap : writeMap;
-        Map<Integer, LinkedList<VCLockPair>> threadLists = currentMap.get(m);
+        addEvent(iid, t, m, isRead, vc, ls, Parameters.LOG_IID_VISIT_COUNT ? iidVisitCount.get(iid) : 0);
+    }
+
+    /**
+     * same as addEvent, but with the visit count of iid computed by the caller
+     */
+    public void addEvent(Integer iid, Integer t, Long m, boolean isRead, VectorClock vc, LockSet ls, long visitC) {
+        LocationMap<Location> currentMap = isRead ? readMap : writeMap;
+        Location threadLists = currentMap.get(m);
         if (threadLists == null) {
-            threadLists = new TreeMap<Integer, LinkedList<VCLockPair>>();
+            threadLists = new Location(m, isRead);
+            if (maxLocations > 0) {
+                admit(threadLists);
+            }
             currentMap.put(m, threadLists);
+            shadowMemory.added(1);
+        } else {
+            threadLists.referenced = true;
         }
-        addEventAux(iid, threadLists, t, vc, ls);
+        addEventAux(iid, threadLists, t, vc, ls, visitC);
     }
 
-    protected void addEventAux(Integer iid, Map<Integer, LinkedList<VCLockPair>> threadLists, Integer t, VectorClock vc, LockSet ls) {
+    protected void addEventAux(Integer iid, Map<Integer, LinkedList<VCLockPair>> threadLists, Integer t, VectorClock vc, LockSet ls,
+                               long visitC) {
         LinkedList<VCLockPair> vcLists = threadLists.get(t);
         if (vcLists == null) {
             vcLists = new LinkedList<VCLockPair>();
@@ -216,11 +336,11 @@ public class HybridRaceTracker {
         TreeMap<Integer,Long> iids = lockSets.get(ls);
         if (iids == null) {
             iids = new TreeMap<Integer,Long>();
-            lockSets.put(new LockSet(ls), iids);
+            lockSets.put(ls, iids);
         }
         if (Parameters.removeOlderAccess || (!Parameters.removeOlderAccess && !iids.containsKey(iid))) {
             if (Parameters.LOG_IID_VISIT_COUNT) {
-                iids.put(iid,iidVisitCount.get(iid).val);
+                iids.put(iid,visitC);
             } else {
                 iids.put(iid,0l);
             }
@@ -228,6 +348,72 @@ public class HybridRaceTracker {
     }
 
 
+    /**
+     * drops the access history of the object with the given id, both of its
+     * fields (or elements) and of the object used as a lock.  Object ids are
+     * never reused, so this is safe once the object has been collected.
+     *
+     * @param id
+     */
+    public void objectCollected(int id) {
+        long n = removeObject(readMap, id) + removeObject(writeMap, id);
+        if (n > 0) {
+            shadowMemory.reclaimed(n);
+        }
+    }
+
+    private int removeObject(LocationMap<Location> map, int id) {
+        List<Location> removed = map.removeObject(id);
+        if (maxLocations > 0) {
+            for (Location l : removed) {
+                release(l);
+            }
+        }
+        return removed.size();
+    }
+
+    /**
+     * splits a bound on locations between n trackers that each see part of the memory
+     *
+     * @param maxLocations the bound, or 0 for no limit
+     * @param n
+     * @return
+     */
+    static int share(int maxLocations, int n) {
+        return maxLocations <= 0 ? 0 : Math.max(1, (maxLocations + n - 1) / n);
+    }
+
+    // gives l a slot of the clock, evicting the first unreferenced location if all slots are taken
+    private void admit(Location l) {
+        while (true) {
+            Location victim = clock[hand];
+            if (victim == null) {
+                break;
+            }
+            if (nLocations < maxLocations) {
+                // there is a free slot further on
+            } else if (victim.referenced) {
+                victim.referenced = false;
+            } else {
+                (victim.isRead ? readMap : writeMap).remove(victim.m);
+                clock[hand] = null;
+                nLocations--;
+                shadowMemory.evicted(1);
+                break;
+            }
+            hand = (hand + 1) % maxLocations;
+        }
+        clock[hand] = l;
+        l.slot = hand;
+        nLocations++;
+        hand = (hand + 1) % maxLocations;
+    }
+
+    private void release(Location l) {
+        clock[l.slot] = null;
+        nLocations--;
+    }
+
     public void printLocation() {
         Throwable t = new Throwable();
         StackTraceElement[] elems = t.getStackTrace();
@@ -0,0 +1,108 @@
+package javato.activetesting.hybridracedetection;
+
+import javato.activetesting.common.IntObjectMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class LocationMap<V> {
+    /*
+     * A memory location is objectId << 32 + field (see Observer.primitiveIdInt),
+     * and a lock used in a lock race is just its object id.  Keeping the
+     * locations of an object together in a map of their own lets the history
+     * of a collected object be dropped without looking at any other location.
+     */
+    private final IntObjectMap<IntObjectMap<V>> objects = new IntObjectMap<IntObjectMap<V>>();
+    private int size = 0;
+
+    public V get(long m) {
+        IntObjectMap<V> fields = objects.get((int) (m >>> 32));
+        return fields == null ? null : fields.get((int) m);
+    }
+
+    public void put(long m, V v) {
+        int object = (int) (m >>> 32);
+        IntObjectMap<V> fields = objects.get(object);
+        if (fields == null) {
+            fields = new IntObjectMap<V>(4);
+            objects.put(object, fields);
+        }
+        if (fields.put((int) m, v) == null) {
+            size++;
+        }
+    }
+
+    public V remove(long m) {
+        int object = (int) (m >>> 32);
+        IntObjectMap<V> fields = objects.get(object);
+        if (fields == null) {
+            return null;
+        }
+        V v = fields.remove((int) m);
+        if (v != null) {
+            size--;
+            if (fields.isEmpty()) {
+                objects.remove(object);
+            }
+        }
+        return v;
+    }
+
+    /**
+     * removes the fields of the object with the given id and the object as a lock
+     *
+     * @param id
+     * @return the removed values
+     */
+    public List<V> removeObject(int id) {
+        List<V> ret;
+        IntObjectMap<V> fields = objects.remove(id);
+        if (fields == null) {
+            ret = new ArrayList<V>(1);
+        } else {
+            ret = fields.values();
+            size -= ret.size();
+        }
+        V lock = remove(id);
+        if (lock != null) {
+            ret.add(lock);
+        }
+        return ret;
+    }
+
+    public int size() {
+        return size;
+    }
+}
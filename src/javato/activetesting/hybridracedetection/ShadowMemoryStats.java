@@ -0,0 +1,86 @@
+package javato.activetesting.hybridracedetection;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class ShadowMemoryStats {
+    // memory locations that currently have an access history
+    private final AtomicLong retained = new AtomicLong(0);
+    private final AtomicLong peak = new AtomicLong(0);
+    private final AtomicLong reclaimed = new AtomicLong(0);
+    // histories dropped to stay within javato.race.maxLocations; races involving them are missed
+    private final AtomicLong evicted = new AtomicLong(0);
+
+    public void added(long n) {
+        long r = retained.addAndGet(n);
+        while (true) {
+            long p = peak.get();
+            if (r <= p || peak.compareAndSet(p, r)) {
+                return;
+            }
+        }
+    }
+
+    public void reclaimed(long n) {
+        retained.addAndGet(-n);
+        reclaimed.addAndGet(n);
+    }
+
+    public void evicted(long n) {
+        retained.addAndGet(-n);
+        evicted.addAndGet(n);
+    }
+
+    public long getRetained() {
+        return retained.get();
+    }
+
+    public long getPeak() {
+        return peak.get();
+    }
+
+    public long getReclaimed() {
+        return reclaimed.get();
+    }
+
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    public void print(PrintStream out) {
+        out.println("# of shadow memory locations: peak " + getPeak() + ", retained " + getRetained()
+                + ", reclaimed " + getReclaimed() + ", evicted " + getEvicted());
+    }
+}
@@ -0,0 +1,281 @@
+package javato.activetesting.hybridracedetection;
+
+import javato.activetesting.common.Parameters;
+import javato.activetesting.lockset.LockSet;
+import javato.activetesting.vc.VectorClock;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class ShardedRaceTracker {
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_CAPACITY = 64;
+    private static final Access[] DONE = new Access[0];
+
+    // visit counts, races of earlier runs, and the merged result
+    private final HybridRaceTracker merged;
+    private final Shard[] shards;
+    private final ExecutorService executor;
+    private final List<Future<?>> futures = new ArrayList<Future<?>>();
+    private long nAccesses = 0;
+
+    private static class Access {
+        final long index;
+        final Integer iid;
+        final Integer t;
+        final Long m;
+        final boolean isRead;
+        final boolean isLock;
+        final boolean isVolatile;
+        final VectorClock vc;
+        final LockSet ls;
+        final long visitCount;
+
+        Access(long index, Integer iid, Integer t, Long m, boolean isRead, boolean isLock, boolean isVolatile,
+               VectorClock vc, LockSet ls, long visitCount) {
+            this.index = index;
+            this.iid = iid;
+            this.t = t;
+            this.m = m;
+            this.isRead = isRead;
+            this.isLock = isLock;
+            this.isVolatile = isVolatile;
+            this.vc = vc;
+            this.ls = ls;
+            this.visitCount = visitCount;
+        }
+    }
+
+    // a race as found by a shard; index is the position of the racing access in the event stream
+    private static class Detection implements Comparable<Detection> {
+        final long index;
+        final int seq;
+        final CommutativePair cp;
+        final Integer iid;
+        final long iidVisitCount;
+        final Integer iid2;
+        final long iid2Count;
+        final boolean isLock;
+
+        Detection(long index, int seq, CommutativePair cp, Integer iid, long iidVisitCount, Integer iid2,
+                  long iid2Count, boolean isLock) {
+            this.index = index;
+            this.seq = seq;
+            this.cp = cp;
+            this.iid = iid;
+            this.iidVisitCount = iidVisitCount;
+            this.iid2 = iid2;
+            this.iid2Count = iid2Count;
+            this.isLock = isLock;
+        }
+
+        public int compareTo(Detection d) {
+            if (index != d.index) return index < d.index ? -1 : 1;
+            return seq - d.seq;
+        }
+    }
+
+    /**
+     * checks the accesses to the memory locations that hash to it, in the
+     * order in which they were made, on a thread of its own
+     */
+    private static class Shard extends HybridRaceTracker implements Runnable {
+        final BlockingQueue<Access[]> queue = new ArrayBlockingQueue<Access[]>(QUEUE_CAPACITY);
+        final List<Detection> detections = new ArrayList<Detection>();
+        private final Set<CommutativePair> seen = new HashSet<CommutativePair>();
+        private long current;
+        // the first exception thrown while checking an access, and how many accesses failed
+        Throwable failure;
+        int nFailures = 0;
+
+        // filled by the producer only
+        Access[] batch = new Access[BATCH_SIZE];
+        int batchSize = 0;
+
+        Shard(HybridRaceTracker merged, int maxLocations) {
+            super(merged, maxLocations);
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    Access[] accesses = queue.take();
+                    if (accesses == DONE) {
+                        return;
+                    }
+                    for (Access a : accesses) {
+                        current = a.index;
+                        // keep draining the queue whatever happens, or the producer
+                        // blocks for good once it is full
+                        try {
+                            checkRace(a.iid, a.t, a.m, a.isRead, a.vc, a.ls, a.isLock, a.isVolatile, a.visitCount);
+                            addEvent(a.iid, a.t, a.m, a.isRead, a.vc, a.ls, a.visitCount);
+                        } catch (Throwable e) {
+                            if (failure == null) {
+                                failure = e;
+                            }
+                            nFailures++;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        protected void raceDetected(CommutativePair cp, Integer iid, long iidVisitCount, Integer iid2, long iid2Count,
+                                    boolean isLock) {
+            // only the first detection matters unless a repeated race moves to the end of the list
+            if (seen.add(cp) || Parameters.removeOlderRace) {
+                detections.add(new Detection(current, detections.size(), cp, iid, iidVisitCount, iid2, iid2Count, isLock));
+            }
+        }
+    }
+
+    public ShardedRaceTracker() {
+        this(Parameters.raceShards);
+    }
+
+    /**
+     * @param nShards number of memory location partitions, each checked by its own thread
+     */
+    public ShardedRaceTracker(int nShards) {
+        this(nShards, new HybridRaceTracker());
+    }
+
+    ShardedRaceTracker(int nShards, HybridRaceTracker merged) {
+        this.merged = merged;
+        shards = new Shard[Math.max(1, nShards)];
+        executor = Executors.newFixedThreadPool(shards.length, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "javato-race-shard");
+                // must not keep the JVM from running the shutdown hook that calls dumpRaces
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(merged, HybridRaceTracker.share(Parameters.maxRaceLocations, shards.length));
+            futures.add(executor.submit(shards[i]));
+        }
+    }
+
+    private Shard shardFor(Long m) {
+        long v = m;
+        int h = (int) (v ^ (v >>> 32));
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return shards[(h & 0x7fffffff) % shards.length];
+    }
+
+    /**
+     * the equivalent of HybridRaceTracker.checkRace followed by addEvent.
+     * vc and ls are read later from another thread and must not be modified
+     * afterwards by the caller.
+     */
+    public void checkRaceAndAddEvent(Integer iid, Integer t, Long m, boolean isRead, VectorClock vc, LockSet ls,
+                                     boolean isLock, boolean isVolatile) {
+        long visitCount = merged.incAndGetVisitCount(iid);
+        Shard s = shardFor(m);
+        s.batch[s.batchSize++] = new Access(nAccesses++, iid, t, m, isRead, isLock, isVolatile, vc, ls, visitCount);
+        if (s.batchSize == BATCH_SIZE) {
+            put(s, s.batch);
+            s.batch = new Access[BATCH_SIZE];
+            s.batchSize = 0;
+        }
+    }
+
+    private void put(Shard s, Access[] accesses) {
+        try {
+            s.queue.put(accesses);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * waits for all shards and merges their races, in the order a single
+     * HybridRaceTracker would have found them
+     */
+    HybridRaceTracker merge() {
+        for (Shard s : shards) {
+            if (s.batchSize > 0) {
+                put(s, Arrays.copyOf(s.batch, s.batchSize));
+                s.batchSize = 0;
+            }
+            put(s, DONE);
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+        executor.shutdown();
+
+        List<Detection> detections = new ArrayList<Detection>();
+        for (Shard s : shards) {
+            if (s.failure != null) {
+                System.err.println("Race checking failed on " + s.nFailures + " accesses; the first failure was:");
+                s.failure.printStackTrace();
+            }
+            detections.addAll(s.detections);
+        }
+        Collections.sort(detections);
+        for (Detection d : detections) {
+            merged.raceDetected(d.cp, d.iid, d.iidVisitCount, d.iid2, d.iid2Count, d.isLock);
+        }
+        return merged;
+    }
+
+    // the number of accesses whose check threw, known after merge
+    int getFailedAccesses() {
+        int n = 0;
+        for (Shard s : shards) {
+            n += s.nFailures;
+        }
+        return n;
+    }
+
+    /**
+     * merges the races of all shards and writes error.log and error.list
+     */
+    public void dumpRaces() {
+        merge().dumpRaces();
+    }
+}
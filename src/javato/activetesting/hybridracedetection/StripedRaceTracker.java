@@ -0,0 +1,195 @@
+package javato.activetesting.hybridracedetection;
+
+import javato.activetesting.common.Parameters;
+import javato.activetesting.lockset.LockSet;
+import javato.activetesting.vc.VectorClock;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class StripedRaceTracker {
+    /*
+     * Together with VectorClockTracker and LocalLockSetTracker this lets an
+     * analysis run without a global lock.  The vector clock and lockset of a
+     * thread are only modified by the events of that thread (startBefore and
+     * joinAfter by the parent), the access history of a memory location is
+     * guarded by its stripe, and the only state shared between threads, the
+     * notify messages, is guarded inside VectorClockTracker.
+     */
+    // visit counts, races of earlier runs, and the races found so far; guarded by itself,
+    // except for the visit counts, which are thread safe
+    private final HybridRaceTracker merged;
+    private final Stripe[] stripes;
+    private final int mask;
+    // set while a thread drops the history of collected objects from all stripes
+    private final AtomicBoolean reclaiming = new AtomicBoolean(false);
+    private static final int RECLAIM_INTERVAL = 4096;
+
+    /**
+     * the access history of the memory locations that hash to it; guarded by itself
+     */
+    private class Stripe extends HybridRaceTracker {
+        int nAccesses = 0;
+
+        Stripe(int maxLocations) {
+            super(merged, maxLocations);
+        }
+
+        protected void raceDetected(CommutativePair cp, Integer iid, long iidVisitCount, Integer iid2, long iid2Count,
+                                    boolean isLock) {
+            synchronized (merged) {
+                merged.raceDetected(cp, iid, iidVisitCount, iid2, iid2Count, isLock);
+            }
+        }
+    }
+
+    public StripedRaceTracker() {
+        this(Parameters.raceStripes);
+    }
+
+    /**
+     * @param nStripes number of independently locked memory location partitions,
+     *                 rounded up to a power of two
+     */
+    public StripedRaceTracker(int nStripes) {
+        this(nStripes, new HybridRaceTracker());
+    }
+
+    StripedRaceTracker(int nStripes, HybridRaceTracker merged) {
+        this.merged = merged;
+        int n = 1;
+        while (n < nStripes) n <<= 1;
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new Stripe(HybridRaceTracker.share(Parameters.maxRaceLocations, n));
+        }
+        mask = n - 1;
+        if (!Parameters.keepCollectedHistory) {
+            javato.activetesting.analysis.Observer.trackCollectedObjects();
+        }
+    }
+
+    private Stripe stripeFor(Long m) {
+        long v = m;
+        int h = (int) (v ^ (v >>> 32));
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return stripes[h & mask];
+    }
+
+    /**
+     * the equivalent of HybridRaceTracker.checkRace followed by addEvent, atomic
+     * with respect to other accesses to m.  May be called concurrently by different
+     * threads as long as vc and ls are owned by the calling thread (or are not
+     * modified during the call).
+     */
+    public void checkRaceAndAddEvent(Integer iid, Integer t, Long m, boolean isRead, VectorClock vc, LockSet ls,
+                                     boolean isLock, boolean isVolatile) {
+        long visitCount = merged.incAndGetVisitCount(iid);
+        Stripe s = stripeFor(m);
+        boolean reclaim;
+        synchronized (s) {
+            s.checkRace(iid, t, m, isRead, vc, ls, isLock, isVolatile, visitCount);
+            s.addEvent(iid, t, m, isRead, vc, ls, visitCount);
+            reclaim = ++s.nAccesses % RECLAIM_INTERVAL == 0;
+        }
+        // outside the stripe lock: reclaiming takes the stripe locks one by one
+        if (reclaim && !Parameters.keepCollectedHistory) {
+            reclaimCollectedObjects();
+        }
+    }
+
+    /**
+     * drops the access history of the objects that have been garbage collected
+     * since the last call; does nothing if another thread is already doing so
+     */
+    public void reclaimCollectedObjects() {
+        if (!reclaiming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int[] ids = new int[16];
+            int n = 0;
+            int id;
+            while ((id = javato.activetesting.analysis.Observer.pollCollectedObjectId()) != -1) {
+                if (n == ids.length) {
+                    ids = Arrays.copyOf(ids, n * 2);
+                }
+                ids[n++] = id;
+            }
+            if (n > 0) {
+                reclaim(ids, n);
+            }
+        } finally {
+            reclaiming.set(false);
+        }
+    }
+
+    void reclaim(int[] ids, int n) {
+        // the fields of an object are spread over all stripes
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                for (int i = 0; i < n; i++) {
+                    s.objectCollected(ids[i]);
+                }
+            }
+        }
+    }
+
+    public ShadowMemoryStats getShadowMemory() {
+        return merged.getShadowMemory();
+    }
+
+    /**
+     * returns a copy of the races found so far, including those of earlier runs
+     *
+     * @return
+     */
+    public LinkedHashSet<CommutativePair> getRaces() {
+        synchronized (merged) {
+            return new LinkedHashSet<CommutativePair>(merged.getRaces());
+        }
+    }
+
+    public void dumpRaces() {
+        if (!Parameters.keepCollectedHistory) {
+            reclaimCollectedObjects();
+        }
+        synchronized (merged) {
+            merged.dumpRaces();
+        }
+    }
+}
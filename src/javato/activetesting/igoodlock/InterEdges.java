@@ -1,6 +1,9 @@
 package javato.activetesting.igoodlock;
 
 
+import javato.activetesting.common.IntObjectMap;
+
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Set;
@@ -40,10 +43,10 @@ import java.util.TreeMap;
  */
 public class InterEdges {
     // lock -> thread -> lockNode list
-    private TreeMap<Integer, TreeMap<Integer, LinkedList<LockNode>>> map;
+    private IntObjectMap<TreeMap<Integer, LinkedList<LockNode>>> map;
 
     public InterEdges() {
-        map = new TreeMap<Integer, TreeMap<Integer, LinkedList<LockNode>>>();
+        map = new IntObjectMap<TreeMap<Integer, LinkedList<LockNode>>>();
     }
 
     public void addLockNode(LockNode lockNode) {
@@ -110,7 +113,9 @@ public class InterEdges {
 
     public void printInterEdges() {
         System.out.println("Printing InterEdges:");
-        for (Integer lockId : map.keySet()) {
+        int[] lockIds = map.keys();
+        Arrays.sort(lockIds);
+        for (int lockId : lockIds) {
             TreeMap<Integer, LinkedList<LockNode>> threadToLockNodes = map.get(lockId);
             System.out.println("Lock " + lockId);
             for (Integer threadId : threadToLockNodes.keySet()) {
@@ -0,0 +1,119 @@
+package javato.activetesting.instrumentor;
+
+import javato.activetesting.hybridracedetection.CommutativePair;
+import javato.activetesting.igoodlock.DeadlockCycleInfo;
+import javato.activetesting.igoodlock.Node;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class FuzzingTargets {
+    private final HashSet<Integer> iids;
+    private final boolean lockCycles;
+
+    /**
+     * @param iids       the iids the active checker pauses at
+     * @param lockCycles true if they come from lock cycles, whose checker needs
+     *                   every lock and unlock to track locksets
+     */
+    public FuzzingTargets(Set<Integer> iids, boolean lockCycles) {
+        this.iids = new HashSet<Integer>(iids);
+        this.lockCycles = lockCycles;
+    }
+
+    public boolean contains(int iid) {
+        return iids.contains(iid);
+    }
+
+    public boolean isLockCycles() {
+        return lockCycles;
+    }
+
+    public int size() {
+        return iids.size();
+    }
+
+    /**
+     * reads the iids of the races or lock cycles that the first phase wrote to
+     * the error log
+     *
+     * @param file
+     * @return the targets, or null if the file cannot be read
+     */
+    public static FuzzingTargets read(String file) {
+        if (!new File(file).exists()) {
+            System.err.println("No " + file + " to take the iids of the active checker from");
+            return null;
+        }
+        Object o;
+        try {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                o = in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            System.err.println("Error while reading " + file + ": " + e);
+            return null;
+        }
+        HashSet<Integer> iids = new HashSet<Integer>();
+        if (o instanceof DeadlockCycleInfo) {
+            for (List<Node> cycle : ((DeadlockCycleInfo) o).getCycles()) {
+                for (Node node : cycle) {
+                    iids.addAll(node.getContext());
+                }
+            }
+            return new FuzzingTargets(iids, true);
+        }
+        if (o instanceof Collection) {
+            for (Object p : (Collection) o) {
+                if (p instanceof CommutativePair) {
+                    iids.add(((CommutativePair) p).getFirstIid());
+                    iids.add(((CommutativePair) p).getSecondIid());
+                }
+            }
+            return new FuzzingTargets(iids, false);
+        }
+        System.err.println(file + " holds neither races nor lock cycles");
+        return null;
+    }
+}
@@ -1,6 +1,7 @@
 package javato.activetesting.instrumentor;
 
 import javato.activetesting.common.Parameters;
+import javato.instrumentor.ParallelInstrumentation;
 import javato.instrumentor.RecursiveVisitor;
 import javato.instrumentor.TransformClass;
 import javato.instrumentor.Visitor;
@@ -43,8 +44,16 @@ public class InstrumentorForActiveTesting {
         VisitorForActiveTesting pv = new VisitorForActiveTesting(vv);
         vv.setNextVisitor(pv);
         Visitor.setObserverClass("javato.activetesting.analysis.ObserverForActiveTesting");
-        TransformClass processor = new TransformClass();
-        processor.processAllAtOnce(args, pv);
+        if (ParallelInstrumentation.isWorker()) {
+            ParallelInstrumentation.runWorker(args, pv);
+            return;
+        }
+        // the escape analysis needs every class in one JVM
+        if (Parameters.instrWorkers <= 1 || Parameters.ignoreThreadLocal
+                || !ParallelInstrumentation.run(InstrumentorForActiveTesting.class.getName(), args, Parameters.instrWorkers)) {
+            TransformClass processor = new TransformClass();
+            processor.processAllAtOnce(args, pv);
+        }
         Visitor.dumpIidToLine();
         pv.writeSymTblSize();
     }
@@ -0,0 +1,219 @@
+package javato.activetesting.instrumentor;
+
+import soot.Body;
+import soot.Local;
+import soot.Modifier;
+import soot.Trap;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.ArrayRef;
+import soot.jimple.AssignStmt;
+import soot.jimple.FieldRef;
+import soot.jimple.InstanceFieldRef;
+import soot.jimple.MonitorStmt;
+import soot.jimple.Stmt;
+import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+class RedundantAccessAnalysis {
+    /**
+     * a field or array element, named by the locals and constants of the
+     * statement that accesses it
+     */
+    private static class Location {
+        // the base local, or null for a static field
+        final Value base;
+        // the field, or the index of an array element
+        final Object member;
+
+        Location(Value base, Object member) {
+            this.base = base;
+            this.member = member;
+        }
+
+        boolean uses(Value v) {
+            return base == v || member == v;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Location)) {
+                return false;
+            }
+            Location l = (Location) o;
+            // locals compare by identity, int constants by value
+            return base == l.base && member.equals(l.member);
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(base) * 31 + member.hashCode();
+        }
+    }
+
+    private RedundantAccessAnalysis() {
+    }
+
+    /**
+     * Returns the statements of the body whose field or array access need not be
+     * instrumented: on every path to them the same location has already been
+     * accessed, written if they write, with no monitor, call or volatile access
+     * in between.  Such an access has the same lockset and happens-before
+     * predecessors as the earlier one, so it cannot race where that one does not.
+     * Must run before anything is inserted into the body.
+     *
+     * @param body
+     * @return
+     */
+    static HashSet<Stmt> compute(Body body) {
+        UnitGraph g = new BriefUnitGraph(body);
+        HashSet<Unit> handlers = new HashSet<Unit>();
+        for (Iterator it = body.getTraps().iterator(); it.hasNext();) {
+            handlers.add(((Trap) it.next()).getHandlerUnit());
+        }
+        // location -> true if it has been written on every path, false if only read
+        HashMap<Unit, HashMap<Location, Boolean>> out = new HashMap<Unit, HashMap<Location, Boolean>>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Iterator it = body.getUnits().iterator(); it.hasNext();) {
+                Stmt s = (Stmt) it.next();
+                HashMap<Location, Boolean> before = in(s, g, handlers, out);
+                if (before == null) {
+                    continue;
+                }
+                HashMap<Location, Boolean> after = flowThrough(s, before);
+                if (!after.equals(out.get(s))) {
+                    out.put(s, after);
+                    changed = true;
+                }
+            }
+        }
+
+        HashSet<Stmt> ret = new HashSet<Stmt>();
+        for (Iterator it = body.getUnits().iterator(); it.hasNext();) {
+            Stmt s = (Stmt) it.next();
+            Location l = getLocation(s);
+            HashMap<Location, Boolean> before = in(s, g, handlers, out);
+            if (l != null && before != null && !isVolatile(s)) {
+                Boolean written = before.get(l);
+                if (written != null && (written || !isWrite(s))) {
+                    ret.add(s);
+                }
+            }
+        }
+        return ret;
+    }
+
+    // the intersection over the predecessors reached so far, or null if there are
+    // none yet; nothing holds at the entry and at exception handlers
+    private static HashMap<Location, Boolean> in(Stmt s, UnitGraph g, HashSet<Unit> handlers,
+                                                 HashMap<Unit, HashMap<Location, Boolean>> out) {
+        HashMap<Location, Boolean> ret = null;
+        List preds = g.getPredsOf(s);
+        if (preds.isEmpty() || handlers.contains(s)) {
+            return new HashMap<Location, Boolean>();
+        }
+        for (Iterator it = preds.iterator(); it.hasNext();) {
+            HashMap<Location, Boolean> p = out.get(it.next());
+            if (p == null) {
+                // not reached yet
+                continue;
+            }
+            if (ret == null) {
+                ret = new HashMap<Location, Boolean>(p);
+            } else {
+                for (Iterator<Map.Entry<Location, Boolean>> eit = ret.entrySet().iterator(); eit.hasNext();) {
+                    Map.Entry<Location, Boolean> e = eit.next();
+                    Boolean w = p.get(e.getKey());
+                    if (w == null) {
+                        eit.remove();
+                    } else if (!w) {
+                        e.setValue(Boolean.FALSE);
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static HashMap<Location, Boolean> flowThrough(Stmt s, HashMap<Location, Boolean> in) {
+        if (s.containsInvokeExpr() || s instanceof MonitorStmt || isVolatile(s)) {
+            return new HashMap<Location, Boolean>();
+        }
+        HashMap<Location, Boolean> ret = new HashMap<Location, Boolean>(in);
+        Location l = getLocation(s);
+        if (l != null && (isWrite(s) || !ret.containsKey(l))) {
+            ret.put(l, isWrite(s));
+        }
+        for (Iterator it = s.getDefBoxes().iterator(); it.hasNext();) {
+            Value v = ((ValueBox) it.next()).getValue();
+            if (v instanceof Local) {
+                for (Iterator<Location> lit = ret.keySet().iterator(); lit.hasNext();) {
+                    if (lit.next().uses(v)) {
+                        lit.remove();
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static Location getLocation(Stmt s) {
+        if (s.containsArrayRef()) {
+            ArrayRef a = s.getArrayRef();
+            return new Location(a.getBase(), a.getIndex());
+        }
+        if (s.containsFieldRef()) {
+            FieldRef f = s.getFieldRef();
+            return new Location(f instanceof InstanceFieldRef ? ((InstanceFieldRef) f).getBase() : null, f.getField());
+        }
+        return null;
+    }
+
+    private static boolean isWrite(Stmt s) {
+        return s instanceof AssignStmt
+                && (((AssignStmt) s).getLeftOp() instanceof ArrayRef || ((AssignStmt) s).getLeftOp() instanceof FieldRef);
+    }
+
+    private static boolean isVolatile(Stmt s) {
+        return s.containsFieldRef() && Modifier.isVolatile(s.getFieldRef().getField().getModifiers());
+    }
+}
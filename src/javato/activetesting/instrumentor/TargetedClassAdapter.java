@@ -0,0 +1,347 @@
+package javato.activetesting.instrumentor;
+
+import org.objectweb.asm.ClassAdapter;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodAdapter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class TargetedClassAdapter extends ClassAdapter implements Opcodes {
+    // calls that only feed the detectors of the first phase, unless their iid is a target
+    private static final HashSet<String> EVENTS = new HashSet<String>(Arrays.asList(
+            "myReadBefore", "myWriteBefore", "myVReadBefore", "myVWriteBefore",
+            "myWaitBefore", "myWaitAfter", "myNotifyBefore", "myNotifyAllBefore", "myJoinAfter",
+            "myMethodEnterBefore", "myMethodExitAfter",
+            "myNewExprInANonStaticMethodAfter", "myNewExprInAStaticMethodAfter"));
+    private static final HashSet<String> LOCK_EVENTS = new HashSet<String>(Arrays.asList(
+            "myLockBefore", "myLockBeforeCall", "myUnlockAfter", "myUnlockAfterCall"));
+
+    private final String observer;
+    private final FuzzingTargets targets;
+    private int kept = 0;
+    private int removed = 0;
+
+    /**
+     * Removes the calls to the observer that the active checker does not need:
+     * each is replaced by pops of its arguments, so the iids of the other calls
+     * stay as the first phase saw them.  Calls at a target iid, thread starts,
+     * and, for lock cycles, every lock and unlock are kept, as is any call whose
+     * iid cannot be told from the bytecode before it.
+     *
+     * @param cv
+     * @param observer internal name of the class whose my* methods are called
+     * @param targets
+     */
+    public TargetedClassAdapter(ClassVisitor cv, String observer, FuzzingTargets targets) {
+        super(cv);
+        this.observer = observer;
+        this.targets = targets;
+    }
+
+    public int getKept() {
+        return kept;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+        return mv == null ? null : new MethodFilter(mv);
+    }
+
+    private boolean isRemovable(String name) {
+        return EVENTS.contains(name) || (!targets.isLockCycles() && LOCK_EVENTS.contains(name));
+    }
+
+    /**
+     * follows the int constants on the operand stack, one entry per slot, so
+     * that the iid of a call is known when the call is reached.  Only the top
+     * of the stack since the last instruction it cannot follow is modelled;
+     * null stands for a slot whose value is not known.
+     */
+    private class MethodFilter extends MethodAdapter {
+        private final ArrayList<Integer> stack = new ArrayList<Integer>();
+
+        MethodFilter(MethodVisitor mv) {
+            super(mv);
+        }
+
+        private void push(Integer v) {
+            stack.add(v);
+        }
+
+        private void pushUnknown(int slots) {
+            for (int i = 0; i < slots; i++) {
+                stack.add(null);
+            }
+        }
+
+        private Integer pop() {
+            return stack.isEmpty() ? null : stack.remove(stack.size() - 1);
+        }
+
+        private void reset() {
+            stack.clear();
+        }
+
+        public void visitInsn(int opcode) {
+            Integer v1, v2, v3, v4;
+            switch (opcode) {
+                case ICONST_M1:
+                case ICONST_0:
+                case ICONST_1:
+                case ICONST_2:
+                case ICONST_3:
+                case ICONST_4:
+                case ICONST_5:
+                    push(opcode - ICONST_0);
+                    break;
+                case ACONST_NULL:
+                case FCONST_0:
+                case FCONST_1:
+                case FCONST_2:
+                    pushUnknown(1);
+                    break;
+                case LCONST_0:
+                case LCONST_1:
+                case DCONST_0:
+                case DCONST_1:
+                    pushUnknown(2);
+                    break;
+                case POP:
+                    pop();
+                    break;
+                case POP2:
+                    pop();
+                    pop();
+                    break;
+                case DUP:
+                    v1 = pop();
+                    push(v1);
+                    push(v1);
+                    break;
+                case DUP_X1:
+                    v1 = pop();
+                    v2 = pop();
+                    push(v1);
+                    push(v2);
+                    push(v1);
+                    break;
+                case DUP_X2:
+                    v1 = pop();
+                    v2 = pop();
+                    v3 = pop();
+                    push(v1);
+                    push(v3);
+                    push(v2);
+                    push(v1);
+                    break;
+                case DUP2:
+                    v1 = pop();
+                    v2 = pop();
+                    push(v2);
+                    push(v1);
+                    push(v2);
+                    push(v1);
+                    break;
+                case DUP2_X1:
+                    v1 = pop();
+                    v2 = pop();
+                    v3 = pop();
+                    push(v2);
+                    push(v1);
+                    push(v3);
+                    push(v2);
+                    push(v1);
+                    break;
+                case DUP2_X2:
+                    v1 = pop();
+                    v2 = pop();
+                    v3 = pop();
+                    v4 = pop();
+                    push(v2);
+                    push(v1);
+                    push(v4);
+                    push(v3);
+                    push(v2);
+                    push(v1);
+                    break;
+                case SWAP:
+                    v1 = pop();
+                    v2 = pop();
+                    push(v1);
+                    push(v2);
+                    break;
+                default:
+                    reset();
+            }
+            super.visitInsn(opcode);
+        }
+
+        public void visitIntInsn(int opcode, int operand) {
+            if (opcode == BIPUSH || opcode == SIPUSH) {
+                push(operand);
+            } else {
+                reset();
+            }
+            super.visitIntInsn(opcode, operand);
+        }
+
+        public void visitLdcInsn(Object cst) {
+            if (cst instanceof Integer) {
+                push((Integer) cst);
+            } else {
+                pushUnknown(cst instanceof Long || cst instanceof Double ? 2 : 1);
+            }
+            super.visitLdcInsn(cst);
+        }
+
+        public void visitVarInsn(int opcode, int var) {
+            if (opcode == ILOAD || opcode == FLOAD || opcode == ALOAD) {
+                pushUnknown(1);
+            } else if (opcode == LLOAD || opcode == DLOAD) {
+                pushUnknown(2);
+            } else {
+                reset();
+            }
+            super.visitVarInsn(opcode, var);
+        }
+
+        public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+            if (opcode != INVOKESTATIC || !owner.equals(observer) || !isRemovable(name)) {
+                reset();
+                super.visitMethodInsn(opcode, owner, name, desc);
+                return;
+            }
+            Type[] args = Type.getArgumentTypes(desc);
+            int slots = 0;
+            for (Type t : args) {
+                slots += t.getSize();
+            }
+            if (isTargeted(name, desc, args, slots)) {
+                kept++;
+                for (int i = 0; i < slots; i++) {
+                    pop();
+                }
+                super.visitMethodInsn(opcode, owner, name, desc);
+            } else {
+                removed++;
+                for (int i = args.length - 1; i >= 0; i--) {
+                    for (int j = 0; j < args[i].getSize(); j++) {
+                        pop();
+                    }
+                    super.visitInsn(args[i].getSize() == 2 ? POP2 : POP);
+                }
+            }
+        }
+
+        // true unless the iid, the first argument, is known and no int argument
+        // is a target; myUnlockAfterCall(iid, entryIid) and myUnlockAfter(iid)
+        // stay with the lock they end
+        private boolean isTargeted(String name, String desc, Type[] args, int slots) {
+            if (args.length == 0 || args[0].getSort() != Type.INT || stack.size() < slots) {
+                return true;
+            }
+            int pos = stack.size() - slots;
+            if (stack.get(pos) == null) {
+                return true;
+            }
+            if (name.equals("myUnlockAfter") && desc.equals("(I)V") && targets.contains(stack.get(pos) - 1)) {
+                return true;
+            }
+            for (Type t : args) {
+                Integer v = stack.get(pos);
+                if (t.getSort() == Type.INT && v != null && targets.contains(v)) {
+                    return true;
+                }
+                pos += t.getSize();
+            }
+            return false;
+        }
+
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            reset();
+            super.visitFieldInsn(opcode, owner, name, desc);
+        }
+
+        public void visitTypeInsn(int opcode, String type) {
+            reset();
+            super.visitTypeInsn(opcode, type);
+        }
+
+        public void visitJumpInsn(int opcode, Label label) {
+            reset();
+            super.visitJumpInsn(opcode, label);
+        }
+
+        public void visitLabel(Label label) {
+            reset();
+            super.visitLabel(label);
+        }
+
+        public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+            reset();
+            super.visitFrame(type, nLocal, local, nStack, stack);
+        }
+
+        public void visitIincInsn(int var, int increment) {
+            reset();
+            super.visitIincInsn(var, increment);
+        }
+
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label[] labels) {
+            reset();
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            reset();
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+
+        public void visitMultiANewArrayInsn(String desc, int dims) {
+            reset();
+            super.visitMultiANewArrayInsn(desc, dims);
+        }
+    }
+}
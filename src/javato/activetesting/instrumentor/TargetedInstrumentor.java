@@ -0,0 +1,128 @@
+package javato.activetesting.instrumentor;
+
+import javato.activetesting.common.Parameters;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class TargetedInstrumentor {
+    private static final String OBSERVER = "javato/activetesting/analysis/ObserverForActiveTesting";
+
+    private final FuzzingTargets targets;
+    private int kept = 0;
+    private int removed = 0;
+
+    public TargetedInstrumentor(FuzzingTargets targets) {
+        this.targets = targets;
+    }
+
+    /**
+     * rewrites the instrumented classes in the given directories in place, so
+     * that only the calls the active checker of the second phase needs are left
+     *
+     * @param args directories of instrumented classes, e.g. tmpclasses
+     */
+    public static void main(String[] args) {
+        FuzzingTargets targets = FuzzingTargets.read(Parameters.ERROR_LOG_FILE);
+        if (targets == null) {
+            System.exit(1);
+        }
+        TargetedInstrumentor t = new TargetedInstrumentor(targets);
+        try {
+            for (String dir : args) {
+                t.processAll(new File(dir));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("Targeted instrumentation: " + targets.size() + " target iids, kept "
+                + t.kept + " and removed " + t.removed + " calls");
+    }
+
+    private void processAll(File f) throws IOException {
+        if (f.isDirectory()) {
+            File[] list = f.listFiles();
+            for (File aList : list) {
+                processAll(aList);
+            }
+        } else if (f.getName().endsWith(".class")) {
+            byte[] bytes = rewrite(readAll(new FileInputStream(f)));
+            if (bytes != null) {
+                FileOutputStream out = new FileOutputStream(f);
+                try {
+                    out.write(bytes);
+                } finally {
+                    out.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param bytes an instrumented class file
+     * @return the class file without the calls that are not needed, or null if
+     *         every call is needed
+     */
+    public byte[] rewrite(byte[] bytes) {
+        ClassReader cr = new ClassReader(bytes);
+        ClassWriter cw = new ClassWriter(0);
+        TargetedClassAdapter ca = new TargetedClassAdapter(cw, OBSERVER, targets);
+        cr.accept(ca, 0);
+        kept += ca.getKept();
+        removed += ca.getRemoved();
+        return ca.getRemoved() == 0 ? null : cw.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package javato.activetesting.instrumentor;
 
+import java.util.HashSet;
 import java.util.LinkedList;
 
+import javato.instrumentor.ThreadEscapeAnalysis;
 import javato.instrumentor.UnknownASTNodeException;
 import javato.instrumentor.Visitor;
 import javato.instrumentor.contexts.*;
@@ -55,11 +57,17 @@ public class VisitorForActiveTesting extends Visitor {
     // call {open,close}DeterministicBlock.  This is needed for
     // performance, because tracking locals is very expensive.
     private boolean containsDeterministicBlock = false;
+    // field and array accesses of the current method that need no instrumentation
+    private HashSet<Stmt> redundantAccesses = new HashSet<Stmt>();
 
     public VisitorForActiveTesting(Visitor visitor) {
         super(visitor);
     }
 
+    public Class[] getHelperClasses() {
+        return new Class[]{RedundantAccessAnalysis.class, ThreadEscapeAnalysis.class, Parameters.class};
+    }
+
 
     public int getStSize() {
         return st.getSize();
@@ -123,6 +131,9 @@ public class VisitorForActiveTesting extends Visitor {
     }
 
     public void visitMethodBegin(SootMethod sm, Chain units) {
+        if (Parameters.ignoreRedundant) {
+            redundantAccesses = RedundantAccessAnalysis.compute(sm.getActiveBody());
+        }
         nextVisitor.visitMethodBegin(sm, units);
 
         if (!Parameters.trackDeterministicLocals)
@@ -235,6 +246,33 @@ public class VisitorForActiveTesting extends Visitor {
         nextVisitor.visitStmtExitMonitor(sm, units, exitMonitorStmt);
     }
 
+    private enum SyncStatus {
+        SYNC, NONSYNC, UNKNOWN
+    }
+
+    /**
+     * classifies an instance call that cannot dispatch to another method, i.e.
+     * a special invoke or a call of a private or final method or of a method of
+     * a final class: SYNC if the method is synchronized, NONSYNC if it is not.
+     * Every other call is UNKNOWN and left to the runtime check in
+     * myLockBefore(int,Object,String): outside the whole-program mode the Scene
+     * does not see every subclass that may override the method.
+     *
+     * @param invokeExpr
+     * @return
+     */
+    private static SyncStatus getSyncStatus(InstanceInvokeExpr invokeExpr) {
+        SootMethod m = invokeExpr.getMethod();
+        SootClass c = m.getDeclaringClass();
+        if (c.isPhantom()) {
+            return SyncStatus.UNKNOWN;
+        }
+        if (invokeExpr instanceof SpecialInvokeExpr || m.isPrivate() || m.isFinal() || c.isFinal()) {
+            return m.isSynchronized() ? SyncStatus.SYNC : SyncStatus.NONSYNC;
+        }
+        return SyncStatus.UNKNOWN;
+    }
+
     public void visitInstanceInvokeExpr(SootMethod sm, Chain units, Stmt s, InstanceInvokeExpr invokeExpr, InvokeContext context) {
         Value base = invokeExpr.getBase();
         String sig = invokeExpr.getMethod().getSubSignature();
@@ -269,12 +307,19 @@ public class VisitorForActiveTesting extends Visitor {
         }
 
         if (sig.indexOf("<init>") == -1) {
-            if (!Parameters.ignoreConcurrency) {
-                String ssig = sig.substring(sig.indexOf(' ') + 1);
-                Value sig2 = StringConstant.v(ssig);
-                addCallWithObjectString(units, s, "myLockBefore", base, sig2, true);
-                // t = t.syncMethod() is problematic, so do not pass t
-                addCall(units, s, "myUnlockAfter", false);
+            SyncStatus status = Parameters.ignoreConcurrency ? SyncStatus.NONSYNC : getSyncStatus(invokeExpr);
+            if (status != SyncStatus.NONSYNC) {
+                int entryIid = getNextIid();
+                if (status == SyncStatus.SYNC) {
+                    addCallWithObject(units, s, "myLockBeforeCall", base, true);
+                } else {
+                    String ssig = sig.substring(sig.indexOf(' ') + 1);
+                    Value sig2 = StringConstant.v(ssig);
+                    addCallWithObjectString(units, s, "myLockBefore", base, sig2, true);
+                }
+                // t = t.syncMethod() is problematic, so do not pass t; pass the iid of
+                // the matching myLockBefore instead
+                addCallWithInt(units, s, "myUnlockAfterCall", IntConstant.v(entryIid), false);
             }
 
         } else if (Parameters.trackLocals ||
@@ -324,7 +369,7 @@ public class VisitorForActiveTesting extends Visitor {
 
 
     public void visitArrayRef(SootMethod sm, Chain units, Stmt s, ArrayRef arrayRef, RefContext context) {
-        if (!Parameters.ignoreArrays) {
+        if (!Parameters.ignoreArrays && !isThreadLocal(arrayRef.getBase()) && !redundantAccesses.contains(s)) {
             if (context == RHSContextImpl.getInstance()) {
                 addCallWithObjectInt(units, s, "myReadBefore", arrayRef.getBase(), arrayRef.getIndex(), true);
             } else {
@@ -335,7 +380,7 @@ public class VisitorForActiveTesting extends Visitor {
     }
 
     public void visitInstanceFieldRef(SootMethod sm, Chain units, Stmt s, InstanceFieldRef instanceFieldRef, RefContext context) {
-        if (!Parameters.ignoreFields) {
+        if (!Parameters.ignoreFields && !isThreadLocal(instanceFieldRef.getBase()) && !redundantAccesses.contains(s)) {
             if ((!sm.getName().equals("<init>") || !instanceFieldRef.getField().getName().equals("this$0"))
             && (!sm.getName().equals("<init>") || !instanceFieldRef.getField().getName().startsWith("val$")))
             {
@@ -426,7 +471,7 @@ public class VisitorForActiveTesting extends Visitor {
     }
 
     public void visitStaticFieldRef(SootMethod sm, Chain units, Stmt s, StaticFieldRef staticFieldRef, RefContext context) {
-        if (!Parameters.ignoreFields) {
+        if (!Parameters.ignoreFields && !isClassInitialization(sm, staticFieldRef) && !redundantAccesses.contains(s)) {
             Value v1 = IntConstant.v(st.get(staticFieldRef.getField().getDeclaringClass().getName()));
             Value v2 = IntConstant.v(st.get(staticFieldRef.getField().getName()));
             if (Modifier.isVolatile(staticFieldRef.getField().getModifiers())) {
@@ -446,5 +491,16 @@ public class VisitorForActiveTesting extends Visitor {
         nextVisitor.visitStaticFieldRef(sm, units, s, staticFieldRef, context);
     }
 
+    private static boolean isThreadLocal(Value base) {
+        return Parameters.ignoreThreadLocal && ThreadEscapeAnalysis.v().isThreadLocal(base);
+    }
+
+    // the class initialization lock orders the accesses of <clinit> to the
+    // static fields of its class before those of any other thread
+    private static boolean isClassInitialization(SootMethod sm, StaticFieldRef staticFieldRef) {
+        return Parameters.ignoreThreadLocal && sm.getName().equals("<clinit>")
+                && staticFieldRef.getField().getDeclaringClass() == sm.getDeclaringClass();
+    }
+
 
 }
@@ -0,0 +1,131 @@
+package javato.activetesting.lockset;
+
+import javato.activetesting.common.IntStack;
+import javato.activetesting.reentrant.LockSetWithCount;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class LocalLockSetTracker {
+    /*
+     * Like LockSetTracker combined with IgnoreRentrantLock, but the lock state
+     * of a thread is kept in an object of its own that only that thread
+     * modifies, so threads can update their locksets concurrently.  The price
+     * is that no thread can see the locks held by another thread, which rules
+     * out the real deadlock check of LockSetTracker.
+     */
+    private Map<Integer, ThreadLocks> threads = new ConcurrentHashMap<Integer, ThreadLocks>();
+
+    private static class ThreadLocks {
+        final LockSetWithCount counts = new LockSetWithCount();
+        final IntStack iidStack = new IntStack();
+        final IntStack lockStack = new IntStack();
+        // lockset after each acquisition in lockStack
+        final ArrayList<LockSet> lockSetStack = new ArrayList<LockSet>();
+    }
+
+    private ThreadLocks getThreadLocks(Integer thread) {
+        ThreadLocks tl = threads.get(thread);
+        if (tl == null) {
+            tl = new ThreadLocks();
+            threads.put(thread, tl);
+        }
+        return tl;
+    }
+
+    /**
+     * updates the lockset of thread unless it already holds lock
+     * returns true iff the thread actually acquires lock (and does not re-acquire it)
+     *
+     * @param iid
+     * @param thread
+     * @param lock
+     * @return
+     */
+    public boolean lockBefore(Integer iid, Integer thread, Integer lock) {
+        ThreadLocks tl = getThreadLocks(thread);
+        if (!tl.counts.add(lock)) {
+            return false;
+        }
+        tl.iidStack.push(iid);
+        tl.lockStack.push(lock);
+        tl.lockSetStack.add(getLockSet(tl).add(lock));
+        return true;
+    }
+
+    /**
+     * returns true iff the thread actually releases lock
+     *
+     * @param thread
+     * @param lock
+     * @return
+     */
+    public boolean unlockAfter(Integer thread, Integer lock) {
+        ThreadLocks tl = getThreadLocks(thread);
+        if (!tl.counts.remove(lock)) {
+            return false;
+        }
+        tl.iidStack.pop();
+        tl.lockStack.pop();
+        tl.lockSetStack.remove(tl.lockSetStack.size() - 1);
+        return true;
+    }
+
+    /**
+     * returns the set of locks currently held by the thread; the returned
+     * lockset is interned and immutable, so it can be kept without copying
+     *
+     * @param thread
+     * @return
+     */
+    public LockSet getLockSet(Integer thread) {
+        return getLockSet(getThreadLocks(thread));
+    }
+
+    private static LockSet getLockSet(ThreadLocks tl) {
+        ArrayList<LockSet> ls = tl.lockSetStack;
+        if (ls.isEmpty()) {
+            return LockSet.emptySet;
+        }
+        return ls.get(ls.size() - 1);
+    }
+
+    public Integer getLockAcquireIID(Integer thread, Integer lock) {
+        ThreadLocks tl = getThreadLocks(thread);
+        int index = tl.lockStack.indexOf(lock);
+        return tl.iidStack.get(index);
+    }
+}
@@ -1,7 +1,12 @@
 package javato.activetesting.lockset;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Copyright (c) 2007-2008,
@@ -35,21 +40,207 @@ import java.util.TreeSet;
  * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
-public class LockSet extends TreeSet {
-    public final static LockSet emptySet = new LockSet();
+public final class LockSet {
+    /*
+     * Locksets are interned: every distinct set of locks has exactly one
+     * immutable instance while it is reachable, so equality is identity and a
+     * LockSet can be shared and used as a map key without copying.  Each set
+     * is a sorted array of its lock ids, which makes intersects a merge of two
+     * short arrays.  The intern table only holds weak references, so the sets
+     * no thread or race tracker refers to any more are dropped, and it is a
+     * ConcurrentHashMap, so acquiring a lock takes no global monitor.
+     */
+    private static final ConcurrentHashMap<Key, Ref> interned = new ConcurrentHashMap<Key, Ref>();
+    private static final ReferenceQueue<LockSet> cleared = new ReferenceQueue<LockSet>();
+    private static final AtomicInteger nLockSets = new AtomicInteger();
+    // the number of sets add(int) remembers it led to
+    private static final int MAX_ADDITIONS = 8;
 
-    public LockSet() {
-        super();
+    public final static LockSet emptySet = intern(new int[0]);
+
+    private final int id;
+    // sorted lock ids
+    private final int[] locks;
+    // the sets add(int) returned lately; replaced, never modified, so it needs no lock
+    private volatile Addition[] additions = new Addition[0];
+
+    private static final class Key {
+        final int[] locks;
+        final int hash;
+
+        Key(int[] locks) {
+            this.locks = locks;
+            this.hash = Arrays.hashCode(locks);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(locks, ((Key) o).locks);
+        }
+    }
+
+    private static final class Ref extends WeakReference<LockSet> {
+        final Key key;
+
+        Ref(LockSet ls, Key key) {
+            super(ls, cleared);
+            this.key = key;
+        }
+    }
+
+    private static final class Addition extends WeakReference<LockSet> {
+        final int lock;
+
+        Addition(int lock, LockSet ls) {
+            super(ls);
+            this.lock = lock;
+        }
+    }
+
+    private LockSet(int id, int[] locks) {
+        this.id = id;
+        this.locks = locks;
+    }
+
+    private static LockSet intern(int[] sortedLocks) {
+        expunge();
+        Key key = new Key(sortedLocks);
+        LockSet ls = null;
+        while (true) {
+            Ref ref = interned.get(key);
+            LockSet old = ref == null ? null : ref.get();
+            if (old != null) {
+                return old;
+            }
+            if (ls == null) {
+                ls = new LockSet(nLockSets.getAndIncrement(), sortedLocks);
+            }
+            Ref ref2 = new Ref(ls, key);
+            if (ref == null ? interned.putIfAbsent(key, ref2) == null : interned.replace(key, ref, ref2)) {
+                return ls;
+            }
+        }
+    }
+
+    // removes the entries of the sets that have been garbage collected
+    private static void expunge() {
+        Reference<? extends LockSet> ref;
+        while ((ref = cleared.poll()) != null) {
+            interned.remove(((Ref) ref).key, ref);
+        }
+    }
+
+    // the number of sets in the intern table, for the tests
+    static int internedCount() {
+        expunge();
+        return interned.size();
+    }
+
+    /**
+     * returns the canonical lockset containing exactly the given locks
+     *
+     * @param locks
+     * @return
+     */
+    public static LockSet of(Collection<Integer> locks) {
+        int[] ls = new int[locks.size()];
+        int n = 0;
+        for (Integer l : locks) {
+            ls[n++] = l;
+        }
+        Arrays.sort(ls);
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (k == 0 || ls[k - 1] != ls[i]) {
+                ls[k++] = ls[i];
+            }
+        }
+        return intern(k == n ? ls : Arrays.copyOf(ls, k));
     }
 
-    public LockSet(Collection ls) {
-        super(ls);
+    /**
+     * returns the canonical lockset containing the locks of this set and lock
+     *
+     * @param lock
+     * @return
+     */
+    public LockSet add(int lock) {
+        Addition[] as = additions;
+        for (Addition a : as) {
+            if (a.lock == lock) {
+                LockSet ls = a.get();
+                if (ls != null) {
+                    return ls;
+                }
+            }
+        }
+        int pos = Arrays.binarySearch(locks, lock);
+        if (pos >= 0) {
+            return this;
+        }
+        pos = -pos - 1;
+        int[] ls2 = new int[locks.length + 1];
+        System.arraycopy(locks, 0, ls2, 0, pos);
+        ls2[pos] = lock;
+        System.arraycopy(locks, pos, ls2, pos + 1, locks.length - pos);
+        LockSet ls = intern(ls2);
+
+        // keep the most recent additions; a lost update only costs a lookup
+        int n = Math.min(as.length, MAX_ADDITIONS - 1);
+        Addition[] as2 = new Addition[n + 1];
+        as2[0] = new Addition(lock, ls);
+        int k = 1;
+        for (int i = 0; i < as.length && k <= n; i++) {
+            if (as[i].lock != lock) {
+                as2[k++] = as[i];
+            }
+        }
+        additions = k == as2.length ? as2 : Arrays.copyOf(as2, k);
+        return ls;
+    }
+
+    public boolean contains(int lock) {
+        return Arrays.binarySearch(locks, lock) >= 0;
     }
 
     public boolean intersects(LockSet ls) {
-        for (Object e : this) {
-            if (ls.contains(e)) return true;
+        if (this == ls) return locks.length != 0;
+        int[] l1 = locks;
+        int[] l2 = ls.locks;
+        int i = 0;
+        int j = 0;
+        while (i < l1.length && j < l2.length) {
+            if (l1[i] == l2[j]) return true;
+            if (l1[i] < l2[j]) {
+                i++;
+            } else {
+                j++;
+            }
         }
         return false;
     }
+
+    public int getId() {
+        return id;
+    }
+
+    // interned, so identity equality suffices; the id keeps hash iteration order reproducible
+    public int hashCode() {
+        return id;
+    }
+
+    public int size() {
+        return locks.length;
+    }
+
+    public boolean isEmpty() {
+        return locks.length == 0;
+    }
+
+    public String toString() {
+        return Arrays.toString(locks);
+    }
 }
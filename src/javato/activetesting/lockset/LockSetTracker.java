@@ -2,12 +2,14 @@ package javato.activetesting.lockset;
 
 
 import javato.activetesting.analysis.Observer;
+import javato.activetesting.common.IntObjectMap;
+import javato.activetesting.common.IntStack;
 import javato.activetesting.igoodlock.Pair;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * Copyright (c) 2007-2008,
@@ -43,9 +45,11 @@ import java.util.TreeMap;
  */
 public class LockSetTracker {
     // thread -> list of iids
-    private Map<Integer, LinkedList<Integer>> threadsToIidStack = new TreeMap<Integer, LinkedList<Integer>>();
-    private Map<Integer, LinkedList<Integer>> threadsToLockStack = new TreeMap<Integer, LinkedList<Integer>>();
-    private Map<Integer, Integer> holdsLockToThread = new TreeMap<Integer, Integer>();
+    private IntObjectMap<IntStack> threadsToIidStack = new IntObjectMap<IntStack>();
+    private IntObjectMap<IntStack> threadsToLockStack = new IntObjectMap<IntStack>();
+    private IntObjectMap<Integer> holdsLockToThread = new IntObjectMap<Integer>();
+    // thread -> lockset after each acquisition in threadsToLockStack; kept incrementally
+    private IntObjectMap<ArrayList<LockSet>> threadsToLockSetStack = new IntObjectMap<ArrayList<LockSet>>();
     boolean isDeadlock = false;
     //private ArrayList<String> iidToLineMap = Observer.getIidToLineMap(Parameters.iidToLineMapFile);
 
@@ -59,21 +63,25 @@ public class LockSetTracker {
      * @return
      */
     public boolean lockBefore(Integer iid, Integer thread, Integer lockId) {
-        LinkedList<Integer> iidStack = threadsToIidStack.get(thread);
-        LinkedList<Integer> lockStack = threadsToLockStack.get(thread);
+        IntStack iidStack = threadsToIidStack.get(thread);
+        IntStack lockStack = threadsToLockStack.get(thread);
+        ArrayList<LockSet> lockSetStack = threadsToLockSetStack.get(thread);
         if (iidStack == null) {
-            iidStack = new LinkedList<Integer>();
+            iidStack = new IntStack();
             threadsToIidStack.put(thread, iidStack);
         }
         if (lockStack == null) {
-            lockStack = new LinkedList<Integer>();
+            lockStack = new IntStack();
             threadsToLockStack.put(thread, lockStack);
+            lockSetStack = new ArrayList<LockSet>();
+            threadsToLockSetStack.put(thread, lockSetStack);
         }
-        iidStack.addLast(iid);
+        iidStack.push(iid);
         if (!lockStack.isEmpty()) {
-            holdsLockToThread.put(lockStack.getLast(), thread);
+            holdsLockToThread.put(lockStack.peek(), thread);
         }
-        lockStack.addLast(lockId);
+        lockStack.push(lockId);
+        lockSetStack.add((lockSetStack.isEmpty() ? LockSet.emptySet : lockSetStack.get(lockSetStack.size() - 1)).add(lockId));
 
         if (!isDeadlock && isDeadlock(thread, lockId)) {
             isDeadlock = true;
@@ -89,15 +97,14 @@ public class LockSetTracker {
 
     private void printDeadlock() {
         System.out.println("Thread and lock sets:" + Thread.currentThread());
-        for (Integer tid : threadsToIidStack.keySet()) {
+        int[] tids = threadsToIidStack.keys();
+        Arrays.sort(tids);
+        for (int tid : tids) {
             System.out.println("Thread:  (" + tid + ")");
-            LinkedList<Integer> iids = threadsToIidStack.get(tid);
-            LinkedList<Integer> locks = threadsToLockStack.get(tid);
-            int i = 0;
-            for (Integer lid : locks) {
-                Integer iid = iids.get(i);
-                System.out.println("    Lock  (" + locks.get(i) + ") at " + Observer.getIidToLine(iid));
-                i++;
+            IntStack iids = threadsToIidStack.get(tid);
+            IntStack locks = threadsToLockStack.get(tid);
+            for (int i = 0; i < locks.size(); i++) {
+                System.out.println("    Lock  (" + locks.get(i) + ") at " + Observer.getIidToLine(iids.get(i)));
             }
         }
     }
@@ -108,12 +115,14 @@ public class LockSetTracker {
      * @param thread
      */
     public void unlockAfter(Integer thread) {
-        LinkedList<Integer> iidStack = threadsToIidStack.get(thread);
+        IntStack iidStack = threadsToIidStack.get(thread);
         assert iidStack != null;
-        iidStack.removeLast();
-        LinkedList<Integer> lockStack = threadsToLockStack.get(thread);
+        iidStack.pop();
+        IntStack lockStack = threadsToLockStack.get(thread);
         assert (lockStack != null);
-        Integer lockId = lockStack.removeLast();
+        int lockId = lockStack.pop();
+        ArrayList<LockSet> lockSetStack = threadsToLockSetStack.get(thread);
+        lockSetStack.remove(lockSetStack.size() - 1);
         if (thread.equals(holdsLockToThread.get(lockId)))
             holdsLockToThread.remove(lockId);
     }
@@ -141,16 +150,15 @@ public class LockSetTracker {
             if (tmpThread.equals(threadId)) {
                 return true;
             }
-            tmpLock = threadsToLockStack.get(tmpThread).getLast();
+            tmpLock = threadsToLockStack.get(tmpThread).peek();
         }
     }
 
     public Pair<Integer,Integer> locationsInvolvedInDeadlock(Integer threadId, Integer lockId) {
-        Integer iid1 = threadsToIidStack.get(threadId).getLast();
-        Integer iid2;
+        Integer iid1 = threadsToIidStack.get(threadId).peek();
         Integer otherThread = holdsLockToThread.get(lockId);
-        LinkedList<Integer> iids = threadsToIidStack.get(otherThread);
-        return new Pair<Integer,Integer>(iid1,iids.getLast());
+        IntStack iids = threadsToIidStack.get(otherThread);
+        return new Pair<Integer,Integer>(iid1,iids.peek());
     }
 
     /**
@@ -161,11 +169,11 @@ public class LockSetTracker {
      * @return
      */
     public List<Integer> getLockSetIids(Integer thread) {
-        LinkedList<Integer> ls = threadsToIidStack.get(thread);
+        IntStack ls = threadsToIidStack.get(thread);
         if (ls == null) {
             return (new LinkedList<Integer>());
         }
-        return (new LinkedList<Integer>(ls));
+        return ls.toList();
     }
 
     /**
@@ -176,31 +184,31 @@ public class LockSetTracker {
      * @return
      */
     public List<Integer> getLockList(Integer thread) {
-        LinkedList<Integer> ls = threadsToLockStack.get(thread);
+        IntStack ls = threadsToLockStack.get(thread);
         if (ls == null) {
             return (new LinkedList<Integer>());
         }
-        return (new LinkedList<Integer>(ls));
+        return ls.toList();
     }
 
     /**
-     * returns a list of locks currently held by the thread
-     * first element in the list being the oldest acquired lock
+     * returns the set of locks currently held by the thread; the returned
+     * lockset is interned and immutable, so it can be kept without copying
      *
      * @param thread
      * @return
      */
     public LockSet getLockSet(Integer thread) {
-        LinkedList<Integer> ls = threadsToLockStack.get(thread);
-        if (ls == null) {
-            return (new LockSet());
+        ArrayList<LockSet> ls = threadsToLockSetStack.get(thread);
+        if (ls == null || ls.isEmpty()) {
+            return LockSet.emptySet;
         }
-        return (new LockSet(ls));
+        return ls.get(ls.size() - 1);
     }
 
 
     public Integer getLockAcquireIID(Integer thread, Integer lock) {
-        LinkedList<Integer> ls = threadsToLockStack.get(thread);
+        IntStack ls = threadsToLockStack.get(thread);
         int index = ls.indexOf(lock);
         return threadsToIidStack.get(thread).get(index);
     }
@@ -0,0 +1,82 @@
+package javato.activetesting.trace;
+
+import javato.activetesting.analysis.EventType;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public final class TraceFormat {
+    /*
+     * A trace file is the header (MAGIC, VERSION) followed by one record per
+     * event and an END byte.  A record is the event type (one byte) and the
+     * iid and x operands (ints), followed by y (int) and memory (long) for the
+     * event types that carry them; see EventType.dispatch for their meaning.
+     * Object operands (actual lock, child thread) are not recorded and are
+     * replayed as null.
+     */
+    public static final int MAGIC = 0x4A54524B;
+    public static final int VERSION = 1;
+    public static final byte END = -1;
+    public static final int HEADER_SIZE = 8;
+    public static final int MAX_RECORD_SIZE = 1 + 4 + 4 + 4 + 8;
+
+    private TraceFormat() {
+    }
+
+    public static boolean isRecorded(int type) {
+        return type != EventType.WRITE_AFTER
+                && type != EventType.REQUIRE_DETERMINISTIC
+                && type != EventType.ASSERT_DETERMINISTIC;
+    }
+
+    public static boolean hasY(int type) {
+        switch (type) {
+            case EventType.LOCK_BEFORE:
+            case EventType.UNLOCK_AFTER:
+            case EventType.NEW_EXPR_AFTER:
+            case EventType.START_BEFORE:
+            case EventType.WAIT_BEFORE:
+            case EventType.WAIT_AFTER:
+            case EventType.NOTIFY_BEFORE:
+            case EventType.NOTIFY_ALL_BEFORE:
+            case EventType.JOIN_AFTER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public static boolean hasMemory(int type) {
+        return type == EventType.READ_BEFORE || type == EventType.VOLATILE_READ_BEFORE
+                || type == EventType.WRITE_BEFORE || type == EventType.VOLATILE_WRITE_BEFORE;
+    }
+}
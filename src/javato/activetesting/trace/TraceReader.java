@@ -0,0 +1,120 @@
+package javato.activetesting.trace;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javato.activetesting.analysis.EventType;
+import javato.activetesting.analysis.PrimitiveAnalysis;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class TraceReader {
+    private static final long DEFAULT_REGION_SIZE = 64L << 20;
+
+    private final String fileName;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long length;
+    private final long regionSize;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    public TraceReader(String fileName) throws IOException {
+        this(fileName, DEFAULT_REGION_SIZE);
+    }
+
+    public TraceReader(String fileName, long regionSize) throws IOException {
+        this.fileName = fileName;
+        this.regionSize = regionSize;
+        file = new RandomAccessFile(fileName, "r");
+        channel = file.getChannel();
+        length = channel.size();
+        if (length < TraceFormat.HEADER_SIZE) {
+            throw new IOException(fileName + " is not a trace file");
+        }
+        map(0);
+        if (region.getInt() != TraceFormat.MAGIC) {
+            throw new IOException(fileName + " is not a trace file");
+        }
+        int version = region.getInt();
+        if (version != TraceFormat.VERSION) {
+            throw new IOException(fileName + " has unsupported trace version " + version);
+        }
+    }
+
+    private void map(long position) throws IOException {
+        region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, length - position));
+        regionStart = position;
+    }
+
+    /**
+     * feeds every recorded event, in recording order, to the analysis
+     *
+     * @param a
+     * @return the number of events replayed
+     * @throws IOException
+     */
+    public long replay(PrimitiveAnalysis a) throws IOException {
+        long n = 0;
+        while (true) {
+            if (region.remaining() < TraceFormat.MAX_RECORD_SIZE && regionStart + region.limit() < length) {
+                map(regionStart + region.position());
+            }
+            if (!region.hasRemaining()) {
+                break;
+            }
+            int type = region.get();
+            if (type == TraceFormat.END) {
+                break;
+            }
+            if (type < 0 || type >= EventType.N_TYPES || !TraceFormat.isRecorded(type)) {
+                throw new IOException(fileName + " is corrupt at offset " + (regionStart + region.position() - 1));
+            }
+            int iid = region.getInt();
+            int x = region.getInt();
+            int y = TraceFormat.hasY(type) ? region.getInt() : 0;
+            long memory = TraceFormat.hasMemory(type) ? region.getLong() : 0;
+            EventType.dispatch(a, type, iid, x, y, memory, null);
+            n++;
+        }
+        return n;
+    }
+
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+        file.close();
+    }
+}
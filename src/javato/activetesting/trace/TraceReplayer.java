@@ -0,0 +1,84 @@
+package javato.activetesting.trace;
+
+import java.io.IOException;
+
+import javato.activetesting.analysis.Analysis;
+import javato.activetesting.analysis.AnalysisAdapter;
+import javato.activetesting.analysis.PrimitiveAnalysis;
+import javato.activetesting.common.Parameters;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class TraceReplayer {
+
+    /**
+     * replays the trace recorded by TraceRecorderAnalysis (args[0], or
+     * javato.activetesting.trace.file) into javato.activetesting.analysis.class
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        String traceFile = args.length > 0 ? args[0] : Parameters.TRACE_FILE;
+        System.out.println("Analysis class " + Parameters.analysisClass);
+        if (Parameters.analysisClass == null) {
+            System.err.println("No Analysis class given: set javato.activetesting.analysis.class");
+            System.exit(1);
+        }
+        Object a = null;
+        try {
+            a = Class.forName(Parameters.analysisClass).newInstance();
+        } catch (Exception e) {
+            System.err.println("Cannot find or instantiate Analysis class: " + Parameters.analysisClass);
+            e.printStackTrace();
+            System.exit(1);
+        }
+        PrimitiveAnalysis analysis = (a instanceof PrimitiveAnalysis)
+                ? (PrimitiveAnalysis) a : new AnalysisAdapter((Analysis) a);
+        try {
+            long start = System.currentTimeMillis();
+            TraceReader reader = new TraceReader(traceFile);
+            long n = reader.replay(analysis);
+            reader.close();
+            System.out.println("Replayed " + n + " events from " + traceFile + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            System.err.println("Cannot replay trace file " + traceFile);
+            e.printStackTrace();
+            System.exit(1);
+        }
+        // AnalysisImpl and PrimitiveAnalysisImpl finish from their shutdown hook
+        if (!(a instanceof Thread)) {
+            analysis.finish();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package javato.activetesting.trace;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class TraceWriter {
+    private static final long DEFAULT_REGION_SIZE = 64L << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long regionSize;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long nEvents = 0;
+    private boolean closed = false;
+
+    public TraceWriter(String fileName) throws IOException {
+        this(fileName, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * @param fileName
+     * @param regionSize bytes mapped at a time; the file is appended to one region after another
+     * @throws IOException
+     */
+    public TraceWriter(String fileName, long regionSize) throws IOException {
+        this.regionSize = regionSize;
+        file = new RandomAccessFile(fileName, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        map(0);
+        region.putInt(TraceFormat.MAGIC);
+        region.putInt(TraceFormat.VERSION);
+    }
+
+    private void map(long position) throws IOException {
+        region = channel.map(FileChannel.MapMode.READ_WRITE, position, regionSize);
+        regionStart = position;
+    }
+
+    /**
+     * appends an event; events written after close are dropped, since threads
+     * the program has not joined may still report events while the analysis
+     * finishes
+     */
+    public void write(int type, int iid, int x, int y, long memory) throws IOException {
+        if (closed) {
+            return;
+        }
+        if (region.remaining() < TraceFormat.MAX_RECORD_SIZE) {
+            map(regionStart + region.position());
+        }
+        region.put((byte) type);
+        region.putInt(iid);
+        region.putInt(x);
+        if (TraceFormat.hasY(type)) {
+            region.putInt(y);
+        }
+        if (TraceFormat.hasMemory(type)) {
+            region.putLong(memory);
+        }
+        nEvents++;
+    }
+
+    public long getNumberOfEvents() {
+        return nEvents;
+    }
+
+    /**
+     * terminates the trace and cuts the file down to the bytes actually written
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!region.hasRemaining()) {
+            map(regionStart + region.position());
+        }
+        region.put(TraceFormat.END);
+        long length = regionStart + region.position();
+        region.force();
+        region = null;
+        try {
+            channel.truncate(length);
+        } catch (IOException e) {
+            // some platforms refuse to truncate a mapped file; readers stop at END anyway
+        }
+        channel.close();
+        file.close();
+    }
+}
@@ -0,0 +1,154 @@
+package javato.activetesting.vc;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public final class ThreadSlots {
+    /*
+     * Open addressing map from thread id to slot, with lock-free lookups.
+     * Entries are never removed, so a lookup that is ordered after the
+     * registration of a thread (e.g. because the vector clock it reads was
+     * handed over through a queue) always finds it; tables are only replaced
+     * wholesale through the volatile field.
+     */
+    private static final class Table {
+        final int[] keys;
+        // slot + 1; 0 marks an empty entry
+        final int[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    private static volatile Table table = new Table(64);
+    private static volatile int[] threads = new int[32];
+    private static volatile int size = 0;
+
+    private ThreadSlots() {
+    }
+
+    private static int hash(int thread) {
+        int h = thread * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * returns the slot of thread, or -1 if the thread has no slot yet
+     *
+     * @param thread
+     * @return
+     */
+    public static int find(int thread) {
+        Table t = table;
+        int i = hash(thread) & t.mask;
+        while (true) {
+            int v = t.values[i];
+            if (v == 0) {
+                return -1;
+            }
+            if (t.keys[i] == thread) {
+                return v - 1;
+            }
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    /**
+     * returns the slot of thread, giving it the next free slot the first time
+     *
+     * @param thread
+     * @return
+     */
+    public static int slot(int thread) {
+        int s = find(thread);
+        if (s >= 0) {
+            return s;
+        }
+        return register(thread);
+    }
+
+    private static synchronized int register(int thread) {
+        int s = find(thread);
+        if (s >= 0) {
+            return s;
+        }
+        s = size;
+        if (s == threads.length) {
+            int[] ts = new int[s * 2];
+            System.arraycopy(threads, 0, ts, 0, s);
+            threads = ts;
+        }
+        threads[s] = thread;
+        Table t = table;
+        if (2 * (s + 1) > t.keys.length) {
+            Table t2 = new Table(t.keys.length * 2);
+            for (int i = 0; i < t.keys.length; i++) {
+                if (t.values[i] != 0) {
+                    put(t2, t.keys[i], t.values[i]);
+                }
+            }
+            put(t2, thread, s + 1);
+            table = t2;
+        } else {
+            put(t, thread, s + 1);
+        }
+        size = s + 1;
+        return s;
+    }
+
+    private static void put(Table t, int key, int value) {
+        int i = hash(key) & t.mask;
+        while (t.values[i] != 0) {
+            i = (i + 1) & t.mask;
+        }
+        t.keys[i] = key;
+        t.values[i] = value;
+    }
+
+    /**
+     * returns the thread that owns slot
+     *
+     * @param slot
+     * @return
+     */
+    public static int thread(int slot) {
+        return threads[slot];
+    }
+
+    public static int size() {
+        return size;
+    }
+}
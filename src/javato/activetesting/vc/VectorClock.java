@@ -1,9 +1,8 @@
 package javato.activetesting.vc;
 
-
-import java.util.Map;
-import java.util.TreeMap;
-
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 /**
  * Copyright (c) 2007-2008,
@@ -39,59 +38,69 @@ import java.util.TreeMap;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class VectorClock implements java.io.Serializable {
-    public Map<Integer, LongCounter> vc;
+    private static final long[] EMPTY = new long[0];
+
+    // indexed by ThreadSlots slot; a thread without an entry has clock 0.
+    // Serialized as (thread, clock) pairs since slots are only valid within one JVM.
+    private transient long[] clocks;
 
     public VectorClock(VectorClock vc) {
-        //PALLAVI : we need a deep copy of the map here; clone all LongCounter objects too
-        //and not just duplicate the mappings
-        //otherwise the vectorClocks added in the database would change as the vectorClocks
-        //for the corresponding threads would change
-
-        this.vc = new TreeMap<Integer, LongCounter>(vc.vc);
-        for (Integer tid : vc.vc.keySet()) {
-            LongCounter ctr = vc.vc.get(tid);
-            this.vc.put(tid, new LongCounter(ctr.val));
-        }
+        clocks = vc.clocks.length == 0 ? EMPTY : vc.clocks.clone();
     }
 
     public VectorClock() {
-        vc = new TreeMap<Integer, LongCounter>();
+        clocks = EMPTY;
     }
 
-    public long getValue(Integer thread) {
-        LongCounter l = vc.get(thread);
-        if (l == null) return 0;
-        return l.val;
+    public long getValue(int thread) {
+        int s = ThreadSlots.find(thread);
+        if (s < 0 || s >= clocks.length) return 0;
+        return clocks[s];
     }
 
-    public void inc(Integer parent) {
-        LongCounter l = vc.get(parent);
-        if (l == null) {
-            l = new LongCounter(0);
-            vc.put(parent, l);
-        }
-        l.inc();
+    public void inc(int thread) {
+        int s = ThreadSlots.slot(thread);
+        ensureCapacity(s + 1);
+        clocks[s]++;
     }
 
-    private void set(Integer parent, long val) {
-        LongCounter l = vc.get(parent);
-        if (l == null) {
-            l = new LongCounter(val);
-            vc.put(parent, l);
-        } else {
-            l.val = val;
+    private void ensureCapacity(int n) {
+        if (clocks.length < n) {
+            long[] c = new long[Math.max(n, ThreadSlots.size())];
+            System.arraycopy(clocks, 0, c, 0, clocks.length);
+            clocks = c;
         }
     }
 
     public void updateMax(VectorClock vc2) {
-        for (Integer t : vc2.vc.keySet()) {
-            long l = vc2.getValue(t);
-            if (l > getValue(t)) {
-                set(t, l);
+        long[] c2 = vc2.clocks;
+        ensureCapacity(c2.length);
+        long[] c = clocks;
+        for (int i = 0; i < c2.length; i++) {
+            c[i] = Math.max(c[i], c2[i]);
+        }
+    }
+
+    /**
+     * overwrites this vector clock with vc2, reusing the array when it is large enough
+     *
+     * @param vc2
+     */
+    public void copyFrom(VectorClock vc2) {
+        long[] c2 = vc2.clocks;
+        if (clocks.length < c2.length) {
+            clocks = c2.clone();
+        } else {
+            System.arraycopy(c2, 0, clocks, 0, c2.length);
+            for (int i = c2.length; i < clocks.length; i++) {
+                clocks[i] = 0;
             }
         }
     }
 
+    private static long get(long[] c, int i) {
+        return i < c.length ? c[i] : 0;
+    }
 
     public static boolean areVecClocksEqual(VectorClock vc1, VectorClock vc2) {
         if ((vc1 == null) && (vc2 == null)) {
@@ -100,34 +109,22 @@ public class VectorClock implements java.io.Serializable {
         if ((vc1 == null) || (vc2 == null)) {
             return false;
         }
-        if (vc1.vc.size() != vc2.vc.size()) {
-            return false;
-        }
-        for (Integer tid : vc1.vc.keySet()) {
-            LongCounter lc1 = vc1.vc.get(tid);
-            LongCounter lc2 = vc2.vc.get(tid);
-            if ((lc1 != null) && (lc2 != null)) {
-                if (lc1.val != lc2.val) {
-                    return false;
-                }
-            }
-            if ((lc1 != null) && (lc2 == null)) {
+        long[] c1 = vc1.clocks;
+        long[] c2 = vc2.clocks;
+        int n = Math.max(c1.length, c2.length);
+        for (int i = 0; i < n; i++) {
+            if (get(c1, i) != get(c2, i)) {
                 return false;
             }
-            if ((lc1 == null) && (lc2 != null)) {
-                return false;
-            }
-
         }
         return true;
     }
 
     public static boolean isVC1LessThanOrEqualToVC2(VectorClock vc1, VectorClock vc2) {
-
-        for (Integer tid : vc1.vc.keySet()) {
-            long vc1val = vc1.getValue(tid);
-            long vc2val = vc2.getValue(tid);
-            if (vc1val > vc2val) {
+        long[] c1 = vc1.clocks;
+        long[] c2 = vc2.clocks;
+        for (int i = 0; i < c1.length; i++) {
+            if (c1[i] > get(c2, i)) {
                 return false;
             }
         }
@@ -135,11 +132,11 @@ public class VectorClock implements java.io.Serializable {
     }
 
     public static boolean isVC1LessThanVC2(VectorClock vc1, VectorClock vc2) {
-
-        for (Integer tid : vc1.vc.keySet()) {
-            long vc1val = vc1.getValue(tid);
-            long vc2val = vc2.getValue(tid);
-            if (vc1val >= vc2val) {
+        long[] c1 = vc1.clocks;
+        long[] c2 = vc2.clocks;
+        // only the threads vc1 has seen are compared
+        for (int i = 0; i < c1.length; i++) {
+            if (c1[i] != 0 && c1[i] >= get(c2, i)) {
                 return false;
             }
         }
@@ -156,46 +153,65 @@ public class VectorClock implements java.io.Serializable {
      */
     public int compareVectorClocks(VectorClock vc1, VectorClock vc2) {
         boolean less = false;
-        boolean notcomp = false;
         boolean greater = false;
+        long[] c1 = vc1.clocks;
+        long[] c2 = vc2.clocks;
 
-        for (Integer tid : vc1.vc.keySet()) {
-            /* if vc2 does not contain corresponding thread id, getValue returns 0 */
-            long vc1val = vc1.getValue(tid);
-            long vc2val = vc2.getValue(tid);
-
-            if (vc1val > vc2val) {
+        for (int i = 0; i < c1.length; i++) {
+            if (c1[i] == 0) {
+                continue;
+            }
+            if (c1[i] > get(c2, i)) {
                 greater = true;
-                if (less)
-                    notcomp = true;
             } else {
                 less = true;
-                if (greater)
-                    notcomp = true;
             }
-            if (notcomp)
-                break;
+            if (less && greater) {
+                return 0;
+            }
         }
-        if (notcomp)
-            return 0;
-        else if (less)
+        if (less)
             return -1;
 
         /* check if vc1 is indeed greater than vc2 */
-        for (Integer tid : vc2.vc.keySet()) {
-            long vc1val = vc1.getValue(tid);
-            long vc2val = vc2.getValue(tid);
-
-            if (vc1val < vc2val)
+        for (int i = 0; i < c2.length; i++) {
+            if (get(c1, i) < c2[i])
                 return 0;
         }
         return 1;
     }
 
     public void print() {
-        for (Integer tid : vc.keySet()) {
-            LongCounter lc = vc.get(tid);
-            System.out.println(tid + " " + lc.val);
+        for (int i = 0; i < clocks.length; i++) {
+            if (clocks[i] != 0) {
+                System.out.println(ThreadSlots.thread(i) + " " + clocks[i]);
+            }
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        int n = 0;
+        for (long c : clocks) {
+            if (c != 0) n++;
+        }
+        out.writeInt(n);
+        for (int i = 0; i < clocks.length; i++) {
+            if (clocks[i] != 0) {
+                out.writeInt(ThreadSlots.thread(i));
+                out.writeLong(clocks[i]);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        clocks = EMPTY;
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            int s = ThreadSlots.slot(in.readInt());
+            ensureCapacity(s + 1);
+            clocks[s] = in.readLong();
         }
     }
 
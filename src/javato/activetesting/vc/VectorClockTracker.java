@@ -2,6 +2,7 @@ package javato.activetesting.vc;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Copyright (c) 2007-2008,
@@ -36,17 +37,20 @@ import java.util.Map;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 public class VectorClockTracker {
-    private Map<Integer, VectorClock> threads = new HashMap<Integer, VectorClock>();
+    // thread safe for events reported by the thread they belong to; the
+    // notify messages are guarded by their map
+    private Map<Integer, VectorClock> threads = new ConcurrentHashMap<Integer, VectorClock>();
     private Map<Integer, VectorClock> notifyMessages = new HashMap<Integer, VectorClock>();
 
     public void startBefore(Integer parent, Integer child) {
         VectorClock vc = getVectorClock(parent);
         VectorClock vc2 = new VectorClock(vc);
         vc.inc(parent);
-        threads.put(child, vc2);
         vc2.inc(child);
+        threads.put(child, vc2);
     }
 
+    // child has terminated, so its vector clock no longer changes
     public void joinAfter(Integer parent, Integer child) {
         VectorClock vc = getVectorClock(parent);
         VectorClock vc2 = getVectorClock(child);
@@ -56,14 +60,24 @@ public class VectorClockTracker {
 
     public void notifyBefore(Integer thread, Integer lock) {
         VectorClock vc = getVectorClock(thread);
-        notifyMessages.put(lock, new VectorClock(vc));
+        synchronized (notifyMessages) {
+            // the message is only ever read by waitAfter, so it can be overwritten in place
+            VectorClock message = notifyMessages.get(lock);
+            if (message == null) {
+                notifyMessages.put(lock, new VectorClock(vc));
+            } else {
+                message.copyFrom(vc);
+            }
+        }
         vc.inc(thread);
     }
 
     public void waitAfter(Integer thread, Integer lock) {
         VectorClock vc = getVectorClock(thread);
-        VectorClock vc2 = notifyMessages.get(lock);
-        vc.updateMax(vc2);
+        synchronized (notifyMessages) {
+            VectorClock vc2 = notifyMessages.get(lock);
+            vc.updateMax(vc2);
+        }
         vc.inc(thread);
     }
 
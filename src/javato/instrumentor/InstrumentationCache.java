@@ -0,0 +1,394 @@
+package javato.instrumentor;
+
+import soot.Modifier;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class InstrumentationCache {
+    private static final int VERSION = 1;
+    // the iids of a class that is instrumented again are not given out again,
+    // so the iid count, and the iid to line map with it, grows with every run
+    // that changes a class.  Once fewer than half of the iids are still in use,
+    // and there are at least this many, the cache is dropped and every class
+    // instrumented afresh, which numbers the iids densely again.
+    private static final int MIN_IIDS_TO_COMPACT = 10000;
+
+    private final File dir;
+    private final File outDir;
+    private State state;
+    // classes of the current run that are taken from the cache, and the keys of the others
+    private final HashMap<String, Entry> hits = new HashMap<String, Entry>();
+    private final HashMap<String, Entry> instrumented = new HashMap<String, Entry>();
+    private final HashSet<String> uncacheable = new HashSet<String>();
+    // hash of everything besides its own bytecode that the instrumentation of a class depends on
+    private String contextHash = null;
+    private final HashMap<String, ZipFile> archives = new HashMap<String, ZipFile>();
+
+    private static class Entry implements Serializable {
+        String key;
+        // begin and end of the iid ranges of the class
+        int[] ranges = new int[0];
+        ArrayList<String> lines = new ArrayList<String>();
+    }
+
+    private static class State implements Serializable {
+        int version = VERSION;
+        int nextIid = 0;
+        HashMap<String, Integer> symbols = new HashMap<String, Integer>();
+        HashMap<String, Entry> entries = new HashMap<String, Entry>();
+    }
+
+    /**
+     * opens the cache in dir and makes Visitor continue the symbol table and the
+     * iid numbering of the run that last wrote it
+     *
+     * @param dir
+     * @param outDir where Soot writes the instrumented classes
+     */
+    public InstrumentationCache(File dir, File outDir) {
+        this.dir = dir;
+        this.outDir = outDir;
+        state = load(new File(dir, "state"));
+        if (state == null || state.version != VERSION || isSparse(state)) {
+            state = new State();
+        }
+        Visitor.st.setTable(state.symbols);
+        Visitor.setCounter(state.nextIid);
+    }
+
+    private static boolean isSparse(State state) {
+        long live = 0;
+        for (Entry e : state.entries.values()) {
+            for (int i = 0; i < e.ranges.length; i += 2) {
+                live += e.ranges[i + 1] - e.ranges[i];
+            }
+        }
+        if (state.nextIid >= MIN_IIDS_TO_COMPACT && live < state.nextIid / 2) {
+            System.out.println("Instrumentation cache: only " + live + " of " + state.nextIid
+                    + " iids still in use; instrumenting every class again");
+            return true;
+        }
+        return false;
+    }
+
+    private static State load(File f) {
+        if (!f.exists()) {
+            return null;
+        }
+        try {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(f)));
+            try {
+                return (State) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            System.err.println("Ignoring unreadable instrumentation cache " + f + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * tells whether c has to be instrumented, or whether its instrumented
+     * bytecode can be taken from the cache
+     *
+     * @param c
+     * @return
+     */
+    public boolean needsInstrumentation(SootClass c) {
+        String name = c.getName();
+        if (hits.containsKey(name)) {
+            return false;
+        }
+        if (instrumented.containsKey(name) || uncacheable.contains(name)) {
+            return true;
+        }
+        byte[] bytes = readClassFile(name);
+        if (bytes == null) {
+            uncacheable.add(name);
+            return true;
+        }
+        String key = hash(bytes) + ":" + getContextHash();
+        Entry e = state.entries.get(name);
+        if (e != null && e.key.equals(key) && cachedFile(name).exists()) {
+            hits.put(name, e);
+            return false;
+        }
+        e = new Entry();
+        e.key = key;
+        instrumented.put(name, e);
+        return true;
+    }
+
+    /**
+     * records that the iids [first, end) were given to the class cName
+     */
+    public void addIids(String cName, int first, int end) {
+        Entry e = instrumented.get(cName);
+        if (e == null || first == end) {
+            return;
+        }
+        int n = e.ranges.length;
+        if (n > 0 && e.ranges[n - 1] == first) {
+            e.ranges[n - 1] = end;
+        } else {
+            e.ranges = Arrays.copyOf(e.ranges, n + 2);
+            e.ranges[n] = first;
+            e.ranges[n + 1] = end;
+        }
+    }
+
+    /**
+     * to be called after each Soot run has written its output: copies the cached
+     * classes into the output, stores the newly instrumented ones, and saves the cache
+     */
+    public void finish() {
+        try {
+            for (Map.Entry<String, Entry> me : hits.entrySet()) {
+                copy(cachedFile(me.getKey()), outputFile(me.getKey()));
+                Entry e = me.getValue();
+                int l = 0;
+                for (int i = 0; i < e.ranges.length; i += 2) {
+                    for (int iid = e.ranges[i]; iid < e.ranges[i + 1]; iid++) {
+                        Visitor.setIidToLine(iid, e.lines.get(l++));
+                    }
+                }
+            }
+            for (Map.Entry<String, Entry> me : instrumented.entrySet()) {
+                File out = outputFile(me.getKey());
+                if (!out.exists()) {
+                    continue;
+                }
+                copy(out, cachedFile(me.getKey()));
+                Entry e = me.getValue();
+                for (int i = 0; i < e.ranges.length; i += 2) {
+                    for (int iid = e.ranges[i]; iid < e.ranges[i + 1]; iid++) {
+                        e.lines.add(Visitor.getIidToLine(iid));
+                    }
+                }
+                state.entries.put(me.getKey(), e);
+            }
+            for (String name : uncacheable) {
+                state.entries.remove(name);
+            }
+            state.nextIid = Visitor.getCounter();
+            state.symbols = Visitor.st.getTable();
+            dir.mkdirs();
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, "state"))));
+            out.writeObject(state);
+            out.close();
+            for (ZipFile z : archives.values()) {
+                z.close();
+            }
+            archives.clear();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.out.println("Instrumentation cache: " + hits.size() + " classes reused, "
+                + instrumented.size() + " instrumented");
+        // the next run, if any, has a fresh Scene
+        hits.clear();
+        instrumented.clear();
+        uncacheable.clear();
+        contextHash = null;
+    }
+
+    private File cachedFile(String className) {
+        return new File(dir, "classes" + File.separator + className.replace('.', File.separatorChar) + ".class");
+    }
+
+    private File outputFile(String className) {
+        return new File(outDir, className.replace('.', File.separatorChar) + ".class");
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        to.getParentFile().mkdirs();
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    out.write(buf, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private byte[] readClassFile(String className) {
+        String path = className.replace('.', '/') + ".class";
+        for (String cp : Scene.v().getSootClassPath().split(File.pathSeparator)) {
+            try {
+                File f = new File(cp);
+                if (f.isDirectory()) {
+                    File cf = new File(f, path);
+                    if (cf.exists()) {
+                        return readAll(new FileInputStream(cf));
+                    }
+                } else if (f.isFile()) {
+                    ZipFile z = archives.get(cp);
+                    if (z == null) {
+                        z = new ZipFile(f);
+                        archives.put(cp, z);
+                    }
+                    ZipEntry ze = z.getEntry(path);
+                    if (ze != null) {
+                        return readAll(z.getInputStream(ze));
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private String getContextHash() {
+        if (contextHash == null) {
+            StringBuilder sb = new StringBuilder();
+            // the instrumentation flags
+            TreeMap<String, String> flags = new TreeMap<String, String>();
+            for (Map.Entry<Object, Object> p : System.getProperties().entrySet()) {
+                String k = p.getKey().toString();
+                if (k.startsWith("javato.ignore.") || k.startsWith("javato.track.")) {
+                    flags.put(k, p.getValue().toString());
+                }
+            }
+            sb.append(flags).append(Visitor.observerClass).append('\n');
+            // the instrumentor itself
+            Visitor visitor = TransformerForInstrumentation.v().getVisitor();
+            for (Class c : new Class[]{Visitor.class, RecursiveVisitor.class, TransformerForInstrumentation.class,
+                    visitor.getClass()}) {
+                appendClassHash(c, sb);
+            }
+            for (Class c : visitor.getHelperClasses()) {
+                appendClassHash(c, sb);
+            }
+            sb.append('\n');
+            // the visitor reads other classes: the modifiers of a callee decide
+            // whether a call can dispatch and is synchronized, and a volatile
+            // field ends a run of redundant accesses
+            TreeMap<String, String> classes = new TreeMap<String, String>();
+            for (Iterator it = Scene.v().getClasses().iterator(); it.hasNext();) {
+                SootClass c = (SootClass) it.next();
+                StringBuilder cs = new StringBuilder();
+                if (c.isPhantom()) {
+                    cs.append(" phantom");
+                }
+                if (c.isFinal()) {
+                    cs.append(" final");
+                }
+                for (Iterator mit = c.getMethods().iterator(); mit.hasNext();) {
+                    SootMethod m = (SootMethod) mit.next();
+                    if (m.isSynchronized() || m.isFinal()) {
+                        cs.append(' ').append(m.getSubSignature()).append(m.isSynchronized() ? "+" : "-")
+                                .append(m.isFinal() ? "f" : "");
+                    }
+                }
+                for (Iterator fit = c.getFields().iterator(); fit.hasNext();) {
+                    SootField f = (SootField) fit.next();
+                    if (Modifier.isVolatile(f.getModifiers())) {
+                        cs.append(' ').append(f.getName()).append('v');
+                    }
+                }
+                if (cs.length() > 0) {
+                    classes.put(c.getName(), cs.toString());
+                }
+            }
+            sb.append(classes);
+            try {
+                contextHash = hash(sb.toString().getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return contextHash;
+    }
+
+    // the class file of c and those of its member classes
+    private static void appendClassHash(Class c, StringBuilder sb) {
+        String name = c.getName();
+        try {
+            sb.append(hash(readAll(c.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class"))));
+        } catch (Exception e) {
+            sb.append(System.currentTimeMillis());
+        }
+        for (Class m : c.getDeclaredClasses()) {
+            appendClassHash(m, sb);
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] d = MessageDigest.getInstance("MD5").digest(bytes);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : d) {
+                sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
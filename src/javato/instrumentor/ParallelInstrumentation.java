@@ -0,0 +1,388 @@
+package javato.instrumentor;
+
+import javato.activetesting.common.Parameters;
+import soot.Body;
+import soot.Scene;
+import soot.SootClass;
+import soot.ValueBox;
+import soot.jimple.IntConstant;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class ParallelInstrumentation {
+    private static final int MAX_WORKERS = 256;
+
+    private static final String PARTITION = "javato.instr.partition";
+    private static final String ALL_CLASSES = "javato.instr.classes";
+    private static final String INDEX = "javato.instr.partition.index";
+    private static final String FRAGMENT = "javato.instr.fragment";
+
+    // Soot options followed by one or two values
+    private static final Set<String> ONE_VALUE = new HashSet<String>(Arrays.asList(
+            "-d", "-output-dir", "-x", "-exclude", "-i", "-include", "-process-dir", "-cp",
+            "-soot-class-path", "-soot-classpath", "-f", "-output-format", "-main-class",
+            "-src-prec", "-dynamic-class", "-dynamic-dir", "-dynamic-package"));
+    private static final Set<String> TWO_VALUES = new HashSet<String>(Arrays.asList("-p", "-phase-option"));
+
+    /**
+     * tells whether this JVM is a worker started by run
+     */
+    public static boolean isWorker() {
+        return System.getProperty(PARTITION) != null;
+    }
+
+    /**
+     * instruments the classes of the -process-dir directories in nWorkers JVMs that
+     * run workerMain, and merges their output into the -d directory. Iids and
+     * symbols are numbered partition by partition, so the numbering only depends
+     * on the classes and nWorkers. Afterwards Visitor holds the merged iid to line
+     * map and symbol table, ready for dumpIidToLine and writeSymTblSize.
+     *
+     * @param workerMain a main class that calls runWorker when isWorker()
+     * @param args       the Soot arguments
+     * @param nWorkers
+     * @return false if the classes to instrument are not just those of the
+     *         -process-dir directories: there is no -process-dir, or args name
+     *         classes or ask for the application mode, whose classes are only
+     *         known once Soot has loaded them.  The caller instruments serially.
+     */
+    public static boolean run(String workerMain, String[] args, int nWorkers) {
+        String outDir = "sootOutput";
+        ArrayList<String> classes = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--app") || args[i].equals("-app")) {
+                return false;
+            } else if (TWO_VALUES.contains(args[i]) && i + 2 < args.length) {
+                i += 2;
+            } else if (ONE_VALUE.contains(args[i]) && i + 1 < args.length) {
+                if (args[i].equals("-d") || args[i].equals("-output-dir")) {
+                    outDir = args[i + 1];
+                } else if (args[i].equals("-process-dir")) {
+                    listClasses(new File(args[i + 1]), "", classes);
+                }
+                i++;
+            } else if (!args[i].startsWith("-")) {
+                // a class to instrument
+                return false;
+            }
+        }
+        if (classes.isEmpty()) {
+            return false;
+        }
+        Collections.sort(classes);
+        nWorkers = Math.min(Math.min(nWorkers, MAX_WORKERS), classes.size());
+
+        try {
+            File tmp = File.createTempFile("javato-instr", "");
+            tmp.delete();
+            tmp.mkdirs();
+            File all = new File(tmp, "classes");
+            writeLines(all, classes);
+            Process[] ps = new Process[nWorkers];
+            Thread[] pumps = new Thread[nWorkers];
+            for (int p = 0; p < nWorkers; p++) {
+                File part = new File(tmp, "partition" + p);
+                writeLines(part, classes.subList(p * classes.size() / nWorkers, (p + 1) * classes.size() / nWorkers));
+                ps[p] = startWorker(workerMain, args, p, part, all, new File(tmp, "fragment" + p), new File(tmp, "out" + p));
+                pumps[p] = pump(ps[p], "[worker " + p + "] ");
+            }
+            boolean failed = false;
+            for (int p = 0; p < nWorkers; p++) {
+                int status = ps[p].waitFor();
+                pumps[p].join();
+                if (status != 0) {
+                    System.err.println("Instrumentation worker " + p + " failed");
+                    failed = true;
+                }
+            }
+            if (failed) {
+                System.exit(1);
+            }
+            for (int p = 0; p < nWorkers; p++) {
+                merge(p, new File(tmp, "fragment" + p), new File(tmp, "out" + p), new File(outDir));
+            }
+            delete(tmp);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        return true;
+    }
+
+    private static Process startWorker(String workerMain, String[] args, int p, File part, File all,
+                                       File fragment, File out) throws IOException {
+        ArrayList<String> cmd = new ArrayList<String>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        cmd.add("-Xmx" + Parameters.instrWorkerMemory);
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        for (Map.Entry<Object, Object> e : System.getProperties().entrySet()) {
+            String k = e.getKey().toString();
+            if (k.startsWith("javato.") && !k.equals("javato.instr.workers")) {
+                cmd.add("-D" + k + "=" + e.getValue());
+            }
+        }
+        cmd.add("-D" + PARTITION + "=" + part.getPath());
+        cmd.add("-D" + ALL_CLASSES + "=" + all.getPath());
+        cmd.add("-D" + INDEX + "=" + p);
+        cmd.add("-D" + FRAGMENT + "=" + fragment.getPath());
+        cmd.add("-Djavato.instr.nocache=true");
+        cmd.add(workerMain);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-d") || args[i].equals("-output-dir")) {
+                cmd.add(args[i]);
+                cmd.add(out.getPath());
+                i++;
+            } else {
+                cmd.add(args[i]);
+            }
+        }
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.redirectErrorStream(true);
+        return pb.start();
+    }
+
+    // copies the output of a worker to ours
+    private static Thread pump(final Process proc, final String prefix) {
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        System.out.println(prefix + line);
+                    }
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    /**
+     * instruments the partition given to this worker and writes its iid to line
+     * map and symbol table to the fragment file for the driver
+     *
+     * @param args    the Soot arguments of the driver, with -d pointing to this worker's output
+     * @param visitor
+     */
+    public static void runWorker(String[] args, Visitor visitor) {
+        int p = Integer.getInteger(INDEX, 0);
+        Visitor.setIidTag(PartitionNumbering.tag(p));
+        Visitor.st.setTag(PartitionNumbering.tag(p) | PartitionNumbering.SYMBOL);
+        try {
+            // the partition's classes are the application classes; the others are
+            // only needed for the class hierarchy.  run did not start workers for
+            // args with --app or class names, so there are none to pass on
+            ArrayList<String> wargs = new ArrayList<String>();
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-process-dir")) {
+                    i++;
+                } else if (TWO_VALUES.contains(args[i]) && i + 2 < args.length) {
+                    wargs.add(args[i++]);
+                    wargs.add(args[i++]);
+                    wargs.add(args[i]);
+                } else if (ONE_VALUE.contains(args[i]) && i + 1 < args.length) {
+                    wargs.add(args[i++]);
+                    wargs.add(args[i]);
+                } else if (args[i].startsWith("-")) {
+                    wargs.add(args[i]);
+                }
+            }
+            wargs.addAll(readLines(new File(System.getProperty(PARTITION))));
+            for (String c : readLines(new File(System.getProperty(ALL_CLASSES)))) {
+                Scene.v().addBasicClass(c, SootClass.HIERARCHY);
+            }
+            new TransformClass().processAllAtOnce(wargs.toArray(new String[wargs.size()]), visitor);
+
+            int n = Visitor.getCounter();
+            if (n > PartitionNumbering.MAX_LOCAL || Visitor.st.getSize() > PartitionNumbering.MAX_LOCAL) {
+                System.err.println("Too many iids or symbols in partition " + p + "; use more workers");
+                System.exit(1);
+            }
+            ArrayList<String> lines = new ArrayList<String>(n);
+            for (int i = 0; i < n; i++) {
+                lines.add(Visitor.getIidToLine(i));
+            }
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(System.getProperty(FRAGMENT))));
+            out.writeObject(lines);
+            out.writeObject(Visitor.st.getTable());
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * in a worker, makes sure body has no constant that would be mistaken for a tagged iid or symbol
+     *
+     * @param body the body before instrumentation
+     */
+    public static void checkConstants(Body body) {
+        for (Iterator it = body.getUseBoxes().iterator(); it.hasNext();) {
+            ValueBox b = (ValueBox) it.next();
+            if (b.getValue() instanceof IntConstant && (((IntConstant) b.getValue()).value & 0xc0000000) == PartitionNumbering.TAG) {
+                System.err.println("Constant " + ((IntConstant) b.getValue()).value + " in " + body.getMethod()
+                        + " clashes with the numbering of parallel instrumentation; set javato.instr.workers=1");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void merge(int p, File fragment, File workerOut, File outDir) throws IOException {
+        ArrayList<String> lines;
+        HashMap<String, Integer> symbols;
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(fragment)));
+        try {
+            lines = (ArrayList<String>) in.readObject();
+            symbols = (HashMap<String, Integer>) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e.toString());
+        } finally {
+            in.close();
+        }
+
+        int iidBase = Visitor.getCounter();
+        Visitor.setCounter(iidBase + lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            Visitor.setIidToLine(iidBase + i, lines.get(i));
+        }
+        // local symbols in the order the worker gave them out
+        String[] names = new String[symbols.size() + 1];
+        for (Map.Entry<String, Integer> e : symbols.entrySet()) {
+            names[e.getValue()] = e.getKey();
+        }
+        int[] symbolMap = new int[names.length];
+        for (int i = 1; i < names.length; i++) {
+            symbolMap[i] = Visitor.st.get(names[i]);
+        }
+
+        ArrayList<String> files = new ArrayList<String>();
+        listFiles(workerOut, "", files);
+        for (String f : files) {
+            File to = new File(outDir, f);
+            to.getParentFile().mkdirs();
+            InputStream fin = new FileInputStream(new File(workerOut, f));
+            byte[] bytes;
+            try {
+                bytes = readAll(fin);
+            } finally {
+                fin.close();
+            }
+            OutputStream fout = new FileOutputStream(to);
+            try {
+                fout.write(PartitionNumbering.renumber(bytes, p, iidBase, symbolMap));
+            } finally {
+                fout.close();
+            }
+        }
+    }
+
+    private static void listClasses(File dir, String pkg, List<String> classes) {
+        File[] fs = dir.listFiles();
+        if (fs == null) {
+            return;
+        }
+        for (File f : fs) {
+            if (f.isDirectory()) {
+                listClasses(f, pkg + f.getName() + ".", classes);
+            } else if (f.getName().endsWith(".class")) {
+                classes.add(pkg + f.getName().substring(0, f.getName().length() - 6));
+            }
+        }
+    }
+
+    private static void listFiles(File dir, String prefix, List<String> files) {
+        File[] fs = dir.listFiles();
+        if (fs == null) {
+            return;
+        }
+        for (File f : fs) {
+            if (f.isDirectory()) {
+                listFiles(f, prefix + f.getName() + File.separator, files);
+            } else if (f.getName().endsWith(".class")) {
+                files.add(prefix + f.getName());
+            }
+        }
+    }
+
+    private static void writeLines(File f, List<String> lines) throws IOException {
+        PrintWriter pw = new PrintWriter(new FileWriter(f));
+        for (String s : lines) {
+            pw.println(s);
+        }
+        pw.close();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<String> readLines(File f) throws IOException {
+        ArrayList<String> ret = new ArrayList<String>();
+        BufferedReader in = new BufferedReader(new FileReader(f));
+        String line;
+        while ((line = in.readLine()) != null) {
+            ret.add(line);
+        }
+        in.close();
+        return ret;
+    }
+
+    private static void delete(File f) {
+        File[] fs = f.listFiles();
+        if (fs != null) {
+            for (File c : fs) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,92 @@
+package javato.instrumentor;
+
+import org.objectweb.asm.ClassAdapter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodAdapter;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+final class PartitionNumbering {
+    // A worker numbers its iids and symbols from scratch and tags them, so that
+    // the driver can find them in the worker's output and renumber them:
+    //   iid    = TAG | partition << 22 | local
+    //   symbol = TAG | partition << 22 | SYMBOL | local
+    static final int TAG = 0x40000000;
+    static final int SYMBOL = 1 << 21;
+    static final int MAX_LOCAL = SYMBOL - 1;
+
+    private PartitionNumbering() {
+    }
+
+    static int tag(int partition) {
+        return TAG | (partition << 22);
+    }
+
+    /**
+     * replaces the tagged iids and symbols of a partition in the ldc
+     * instructions of a class by their final numbers; other constants,
+     * including those tagged for another partition, are left alone
+     *
+     * @param bytes     a class written by the worker of partition p
+     * @param p
+     * @param iidBase   the final number of the partition's iid 0
+     * @param symbolMap local symbol -> final symbol
+     * @return the renumbered class
+     */
+    static byte[] renumber(byte[] bytes, final int p, final int iidBase, final int[] symbolMap) {
+        ClassReader cr = new ClassReader(bytes);
+        ClassWriter cw = new ClassWriter(0);
+        cr.accept(new ClassAdapter(cw) {
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+                if (mv == null) {
+                    return null;
+                }
+                return new MethodAdapter(mv) {
+                    public void visitLdcInsn(Object cst) {
+                        if (cst instanceof Integer) {
+                            int v = (Integer) cst;
+                            if ((v & ~(SYMBOL | MAX_LOCAL)) == tag(p)) {
+                                cst = (v & SYMBOL) != 0 ? symbolMap[v & MAX_LOCAL] : iidBase + (v & MAX_LOCAL);
+                            }
+                        }
+                        super.visitLdcInsn(cst);
+                    }
+                };
+            }
+        }, 0);
+        return cw.toByteArray();
+    }
+}
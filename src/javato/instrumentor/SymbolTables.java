@@ -38,14 +38,36 @@ public class SymbolTables {
     private HashMap<String,Integer> table = new HashMap<String,Integer>();
 
 
+    // added to the indices returned by get; nonzero only in a worker of ParallelInstrumentation
+    private int tag = 0;
+
     public int get(String name) {
         if (!table.containsKey(name)){
             table.put(name,table.size()+1);
         }
-        return table.get(name);
+        return tag + table.get(name);
+    }
+
+    public void setTag(int tag) {
+        this.tag = tag;
     }
     
     public int getSize(){
     	return table.size()+1;
     }
+
+    /**
+     * returns a copy of the name to index table
+     */
+    public HashMap<String,Integer> getTable() {
+        return new HashMap<String,Integer>(table);
+    }
+
+    /**
+     * replaces the table, e.g. with one saved by an earlier run, so that
+     * names keep their indices
+     */
+    public void setTable(HashMap<String,Integer> table) {
+        this.table = new HashMap<String,Integer>(table);
+    }
 }
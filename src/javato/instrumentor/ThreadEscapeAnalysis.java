@@ -0,0 +1,211 @@
+package javato.instrumentor;
+
+import soot.Hierarchy;
+import soot.Local;
+import soot.MethodOrMethodContext;
+import soot.PointsToAnalysis;
+import soot.PointsToSet;
+import soot.RefLikeType;
+import soot.Scene;
+import soot.SceneTransformer;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Value;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.NewArrayExpr;
+import soot.jimple.NewExpr;
+import soot.jimple.NewMultiArrayExpr;
+import soot.jimple.Stmt;
+import soot.jimple.spark.pag.AllocDotField;
+import soot.jimple.spark.pag.AllocNode;
+import soot.jimple.spark.pag.Node;
+import soot.jimple.spark.pag.PAG;
+import soot.jimple.spark.sets.P2SetVisitor;
+import soot.jimple.spark.sets.PointsToSetInternal;
+import soot.util.queue.QueueReader;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+public class ThreadEscapeAnalysis extends SceneTransformer {
+    private static ThreadEscapeAnalysis instance = new ThreadEscapeAnalysis();
+    private PAG pag;
+    // allocation sites some object of which may be reached by a thread other than its creator
+    private HashSet<Node> escaping;
+
+    private ThreadEscapeAnalysis() {
+    }
+
+    public static ThreadEscapeAnalysis v() {
+        return instance;
+    }
+
+    /**
+     * Computes the allocation sites whose objects may become reachable from more
+     * than one thread: everything reachable from a static field, from a started
+     * thread, from the arguments of a Thread constructor, or from what is passed
+     * to code Spark does not see.  Needs the whole-program mode with Spark, i.e.
+     * -w -p cg.spark enabled:true.
+     *
+     * @param phaseName
+     * @param options
+     */
+    protected void internalTransform(String phaseName, Map options) {
+        pag = null;
+        escaping = null;
+        PointsToAnalysis pta = Scene.v().getPointsToAnalysis();
+        if (!(pta instanceof PAG)) {
+            System.err.println("Spark is not enabled; thread-local accesses are instrumented");
+            return;
+        }
+        pag = (PAG) pta;
+        escaping = new HashSet<Node>();
+        LinkedList<Node> worklist = new LinkedList<Node>();
+
+        for (Iterator it = Scene.v().getClasses().iterator(); it.hasNext();) {
+            SootClass c = (SootClass) it.next();
+            for (Iterator fit = c.getFields().iterator(); fit.hasNext();) {
+                SootField f = (SootField) fit.next();
+                if (f.isStatic() && f.getType() instanceof RefLikeType) {
+                    addRoots(pag.reachingObjects(f), worklist);
+                }
+            }
+        }
+
+        SootClass threadClass = Scene.v().getSootClass("java.lang.Thread");
+        Hierarchy h = Scene.v().getActiveHierarchy();
+        QueueReader methods = Scene.v().getReachableMethods().listener();
+        while (methods.hasNext()) {
+            SootMethod m = ((MethodOrMethodContext) methods.next()).method();
+            if (!m.hasActiveBody()) {
+                continue;
+            }
+            for (Iterator uit = m.getActiveBody().getUnits().iterator(); uit.hasNext();) {
+                Stmt s = (Stmt) uit.next();
+                if (!s.containsInvokeExpr()) {
+                    continue;
+                }
+                InvokeExpr ie = s.getInvokeExpr();
+                SootMethod callee = ie.getMethod();
+                SootClass owner = callee.getDeclaringClass();
+                boolean isThread = !owner.isInterface() && !owner.isPhantom()
+                        && h.isClassSubclassOfIncluding(owner, threadClass);
+                if (isThread && callee.getSubSignature().equals("void start()")) {
+                    addRoots(((InstanceInvokeExpr) ie).getBase(), worklist);
+                } else if ((isThread && callee.getName().equals("<init>")) || callee.isNative() || owner.isPhantom()) {
+                    if (ie instanceof InstanceInvokeExpr) {
+                        addRoots(((InstanceInvokeExpr) ie).getBase(), worklist);
+                    }
+                    for (Iterator ait = ie.getArgs().iterator(); ait.hasNext();) {
+                        addRoots((Value) ait.next(), worklist);
+                    }
+                }
+            }
+        }
+
+        // close over the fields and array elements of the escaping objects
+        while (!worklist.isEmpty()) {
+            Node n = worklist.removeFirst();
+            if (!(n instanceof AllocNode)) {
+                continue;
+            }
+            for (Iterator it = ((AllocNode) n).getFields().iterator(); it.hasNext();) {
+                addRoots(((AllocDotField) it.next()).getP2Set(), worklist);
+            }
+        }
+        System.out.println("Thread escape analysis: " + escaping.size() + " escaping abstract objects");
+    }
+
+    private void addRoots(Value v, LinkedList<Node> worklist) {
+        if (v instanceof Local && v.getType() instanceof RefLikeType) {
+            addRoots(pag.reachingObjects((Local) v), worklist);
+        }
+    }
+
+    private void addRoots(PointsToSet pts, final LinkedList<Node> worklist) {
+        if (!(pts instanceof PointsToSetInternal)) {
+            return;
+        }
+        ((PointsToSetInternal) pts).forall(new P2SetVisitor() {
+            public void visit(Node n) {
+                if (escaping.add(n)) {
+                    worklist.addLast(n);
+                }
+            }
+        });
+    }
+
+    /**
+     * returns true if every object the local may point to is created by an
+     * allocation site whose objects never leave their creating thread.  Returns
+     * false if the analysis has not run or knows nothing about the local, e.g.
+     * because its method is not reachable from the main class.
+     *
+     * @param base the base of a field or array access
+     * @return
+     */
+    public boolean isThreadLocal(Value base) {
+        if (escaping == null || !(base instanceof Local)) {
+            return false;
+        }
+        PointsToSet pts = pag.reachingObjects((Local) base);
+        if (pts.isEmpty() || !(pts instanceof PointsToSetInternal)) {
+            return false;
+        }
+        final boolean[] local = new boolean[]{true};
+        ((PointsToSetInternal) pts).forall(new P2SetVisitor() {
+            public void visit(Node n) {
+                if (escaping.contains(n) || !isAllocationSite(n)) {
+                    local[0] = false;
+                }
+            }
+        });
+        return local[0];
+    }
+
+    // string and class constants, and the objects Spark makes up for natives
+    // and reflection, are not created by a new in the analyzed code
+    private static boolean isAllocationSite(Node n) {
+        if (!(n instanceof AllocNode)) {
+            return false;
+        }
+        Object e = ((AllocNode) n).getNewExpr();
+        return e instanceof NewExpr || e instanceof NewArrayExpr || e instanceof NewMultiArrayExpr;
+    }
+}
@@ -1,5 +1,6 @@
 package javato.instrumentor;
 
+import javato.activetesting.common.Parameters;
 import org.objectweb.asm.ClassReader;
 import soot.PackManager;
 import soot.Scene;
@@ -50,6 +51,7 @@ public class TransformClass {
     private String[] argl;
     private String[] excludes;
     private Visitor visitor;
+    private InstrumentationCache cache;
     // private Visitor visitor;
 
     private void processAll(File f) throws IOException {
@@ -144,12 +146,45 @@ public class TransformClass {
     }
 
     public void processAllAtOnce(String[] args, Visitor visitor) {
+        // what escapes depends on the whole program, so a class cannot be reused
+        // from the cache when only another class has changed
+        if (cache == null && !Parameters.noInstrCache && !Parameters.ignoreThreadLocal) {
+            cache = openCache(args);
+        }
         Scene.v().setSootClassPath(System.getProperty("sun.boot.class.path")
                 + File.pathSeparator + System.getProperty("java.class.path"));
         Scene.v().loadClassAndSupport(Visitor.observerClass);
         TransformerForInstrumentation.v().setVisitor(visitor);
+        TransformerForInstrumentation.v().setCache(cache);
         PackManager.v().getPack("jtp").add(new Transform("jtp.instrumenter", TransformerForInstrumentation.v()));
+        if (Parameters.ignoreThreadLocal) {
+            PackManager.v().getPack("wjtp").add(new Transform("wjtp.escape", ThreadEscapeAnalysis.v()));
+            String[] wargs = new String[args.length + 4];
+            wargs[0] = "-w";
+            wargs[1] = "-p";
+            wargs[2] = "cg.spark";
+            wargs[3] = "enabled:true";
+            System.arraycopy(args, 0, wargs, 4, args.length);
+            args = wargs;
+        }
         soot.Main.main(args);
+        if (cache != null) {
+            cache.finish();
+        }
         soot.G.reset();
     }
+
+    // the cache only holds class files, so it is not used for other output formats
+    private static InstrumentationCache openCache(String[] args) {
+        String outDir = "sootOutput";
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("-d") || args[i].equals("-output-dir")) {
+                outDir = args[i + 1];
+            } else if ((args[i].equals("-f") || args[i].equals("-output-format"))
+                    && !args[i + 1].equals("class") && !args[i + 1].equals("c")) {
+                return null;
+            }
+        }
+        return new InstrumentationCache(new File(Parameters.instrCacheDir), new File(outDir));
+    }
 }
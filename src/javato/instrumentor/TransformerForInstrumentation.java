@@ -45,6 +45,7 @@ import java.util.Map;
 public class TransformerForInstrumentation extends BodyTransformer {
     private static TransformerForInstrumentation instance = new TransformerForInstrumentation();
     private Visitor visitor;
+    private InstrumentationCache cache;
 
     private TransformerForInstrumentation() {
     }
@@ -54,6 +55,14 @@ public class TransformerForInstrumentation extends BodyTransformer {
         this.visitor = visitor;
     }
 
+    public Visitor getVisitor() {
+        return visitor;
+    }
+
+    public void setCache(InstrumentationCache cache) {
+        this.cache = cache;
+    }
+
     public static TransformerForInstrumentation v() {
         return instance;
     }
@@ -67,8 +76,17 @@ public class TransformerForInstrumentation extends BodyTransformer {
             return;
         }
 
+        if (cache != null && !cache.needsInstrumentation(thisMethod.getDeclaringClass())) {
+            return;
+        }
+
+        if (ParallelInstrumentation.isWorker()) {
+            ParallelInstrumentation.checkConstants(body);
+        }
+
         visitor.thisClass = thisMethod.getDeclaringClass();
         Chain units = body.getUnits();
+        int firstIid = Visitor.getCounter();
 
         visitor.visitMethodBegin(thisMethod, units);
         Iterator stmtIt = units.snapshotIterator();
@@ -79,6 +97,9 @@ public class TransformerForInstrumentation extends BodyTransformer {
         }
         visitor.visitMethodEnd(thisMethod, units);
         body.validate();
+        if (cache != null) {
+            cache.addIids(cName, firstIid, Visitor.getCounter());
+        }
     }
 
 
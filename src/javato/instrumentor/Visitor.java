@@ -1,6 +1,7 @@
 package javato.instrumentor;
 
 import javato.instrumentor.contexts.*;
+import javato.activetesting.common.IidToLineIndex;
 import javato.activetesting.common.Parameters;
 import soot.*;
 import soot.jimple.*;
@@ -48,13 +49,15 @@ import java.util.LinkedList;
 public class Visitor {
     protected Visitor nextVisitor;
     static private int counter = 0;
+    // added to every iid handed out; nonzero only in a worker of ParallelInstrumentation
+    static private int iidTag = 0;
     static protected SymbolTables st = new SymbolTables();
     static public String observerClass;// = System.getProperty("javato.call", "javato.observer.Observer");
     static public Stmt thisStmt;
     static private ArrayList<String> iidToLineMap = new ArrayList<String>(10000);
     static public SootClass thisClass;
 
-    public int getCounter() {
+    public static int getCounter() {
         return counter;
     }
 
@@ -82,7 +85,39 @@ public class Visitor {
 
     public static int getAndIncCounter() {
         iidToLineMap.add(getFileName(thisClass) + ".html#" + getLineNum(thisStmt));
-        return counter++;
+        return iidTag + counter++;
+    }
+
+    /**
+     * returns the iid the next call to getAndIncCounter will return
+     */
+    public static int getNextIid() {
+        return iidTag + counter;
+    }
+
+    public static void setIidTag(int tag) {
+        iidTag = tag;
+    }
+
+    /**
+     * continues numbering iids at n; the iids skipped are mapped to an unknown line
+     * until setIidToLine is called for them
+     *
+     * @param n must not be less than the current counter
+     */
+    public static void setCounter(int n) {
+        while (iidToLineMap.size() < n) {
+            iidToLineMap.add("unknown.java.html#0");
+        }
+        counter = n;
+    }
+
+    public static void setIidToLine(int iid, String line) {
+        iidToLineMap.set(iid, line);
+    }
+
+    public static String getIidToLine(int iid) {
+        return iidToLineMap.get(iid);
     }
 
     public static void setObserverClass(String s) {
@@ -105,6 +140,8 @@ public class Visitor {
             }
             out2.println("</html></body>");
             out2.close();
+            IidToLineIndex.write(Parameters.iidToLineIndexFile, iidToLineMap);
+            writeInteger(Parameters.iidCountFile, counter);
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -117,6 +154,17 @@ public class Visitor {
         this.nextVisitor = nextVisitor;
     }
 
+    /**
+     * returns the classes other than the visitor itself whose code decides
+     * what it inserts, e.g. the analyses it asks; InstrumentationCache hashes
+     * them with the visitor
+     *
+     * @return
+     */
+    public Class[] getHelperClasses() {
+        return new Class[0];
+    }
+
     public void visitMethodBegin(SootMethod sm, Chain units) {
         nextVisitor.visitMethodBegin(sm, units);
     }
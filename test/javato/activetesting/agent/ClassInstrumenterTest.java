@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.agent;
+
+import javato.activetesting.instrumentor.FuzzingTargets;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+public class ClassInstrumenterTest {
+    static final List<String> events = new ArrayList<String>();
+    static int vwriteIid = -1;
+
+    static synchronized void record(String event) {
+        events.add(event);
+    }
+
+    public static class RecordingObserver {
+        public static void myReadBefore(int iid, Object o, int field) { record("read"); }
+        public static void myReadBefore(int iid, int clss, int field) { record("sread"); }
+        public static void myVReadBefore(int iid, Object o, int field) { record("vread"); }
+        public static void myVReadBefore(int iid, int clss, int field) { record("svread"); }
+        public static void myWriteBefore(int iid, Object o, int field) { record("write"); }
+        public static void myWriteBefore(int iid, int clss, int field) { record("swrite"); }
+        public static void myVWriteBefore(int iid, Object o, int field) { record("vwrite"); vwriteIid = iid; }
+        public static void myVWriteBefore(int iid, int clss, int field) { record("svwrite"); }
+        public static void myLockBefore(int iid, Object lock) { record("lock"); }
+        public static void myUnlockAfter(int iid, Object lock) { record("unlock"); }
+        public static void myLockBeforeCall(int iid, Object lock) { record("lockcall"); }
+        public static void myLockBefore(int iid, Object lock, String sig) { record("lock?" + sig); }
+        public static void myUnlockAfterCall(int iid, int entryIid) { record("unlockcall"); }
+        public static void myLockBefore(int iid, int oid, String className) { record("slock " + className); }
+        public static void myUnlockAfter(int iid, int oid) { record("sunlock"); }
+        public static void myMethodEnterBefore(int iid) { record("enter"); }
+        public static void myMethodExitAfter(int iid) { record("exit"); }
+        public static void myNewExprInANonStaticMethodAfter(int iid, Object o, Object self) { record("new " + o.getClass().getName()); }
+        public static void myNewExprInAStaticMethodAfter(int iid, Object o) { record("snew " + o.getClass().getName()); }
+        public static void myStartBefore(int iid, Object t) { record("start"); }
+        public static void myStartAfter(int iid, Object t) { record("started"); }
+        public static void myJoinAfter(int iid, Object t) { record("join"); }
+        public static void myWaitBefore(int iid, Object lock) { record("wait"); }
+        public static void myWaitAfter(int iid, Object lock) { record("waited"); }
+        public static void myNotifyBefore(int iid, Object lock) { record("notify"); }
+        public static void myNotifyAllBefore(int iid, Object lock) { record("notifyAll"); }
+        public static void myOpenDeterministicBlock(int iid) { record("open"); }
+        public static void myCloseDeterministicBlock(int iid) { record("close"); }
+    }
+
+    public static class Sample {
+        static int count;
+        long total;
+        volatile boolean done;
+        double[] values = new double[2];
+
+        class Inner {
+            int x = 1;
+        }
+
+        synchronized void add(long v) {
+            total += v;
+        }
+
+        private synchronized void clear() {
+            total = 0;
+        }
+
+        static synchronized void inc() {
+            count++;
+        }
+
+        public static long run() throws Exception {
+            final Sample s = new Sample();
+            s.clear();
+            Thread t = new Thread() {
+                public void run() {
+                    s.add(2);
+                }
+            };
+            t.start();
+            t.join();
+            synchronized (s) {
+                s.values[1] = 0.5;
+                s.done = true;
+            }
+            inc();
+            return s.total + (long) (s.values[1] * 2) + s.new Inner().x + count;
+        }
+    }
+
+    private static class InstrumentingLoader extends ClassLoader {
+        private final ClassInstrumenter instrumenter;
+
+        InstrumentingLoader(ClassInstrumenter instrumenter) {
+            super(ClassInstrumenterTest.class.getClassLoader());
+            this.instrumenter = instrumenter;
+        }
+
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(Sample.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            Class c = findLoadedClass(name);
+            if (c == null) {
+                byte[] bytes = instrumenter.instrument(this, name.replace('.', '/'), read(name));
+                c = defineClass(name, bytes, 0, bytes.length);
+            }
+            return c;
+        }
+    }
+
+    static byte[] read(String name) {
+        try {
+            InputStream in = ClassInstrumenterTest.class.getClassLoader().getResourceAsStream(name.replace('.', '/') + ".class");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            in.close();
+            return out.toByteArray();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        events.clear();
+    }
+
+    @Test
+    public void testInstrumentedClassRuns() throws Exception {
+        IidRegistry registry = new IidRegistry(null);
+        ClassInstrumenter instrumenter = new ClassInstrumenter(registry, RecordingObserver.class.getName());
+        Class c = new InstrumentingLoader(instrumenter).loadClass(Sample.class.getName());
+        Method run = c.getMethod("run");
+        assertEquals(2L + 1 + 1 + 1, run.invoke(null));
+
+        assertTrue(events.contains("start"));
+        assertTrue(events.contains("started"));
+        assertTrue(events.contains("join"));
+        // add may be overridden by a class that is not loaded yet, clear cannot
+        assertTrue(events.contains("lock?add(long)"));
+        assertTrue(events.contains("lockcall"));
+        assertTrue(events.contains("slock " + Sample.class.getName()));
+        assertTrue(events.contains("vwrite"));
+        assertTrue(events.contains("sread"));
+        assertTrue(events.contains("snew " + Sample.class.getName()));
+        // the synchronized block: the array store and the volatile write are inside it
+        int lock = events.indexOf("lock");
+        assertTrue(lock >= 0);
+        assertTrue(events.indexOf("unlock") > events.indexOf("vwrite"));
+        assertTrue(events.subList(lock, events.size()).contains("write"));
+        assertTrue(registry.getIidCount() > 0);
+        String line = registry.getLine(0);
+        assertTrue(line, line.startsWith("javato/activetesting/agent/ClassInstrumenterTest.java#"));
+    }
+
+    @Test
+    public void testIidsAreStable() throws Exception {
+        File f = File.createTempFile("javato", ".registry");
+        f.deleteOnExit();
+        IidRegistry registry = new IidRegistry(null);
+        ClassInstrumenter instrumenter = new ClassInstrumenter(registry, RecordingObserver.class.getName());
+        String name = Sample.class.getName().replace('.', '/');
+        byte[] first = instrumenter.instrument(null, name, read(Sample.class.getName()));
+        int n = registry.getIidCount();
+        byte[] inner = instrumenter.instrument(null, name + "$Inner", read(Sample.class.getName() + "$Inner"));
+        assertTrue(registry.getIidCount() > n);
+        n = registry.getIidCount();
+        assertArrayEquals(first, instrumenter.instrument(null, name, read(Sample.class.getName())));
+        assertArrayEquals(inner, instrumenter.instrument(null, name + "$Inner", read(Sample.class.getName() + "$Inner")));
+        assertEquals(n, registry.getIidCount());
+    }
+
+    @Test
+    public void testTargetedInstrumentation() throws Exception {
+        IidRegistry registry = new IidRegistry(null);
+        ClassInstrumenter full = new ClassInstrumenter(registry, RecordingObserver.class.getName(), null);
+        new InstrumentingLoader(full).loadClass(Sample.class.getName()).getMethod("run").invoke(null);
+        assertTrue(vwriteIid >= 0);
+        int n = registry.getIidCount();
+
+        events.clear();
+        HashSet<Integer> iids = new HashSet<Integer>();
+        iids.add(vwriteIid);
+        ClassInstrumenter targeted = new ClassInstrumenter(registry, RecordingObserver.class.getName(),
+                new FuzzingTargets(iids, false));
+        Class c = new InstrumentingLoader(targeted).loadClass(Sample.class.getName());
+        assertEquals(2L + 1 + 1 + 1, c.getMethod("run").invoke(null));
+        assertEquals(Arrays.asList("start", "started", "vwrite"), events);
+        assertEquals(n, registry.getIidCount());
+    }
+
+    @Test
+    public void testTargetedLockCycles() throws Exception {
+        IidRegistry registry = new IidRegistry(null);
+        ClassInstrumenter targeted = new ClassInstrumenter(registry, RecordingObserver.class.getName(),
+                new FuzzingTargets(new HashSet<Integer>(), true));
+        Class c = new InstrumentingLoader(targeted).loadClass(Sample.class.getName());
+        assertEquals(2L + 1 + 1 + 1, c.getMethod("run").invoke(null));
+        assertTrue(events.contains("lock"));
+        assertTrue(events.contains("unlock"));
+        assertTrue(events.contains("lockcall"));
+        assertTrue(events.contains("unlockcall"));
+        assertTrue(events.contains("slock " + Sample.class.getName()));
+        assertTrue(events.contains("sunlock"));
+        assertTrue(events.contains("start"));
+        assertFalse(events.contains("vwrite"));
+        assertFalse(events.contains("join"));
+        assertFalse(events.contains("write"));
+    }
+
+    @Test
+    public void testBootPrefixes() {
+        AgentTransformer t = new AgentTransformer(null, new String[]{"java/util"}, new String[]{"org/apache"});
+        assertTrue(t.isInstrumented("foo/Bar", false));
+        assertFalse(t.isInstrumented("foo/Bar", true));
+        assertFalse(t.isInstrumented("javato/activetesting/Foo", false));
+        assertFalse(t.isInstrumented("java/lang/String", true));
+        assertTrue(t.isInstrumented("java/util/HashMap", true));
+        assertFalse(t.isInstrumented("org/apache/Foo", false));
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class EventPipelineTest {
+
+    private static class Recorder extends PrimitiveAnalysisImpl {
+        final List<long[]> events = new ArrayList<long[]>();
+        final List<Thread> deliveredBy = new ArrayList<Thread>();
+        boolean finished = false;
+
+        public void readBefore(int iid, int thread, long memory, boolean isVolatile) {
+            events.add(new long[]{iid, thread, memory});
+            deliveredBy.add(Thread.currentThread());
+        }
+
+        public void finish() {
+            finished = true;
+        }
+    }
+
+    @Test
+    public void testDeliversAllEventsInPublicationOrder() throws InterruptedException {
+        final Recorder recorder = new Recorder();
+        // a tiny buffer so that producers have to wait for the consumer
+        final EventPipeline pipeline = new EventPipeline(recorder, recorder, 4);
+        final int nThreads = 4;
+        final int nEvents = 2000;
+        Thread[] threads = new Thread[nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < nEvents; i++) {
+                        pipeline.readBefore(i, thread, i, false);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        pipeline.finish();
+
+        assertTrue(recorder.finished);
+        assertEquals(nThreads * nEvents, recorder.events.size());
+        long[] last = new long[nThreads];
+        java.util.Arrays.fill(last, -1);
+        for (long[] e : recorder.events) {
+            int thread = (int) e[1];
+            assertEquals(last[thread] + 1, e[2]);
+            last[thread] = e[2];
+        }
+        for (Thread t : recorder.deliveredBy) {
+            assertNotSame(Thread.currentThread(), t);
+            assertEquals("javato-event-consumer", t.getName());
+        }
+    }
+
+    @Test
+    public void testSingleThreadOrderAcrossEventTypes() {
+        final List<String> trace = new ArrayList<String>();
+        PrimitiveAnalysisImpl recorder = new PrimitiveAnalysisImpl() {
+            public void lockBefore(int iid, int thread, int lock, Object actualLock) {
+                trace.add("lock " + lock + " " + actualLock);
+            }
+
+            public void unlockAfter(int iid, int thread, int lock) {
+                trace.add("unlock " + lock);
+            }
+
+            public void writeBefore(int iid, int thread, long memory, boolean isVolatile) {
+                trace.add("write " + memory + " " + isVolatile);
+            }
+        };
+        EventPipeline pipeline = new EventPipeline(recorder, recorder, 16);
+        pipeline.lockBefore(1, 7, 3, "L");
+        pipeline.writeBefore(2, 7, (5L << 32) + 1, true);
+        pipeline.unlockAfter(3, 7, 3);
+        pipeline.finish();
+        assertEquals("[lock 3 L, write " + ((5L << 32) + 1) + " true, unlock 3]", trace.toString());
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.analysis;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class SyncMethodCacheTest {
+    static class Base {
+        synchronized void foo(int x, String[] y) {
+        }
+
+        void bar() {
+        }
+    }
+
+    static class Sub extends Base {
+        void foo(int x, String[] y) {
+        }
+
+        synchronized void bar() {
+        }
+    }
+
+    static class Other extends Base {
+    }
+
+    @Test
+    public void testResolvesThroughSuperclasses() {
+        SyncMethodCache cache = new SyncMethodCache(4);
+        assertTrue(cache.isSynchronized(1, new Base(), "foo(int,java.lang.String[])"));
+        assertFalse(cache.isSynchronized(2, new Base(), "bar()"));
+        assertTrue(cache.isSynchronized(2, new Sub(), "bar()"));
+        assertFalse(cache.isSynchronized(2, new Other(), "bar()"));
+        assertFalse(cache.isSynchronized(7, new Other(), "oo(int,java.lang.String[])"));
+    }
+
+    @Test
+    public void testCallSiteSeesChangingReceiverClasses() {
+        SyncMethodCache cache = new SyncMethodCache(4);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(cache.isSynchronized(3, new Base(), "foo(int,java.lang.String[])"));
+            assertFalse(cache.isSynchronized(3, new Sub(), "foo(int,java.lang.String[])"));
+            assertTrue(cache.isSynchronized(100, new Other(), "foo(int,java.lang.String[])"));
+            assertFalse(cache.isSynchronized(100, new Sub(), "foo(int,java.lang.String[])"));
+        }
+    }
+}
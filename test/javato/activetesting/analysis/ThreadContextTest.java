@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.analysis;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ThreadContextTest {
+    @Test
+    public void testStackGrowsAndPopsInOrder() {
+        ThreadContext c = new ThreadContext(7);
+        for (int i = 0; i < 100; i++) {
+            c.pushCall(2 * i, i % 3 == 0 ? ThreadContext.NO_LOCK : i);
+        }
+        for (int i = 99; i >= 0; i--) {
+            assertEquals(2 * i, c.topEntryIid());
+            assertEquals(i % 3 == 0 ? ThreadContext.NO_LOCK : i, c.popCall());
+        }
+        assertTrue(c.isEmpty());
+        assertEquals(7, c.threadId);
+    }
+
+    @Test
+    public void testCurrentContextIsPerThread() throws InterruptedException {
+        final ThreadContext[] other = new ThreadContext[1];
+        Thread t = new Thread() {
+            public void run() {
+                other[0] = Observer.currentContext();
+            }
+        };
+        t.start();
+        t.join();
+        assertSame(Observer.currentContext(), Observer.currentContext());
+        assertNotSame(Observer.currentContext(), other[0]);
+        assertEquals(Observer.uniqueId(Thread.currentThread()).intValue(), Observer.currentThreadId());
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.common;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class AdaptiveSamplerTest {
+
+    // indices of the sampled accesses among the first n accesses to iid by the current thread
+    private static String sampled(AdaptiveSampler sampler, int iid, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (!sampler.needToIgnore(iid)) {
+                sb.append(i).append(' ');
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    @Test
+    public void testPeriodDoublesAfterEachBurst() {
+        AdaptiveSampler sampler = new AdaptiveSampler(2, 8);
+        // periods 1, 1, 2, 2, 4, 4, 8, 8, 8, ...
+        assertEquals("0 1 2 4 6 10 14 22 30 38", sampled(sampler, 5, 40));
+    }
+
+    @Test
+    public void testRatesArePerIid() {
+        AdaptiveSampler sampler = new AdaptiveSampler(1, 1000);
+        sampled(sampler, 1, 10000);
+        // a hot iid does not lower the rate of a cold one
+        assertEquals("0 1 3", sampled(sampler, 2000, 4));
+        assertEquals("", sampled(sampler, 1, 10));
+    }
+
+    @Test
+    public void testRatesArePerThread() throws InterruptedException {
+        final AdaptiveSampler sampler = new AdaptiveSampler(1, 1000);
+        sampled(sampler, 7, 10000);
+        final String[] other = new String[1];
+        Thread t = new Thread() {
+            public void run() {
+                other[0] = sampled(sampler, 7, 4);
+            }
+        };
+        t.start();
+        t.join();
+        assertEquals("0 1 3", other[0]);
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.common;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * compares the primitive collections with the boxed ones they replace in the
+ * trackers.  Each benchmark is run for a number of warmup rounds before the
+ * measured rounds, and reports the mean time per operation.
+ * <p/>
+ * java -cp classes:test-classes javato.activetesting.common.CollectionsBenchmark [rounds]
+ */
+public class CollectionsBenchmark {
+    private static final int N_KEYS = 1 << 16;
+    private static final int N_OPS = 1 << 22;
+    private static final int WARMUP_ROUNDS = 5;
+
+    // keeps the JIT from discarding the benchmarked work
+    private static long sink = 0;
+
+    private static abstract class Benchmark {
+        final String name;
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        abstract void run(long[] keys);
+    }
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        // memory locations as the observer makes them: object id << 32 + field
+        Random random = new Random(42);
+        final long[] keys = new long[N_OPS];
+        for (int i = 0; i < N_OPS; i++) {
+            keys[i] = ((long) (1000 + random.nextInt(N_KEYS / 8)) << 32) + random.nextInt(8);
+        }
+
+        Benchmark[] benchmarks = {
+                new Benchmark("TreeMap<Long,Object> get/put") {
+                    void run(long[] keys) {
+                        Map<Long, Object> map = new TreeMap<Long, Object>();
+                        for (long k : keys) {
+                            Object v = map.get(k);
+                            if (v == null) map.put(k, k);
+                            else sink += v.hashCode();
+                        }
+                    }
+                },
+                new Benchmark("HashMap<Long,Object> get/put") {
+                    void run(long[] keys) {
+                        Map<Long, Object> map = new HashMap<Long, Object>();
+                        for (long k : keys) {
+                            Object v = map.get(k);
+                            if (v == null) map.put(k, k);
+                            else sink += v.hashCode();
+                        }
+                    }
+                },
+                new Benchmark("LongObjectMap get/put") {
+                    void run(long[] keys) {
+                        LongObjectMap<Object> map = new LongObjectMap<Object>();
+                        for (long k : keys) {
+                            Object v = map.get(k);
+                            if (v == null) map.put(k, k);
+                            else sink += v.hashCode();
+                        }
+                    }
+                },
+                new Benchmark("TreeMap<Integer,Object> get") {
+                    void run(long[] keys) {
+                        Map<Integer, Object> map = new TreeMap<Integer, Object>();
+                        for (int i = 0; i < 64; i++) map.put(i, i);
+                        for (long k : keys) sink += map.get((int) k & 63).hashCode();
+                    }
+                },
+                new Benchmark("IntObjectMap get") {
+                    void run(long[] keys) {
+                        IntObjectMap<Object> map = new IntObjectMap<Object>();
+                        for (int i = 0; i < 64; i++) map.put(i, i);
+                        for (long k : keys) sink += map.get((int) k & 63).hashCode();
+                    }
+                },
+                new Benchmark("LinkedList<Integer> push/pop") {
+                    void run(long[] keys) {
+                        LinkedList<Integer> stack = new LinkedList<Integer>();
+                        for (long k : keys) {
+                            stack.addLast((int) k);
+                            if ((k & 1) == 0) sink += stack.removeLast();
+                        }
+                    }
+                },
+                new Benchmark("IntStack push/pop") {
+                    void run(long[] keys) {
+                        IntStack stack = new IntStack();
+                        for (long k : keys) {
+                            stack.push((int) k);
+                            if ((k & 1) == 0) sink += stack.pop();
+                        }
+                    }
+                },
+        };
+
+        for (Benchmark b : benchmarks) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                b.run(keys);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                b.run(keys);
+            }
+            double nsPerOp = (System.nanoTime() - start) / ((double) rounds * N_OPS);
+            System.out.println(String.format("%-32s %8.2f ns/op", b.name, nsPerOp));
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+}
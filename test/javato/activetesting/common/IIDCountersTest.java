@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.common;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class IIDCountersTest {
+    @Test
+    public void testVisitCounterInAndOutOfRange() {
+        IIDVisitCounter c = new IIDVisitCounter(4);
+        assertEquals(1, c.incAndGet(3));
+        assertEquals(2, c.incAndGet(3));
+        assertEquals(1, c.incAndGet(4));
+        assertEquals(1, c.incAndGet(-7));
+        assertEquals(2, c.get(3));
+        assertEquals(1, c.get(4));
+        assertEquals(0, c.get(100));
+    }
+
+    @Test
+    public void testVisitCounterFromThreads() throws InterruptedException {
+        final IIDVisitCounter c = new IIDVisitCounter(2);
+        Thread[] ts = new Thread[4];
+        for (int i = 0; i < ts.length; i++) {
+            ts[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        c.incAndGet(1);
+                        c.incAndGet(5);
+                    }
+                }
+            };
+            ts[i].start();
+        }
+        for (Thread t : ts) {
+            t.join();
+        }
+        assertEquals(4000, c.get(1));
+        assertEquals(4000, c.get(5));
+    }
+
+    @Test
+    public void testAccessCounterSameLimitInAndOutOfRange() {
+        IIDAccessCounter c = new IIDAccessCounter(2);
+        int inRange = 0, outOfRange = 0;
+        for (int i = 0; i < Parameters.maxPausesInActiveTesting + 10; i++) {
+            if (!c.needToIgnore(1)) inRange++;
+            if (!c.needToIgnore(9)) outOfRange++;
+        }
+        assertEquals(outOfRange, inRange);
+        assertTrue(c.needToIgnore(1));
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.common;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+
+public class IidToLineIndexTest {
+    @Test
+    public void testWriteAndRead() throws Exception {
+        ArrayList<String> map = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            map.add("benchmarks/F" + (i % 7) + ".java.html#" + i);
+        }
+        map.add("unknown.java.html#0");
+        File f = File.createTempFile("iidToLine", ".idx");
+        f.deleteOnExit();
+        IidToLineIndex.write(f.getPath(), map);
+        IidToLineIndex index = IidToLineIndex.open(f.getPath());
+        assertEquals(1001, index.size());
+        assertEquals("benchmarks/F0.java#0", index.get(0));
+        assertEquals("benchmarks/F3.java#997", index.get(997));
+        assertEquals("unknown.java#0", index.get(1000));
+        assertNull(index.get(1001));
+        assertNull(index.get(-1));
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        assertNull(IidToLineIndex.open("no/such/iidToLine.idx"));
+    }
+}
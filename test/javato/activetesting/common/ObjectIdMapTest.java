@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ObjectIdMapTest {
+
+    @Test
+    public void testIdsAreStableAndStartAtFirstId() {
+        ObjectIdMap map = new ObjectIdMap(17);
+        Object a = new Object();
+        Object b = new Object();
+        int ida = map.getId(a);
+        int idb = map.getId(b);
+        assertEquals(17, ida);
+        assertEquals(18, idb);
+        assertEquals(ida, map.getId(a));
+        assertEquals(idb, map.getId(b));
+        assertEquals(19, map.getNextId());
+    }
+
+    @Test
+    public void testIdentityNotEquality() {
+        ObjectIdMap map = new ObjectIdMap(1);
+        String s1 = new String("x");
+        String s2 = new String("x");
+        assertTrue(map.getId(s1) != map.getId(s2));
+    }
+
+    @Test
+    public void testReverseLookup() {
+        ObjectIdMap map = new ObjectIdMap(1);
+        Object a = new Object();
+        int id = map.getId(a);
+        assertSame(a, map.getObject(id));
+        assertNull(map.getObject(id + 1));
+    }
+
+    @Test
+    public void testConcurrentIdsAreUnique() throws InterruptedException {
+        final ObjectIdMap map = new ObjectIdMap(1, 8);
+        final Object[] shared = new Object[1000];
+        for (int i = 0; i < shared.length; i++) {
+            shared[i] = new Object();
+        }
+        final int[][] seen = new int[4][shared.length];
+        final AtomicInteger failures = new AtomicInteger(0);
+        Thread[] threads = new Thread[seen.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int tid = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < shared.length; i++) {
+                            seen[tid][i] = map.getId(shared[i]);
+                        }
+                    } catch (Throwable e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(0, failures.get());
+        for (int t = 1; t < seen.length; t++) {
+            assertArrayEquals(seen[0], seen[t]);
+        }
+        assertEquals(shared.length + 1, map.getNextId());
+        for (int i = 0; i < shared.length; i++) {
+            assertSame(shared[i], map.getObject(seen[0][i]));
+        }
+    }
+}
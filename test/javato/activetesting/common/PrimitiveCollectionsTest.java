@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.common;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class PrimitiveCollectionsTest {
+
+    @Test
+    public void testLongObjectMapAgreesWithHashMap() {
+        Random random = new Random(17);
+        LongObjectMap<Integer> map = new LongObjectMap<Integer>(2);
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        for (int i = 0; i < 100000; i++) {
+            // few distinct keys, spread over both words, so that removals hit probe chains
+            long key = ((long) random.nextInt(64) << 32) + random.nextInt(64);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, i), map.put(key, i));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), map.get(key));
+                    assertEquals(expected.containsKey(key), map.containsKey(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        long[] keys = map.keys();
+        assertEquals(expected.size(), keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(expected.get(keys[i]), map.values().get(i));
+        }
+    }
+
+    @Test
+    public void testIntObjectMapAgreesWithHashMap() {
+        Random random = new Random(18);
+        IntObjectMap<Integer> map = new IntObjectMap<Integer>();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(1000) - 500;
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = -500; key < 500; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+    }
+
+    @Test
+    public void testIntStack() {
+        IntStack s = new IntStack();
+        for (int i = 0; i < 100; i++) {
+            s.push(i * 3);
+        }
+        assertEquals(100, s.size());
+        assertEquals(297, s.peek());
+        assertEquals(10, s.indexOf(30));
+        assertEquals(-1, s.indexOf(31));
+        for (int i = 99; i >= 50; i--) {
+            assertEquals(i * 3, s.pop());
+        }
+        assertEquals(Arrays.asList(0, 3, 6), s.toList().subList(0, 3));
+        assertEquals(50, s.toArray().length);
+        s.clear();
+        assertTrue(s.isEmpty());
+        try {
+            s.pop();
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.hybridracedetection;
+
+import java.util.LinkedHashSet;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class FastTrackRaceTrackerTest {
+    private HybridRaceTracker races;
+    private FastTrackRaceTracker ft;
+
+    @Before
+    public void setUp() {
+        races = new HybridRaceTracker(new LinkedHashSet<CommutativePair>());
+        ft = new FastTrackRaceTracker(races);
+        ft.startBefore(1, 2);
+        ft.startBefore(1, 3);
+    }
+
+    private CommutativePair pair(int iid1, boolean isRead1, int iid2, boolean isRead2) {
+        return new CommutativePair(iid1, 0L, isRead1, iid2, 0L, isRead2, false, false);
+    }
+
+    @Test
+    public void testUnsynchronizedWrites() {
+        ft.write(10, 2, 100L);
+        ft.write(11, 3, 100L);
+        assertEquals(1, races.getRaces().size());
+        assertTrue(races.getRaces().contains(pair(11, false, 10, false)));
+    }
+
+    @Test
+    public void testLockOrdersAccesses() {
+        ft.lockBefore(2, 7);
+        ft.write(10, 2, 100L);
+        ft.unlockAfter(2, 7);
+        ft.lockBefore(3, 7);
+        ft.read(11, 3, 100L);
+        ft.write(12, 3, 100L);
+        ft.unlockAfter(3, 7);
+        assertTrue(races.getRaces().isEmpty());
+    }
+
+    @Test
+    public void testLockAcquiredBeforeHolderReportsRelease() {
+        // myLockBefore runs before monitorenter and myUnlockAfter after
+        // monitorexit, so thread 3's callbacks can come before 2's release
+        ft.lockBefore(2, 7);
+        ft.write(10, 2, 100L);
+        ft.lockBefore(3, 7);
+        ft.read(11, 3, 100L);
+        ft.write(12, 3, 100L);
+        ft.unlockAfter(2, 7);
+        ft.unlockAfter(3, 7);
+        assertTrue(races.getRaces().isEmpty());
+
+        // without the lock, the access still races
+        ft.write(13, 1, 100L);
+        assertEquals(2, races.getRaces().size());
+        assertTrue(races.getRaces().contains(pair(13, false, 12, false)));
+        assertTrue(races.getRaces().contains(pair(13, false, 11, true)));
+    }
+
+    @Test
+    public void testForkAndJoinOrderAccesses() {
+        ft.write(10, 1, 100L);
+        ft.startBefore(1, 4);
+        ft.write(11, 4, 100L);
+        ft.joinAfter(1, 4);
+        ft.read(12, 1, 100L);
+        assertTrue(races.getRaces().isEmpty());
+    }
+
+    @Test
+    public void testVolatileOrdersAccesses() {
+        ft.write(10, 2, 100L);
+        ft.volatileWrite(2, 200L);
+        ft.volatileRead(3, 200L);
+        ft.write(11, 3, 100L);
+        assertTrue(races.getRaces().isEmpty());
+    }
+
+    @Test
+    public void testVolatileWriteReportedAfterTheReadThatSeesIt() {
+        // both callbacks come before the access, so thread 3 may read the
+        // flag set by 2 even though its callback came first
+        ft.write(10, 2, 100L);
+        ft.volatileRead(3, 200L);
+        ft.volatileWrite(2, 200L);
+        ft.read(11, 3, 100L);
+        assertTrue(races.getRaces().isEmpty());
+
+        ft.write(12, 2, 100L);
+        assertEquals(1, races.getRaces().size());
+        assertTrue(races.getRaces().contains(pair(12, false, 11, true)));
+    }
+
+    @Test
+    public void testConcurrentReadsThenWrite() {
+        ft.read(10, 2, 100L);
+        ft.read(11, 3, 100L);
+        assertTrue(races.getRaces().isEmpty());
+        ft.write(12, 1, 100L);
+        assertEquals(2, races.getRaces().size());
+        assertTrue(races.getRaces().contains(pair(12, false, 10, true)));
+        assertTrue(races.getRaces().contains(pair(12, false, 11, true)));
+    }
+
+    @Test
+    public void testReadAfterUnorderedWrite() {
+        ft.write(10, 2, 100L);
+        ft.read(11, 3, 100L);
+        ft.read(12, 2, 101L);
+        assertEquals(1, races.getRaces().size());
+        assertTrue(races.getRaces().contains(pair(11, true, 10, false)));
+    }
+}
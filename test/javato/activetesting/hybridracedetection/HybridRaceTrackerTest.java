@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.hybridracedetection;
+
+import java.util.LinkedHashSet;
+
+import javato.activetesting.lockset.LockSet;
+import javato.activetesting.vc.VectorClock;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class HybridRaceTrackerTest {
+
+    private static void write(HybridRaceTracker tracker, int iid, int t, long m, VectorClock vc) {
+        tracker.checkRace(iid, t, m, false, vc, LockSet.emptySet, false, false);
+        tracker.addEvent(iid, t, m, false, vc, LockSet.emptySet);
+    }
+
+    @Test
+    public void testClockEvictsLocationsNotAccessedRecently() {
+        ShadowMemoryStats shadowMemory = new ShadowMemoryStats();
+        HybridRaceTracker tracker = new HybridRaceTracker(new LinkedHashSet<CommutativePair>(), shadowMemory, 4);
+        VectorClock vc1 = new VectorClock();
+        vc1.inc(1);
+        VectorClock vc2 = new VectorClock();
+        vc2.inc(2);
+
+        for (int m = 1; m <= 4; m++) {
+            write(tracker, m, 1, m, vc1);
+        }
+        // all four were referenced, so the hand goes round once and evicts the oldest, 1
+        write(tracker, 5, 1, 5, vc1);
+        // 2 is accessed again and survives the next sweep, which evicts 3 instead
+        write(tracker, 2, 1, 2, vc1);
+        write(tracker, 6, 1, 6, vc1);
+        assertEquals(2, shadowMemory.getEvicted());
+        assertEquals(4, shadowMemory.getRetained());
+        assertEquals(4, shadowMemory.getPeak());
+
+        write(tracker, 102, 2, 2, vc2);
+        write(tracker, 103, 2, 3, vc2);
+        write(tracker, 101, 2, 1, vc2);
+        LinkedHashSet<CommutativePair> races = tracker.getRaces();
+        assertEquals(1, races.size());
+        assertTrue(races.contains(new CommutativePair(102, 0L, false, 2, 0L, false, false, false)));
+    }
+
+    @Test
+    public void testCollectedObjectsFreeTheirSlots() {
+        ShadowMemoryStats shadowMemory = new ShadowMemoryStats();
+        HybridRaceTracker tracker = new HybridRaceTracker(new LinkedHashSet<CommutativePair>(), shadowMemory, 4);
+        VectorClock vc1 = new VectorClock();
+        vc1.inc(1);
+
+        for (int f = 0; f < 4; f++) {
+            write(tracker, 1, 1, (7L << 32) + f, vc1);
+        }
+        tracker.objectCollected(7);
+        for (int f = 0; f < 4; f++) {
+            write(tracker, 1, 1, (8L << 32) + f, vc1);
+        }
+        assertEquals(0, shadowMemory.getEvicted());
+        assertEquals(4, shadowMemory.getReclaimed());
+        assertEquals(4, shadowMemory.getRetained());
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.hybridracedetection;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+import javato.activetesting.lockset.LockSet;
+import javato.activetesting.vc.VectorClock;
+import javato.activetesting.vc.VectorClockTracker;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ShardedRaceTrackerTest {
+
+    @Test
+    public void testSameRacesInSameOrderAsSequentialTracker() {
+        Random random = new Random(4711);
+        VectorClockTracker vcTracker = new VectorClockTracker();
+        HybridRaceTracker sequential = new HybridRaceTracker(new LinkedHashSet<CommutativePair>());
+        ShardedRaceTracker sharded = new ShardedRaceTracker(3, new HybridRaceTracker(new LinkedHashSet<CommutativePair>()));
+
+        for (int i = 0; i < 5000; i++) {
+            Integer t = random.nextInt(4);
+            Integer t2 = random.nextInt(4);
+            if (random.nextInt(10) == 0) {
+                // a happens-before edge from t to t2
+                vcTracker.notifyBefore(t, 1);
+                vcTracker.waitAfter(t2, 1);
+                continue;
+            }
+            Integer iid = random.nextInt(20);
+            Long m = (long) random.nextInt(16);
+            boolean isRead = random.nextBoolean();
+            LockSet ls = LockSet.emptySet;
+            if (random.nextBoolean()) {
+                ls = ls.add(random.nextInt(3));
+            }
+            VectorClock vc = new VectorClock(vcTracker.getVectorClock(t));
+
+            sequential.checkRace(iid, t, m, isRead, vc, ls, false, false);
+            sequential.addEvent(iid, t, m, isRead, vc, ls);
+            sharded.checkRaceAndAddEvent(iid, t, m, isRead, vc, ls, false, false);
+        }
+
+        ArrayList<CommutativePair> expected = new ArrayList<CommutativePair>(sequential.getRaces());
+        ArrayList<CommutativePair> actual = new ArrayList<CommutativePair>(sharded.merge().getRaces());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+
+    @Test(timeout = 60000)
+    public void testShardKeepsDrainingAfterAFailedCheck() {
+        VectorClockTracker vcTracker = new VectorClockTracker();
+        // moves the clocks of both threads past 0, which no access of the other thread has seen
+        vcTracker.notifyBefore(1, 1);
+        vcTracker.notifyBefore(2, 2);
+        ShardedRaceTracker sharded = new ShardedRaceTracker(1, new HybridRaceTracker(new LinkedHashSet<CommutativePair>()));
+        sharded.checkRaceAndAddEvent(1, 1, 0L, false, new VectorClock(vcTracker.getVectorClock(1)), LockSet.emptySet, false, false);
+        // no vector clock: the check against the access of thread 1 throws
+        sharded.checkRaceAndAddEvent(2, 2, 0L, false, null, LockSet.emptySet, false, false);
+
+        // more batches than the queue holds
+        for (int i = 0; i < 70000; i++) {
+            Integer t = 1 + i % 2;
+            sharded.checkRaceAndAddEvent(3 + i % 2, t, 1L, false, new VectorClock(vcTracker.getVectorClock(t)),
+                    LockSet.emptySet, false, false);
+        }
+
+        ArrayList<CommutativePair> races = new ArrayList<CommutativePair>(sharded.merge().getRaces());
+        assertEquals(1, sharded.getFailedAccesses());
+        assertEquals(1, races.size());
+        assertEquals(Integer.valueOf(3), Integer.valueOf(Math.min(races.get(0).getFirstIid(), races.get(0).getSecondIid())));
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.hybridracedetection;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+import javato.activetesting.analysis.Observer;
+import javato.activetesting.lockset.LocalLockSetTracker;
+import javato.activetesting.lockset.LockSet;
+import javato.activetesting.vc.VectorClock;
+import javato.activetesting.vc.VectorClockTracker;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class StripedRaceTrackerTest {
+
+    @Test
+    public void testSameRacesInSameOrderAsSequentialTracker() {
+        Random random = new Random(4711);
+        VectorClockTracker vcTracker = new VectorClockTracker();
+        HybridRaceTracker sequential = new HybridRaceTracker(new LinkedHashSet<CommutativePair>());
+        StripedRaceTracker striped = new StripedRaceTracker(4, new HybridRaceTracker(new LinkedHashSet<CommutativePair>()));
+
+        for (int i = 0; i < 5000; i++) {
+            Integer t = random.nextInt(4);
+            Integer t2 = random.nextInt(4);
+            if (random.nextInt(10) == 0) {
+                vcTracker.notifyBefore(t, 1);
+                vcTracker.waitAfter(t2, 1);
+                continue;
+            }
+            Integer iid = random.nextInt(20);
+            Long m = (long) random.nextInt(16);
+            boolean isRead = random.nextBoolean();
+            LockSet ls = LockSet.emptySet;
+            if (random.nextBoolean()) {
+                ls = ls.add(random.nextInt(3));
+            }
+            VectorClock vc = vcTracker.getVectorClock(t);
+
+            sequential.checkRace(iid, t, m, isRead, vc, ls, false, false);
+            sequential.addEvent(iid, t, m, isRead, vc, ls);
+            striped.checkRaceAndAddEvent(iid, t, m, isRead, vc, ls, false, false);
+        }
+
+        ArrayList<CommutativePair> expected = new ArrayList<CommutativePair>(sequential.getRaces());
+        ArrayList<CommutativePair> actual = new ArrayList<CommutativePair>(striped.getRaces());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testConcurrentThreads() throws InterruptedException {
+        final VectorClockTracker vcTracker = new VectorClockTracker();
+        final LocalLockSetTracker lsTracker = new LocalLockSetTracker();
+        final StripedRaceTracker striped = new StripedRaceTracker(8, new HybridRaceTracker(new LinkedHashSet<CommutativePair>()));
+        final int nThreads = 8;
+        final Integer parent = 0;
+
+        // the parent writes every location before starting the children, so none of its writes race
+        for (int j = 0; j < 64; j++) {
+            striped.checkRaceAndAddEvent(1, parent, (long) j, false, vcTracker.getVectorClock(parent), LockSet.emptySet, false, false);
+        }
+        Thread[] threads = new Thread[nThreads];
+        for (int i = 0; i < nThreads; i++) {
+            final Integer t = i + 1;
+            vcTracker.startBefore(parent, t);
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        Long m = (long) (j % 64);
+                        // location 0 is always written under lock 100, the others only by thread t
+                        if (m == 0) {
+                            lsTracker.lockBefore(2, t, 100);
+                            striped.checkRaceAndAddEvent(3, t, m, false, vcTracker.getVectorClock(t), lsTracker.getLockSet(t), false, false);
+                            lsTracker.unlockAfter(t, 100);
+                        } else {
+                            striped.checkRaceAndAddEvent(4, t, 1000L * t + m, false, vcTracker.getVectorClock(t), lsTracker.getLockSet(t), false, false);
+                        }
+                    }
+                    // every thread reads location 63 without a lock
+                    striped.checkRaceAndAddEvent(5, t, 63L, true, vcTracker.getVectorClock(t), lsTracker.getLockSet(t), false, false);
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < nThreads; i++) {
+            threads[i].join();
+            vcTracker.joinAfter(parent, i + 1);
+        }
+        // all children have been joined, so this write does not race either
+        striped.checkRaceAndAddEvent(6, parent, 63L, false, vcTracker.getVectorClock(parent), LockSet.emptySet, false, false);
+
+        assertTrue(striped.getRaces().isEmpty());
+
+        // an unordered write by a fresh thread races with the earlier accesses to 63
+        striped.checkRaceAndAddEvent(7, 99, 63L, false, vcTracker.getVectorClock(99), LockSet.emptySet, false, false);
+        LinkedHashSet<CommutativePair> races = striped.getRaces();
+        assertTrue(races.contains(new CommutativePair(7, 0L, false, 6, 0L, false, false, false)));
+        assertTrue(races.contains(new CommutativePair(7, 0L, false, 5, 0L, true, false, false)));
+        for (CommutativePair cp : races) {
+            assertTrue(cp.contains(7));
+        }
+    }
+
+    @Test
+    public void testReclaimCollectedObjects() {
+        StripedRaceTracker striped = new StripedRaceTracker(4, new HybridRaceTracker(new LinkedHashSet<CommutativePair>()));
+        VectorClock vc = new VectorClock();
+        vc.inc(1);
+        VectorClock vc2 = new VectorClock();
+        vc2.inc(2);
+        for (int f = 0; f < 10; f++) {
+            striped.checkRaceAndAddEvent(1, 1, Observer.primitiveIdInt(5, f), false, vc, LockSet.emptySet, false, false);
+            striped.checkRaceAndAddEvent(2, 1, Observer.primitiveIdInt(6, f), true, vc, LockSet.emptySet, false, false);
+        }
+        // object 5 used as a lock
+        striped.checkRaceAndAddEvent(3, 1, 5L, false, vc, LockSet.emptySet, true, false);
+        ShadowMemoryStats shadowMemory = striped.getShadowMemory();
+        assertEquals(21, shadowMemory.getRetained());
+
+        striped.reclaim(new int[]{5}, 1);
+        assertEquals(10, shadowMemory.getRetained());
+        assertEquals(11, shadowMemory.getReclaimed());
+        assertEquals(21, shadowMemory.getPeak());
+
+        // the history of object 6 is still there
+        striped.checkRaceAndAddEvent(4, 2, Observer.primitiveIdInt(6, 3), false, vc2, LockSet.emptySet, false, false);
+        assertTrue(striped.getRaces().contains(new CommutativePair(4, 0L, false, 2, 0L, true, false, false)));
+        // and a write to a field of the collected object 5 finds no earlier access to race with
+        striped.checkRaceAndAddEvent(5, 2, Observer.primitiveIdInt(5, 3), false, vc2, LockSet.emptySet, false, false);
+        assertEquals(1, striped.getRaces().size());
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.lockset;
+
+import java.util.Arrays;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class LockSetTest {
+
+    @Test
+    public void testInterning() {
+        LockSet ls1 = LockSet.emptySet.add(5).add(3);
+        LockSet ls2 = LockSet.of(Arrays.asList(3, 5, 3));
+        assertSame(ls1, ls2);
+        assertSame(ls1, ls1.add(5));
+        assertSame(LockSet.emptySet, LockSet.of(Arrays.<Integer>asList()));
+        assertEquals("[3, 5]", ls1.toString());
+        assertTrue(ls1.contains(3));
+        assertFalse(ls1.contains(4));
+        assertEquals(2, ls1.size());
+    }
+
+    @Test
+    public void testIntersects() {
+        LockSet a = LockSet.emptySet.add(10).add(11);
+        LockSet b = LockSet.emptySet.add(11).add(12);
+        LockSet c = LockSet.emptySet.add(12);
+        assertTrue(a.intersects(b));
+        assertFalse(a.intersects(c));
+        assertTrue(a.intersects(a));
+        assertFalse(LockSet.emptySet.intersects(LockSet.emptySet));
+        assertFalse(LockSet.emptySet.intersects(a));
+
+        // sets of different sizes
+        LockSet big = LockSet.emptySet;
+        for (int l = 1000; l < 1200; l++) {
+            big = big.add(l);
+        }
+        assertTrue(big.intersects(LockSet.emptySet.add(1199)));
+        assertFalse(big.intersects(a));
+    }
+
+    @Test
+    public void testUnreachableSetsAreDropped() throws InterruptedException {
+        LockSet kept = LockSet.emptySet.add(2000);
+        int before = LockSet.internedCount();
+        for (int l = 2001; l < 3000; l++) {
+            kept.add(l).add(l + 1);
+        }
+        assertTrue(LockSet.internedCount() > before);
+        for (int i = 0; i < 50 && LockSet.internedCount() > before; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertTrue(LockSet.internedCount() <= before);
+        assertSame(kept, LockSet.of(Arrays.asList(2000)));
+        assertEquals("[2000, 2500, 2501]", kept.add(2501).add(2500).toString());
+    }
+
+    @Test
+    public void testTrackerKeepsLockSetIncrementally() {
+        LockSetTracker tracker = new LockSetTracker();
+        assertSame(LockSet.emptySet, tracker.getLockSet(1));
+        tracker.lockBefore(100, 1, 20);
+        tracker.lockBefore(101, 1, 21);
+        assertSame(LockSet.emptySet.add(20).add(21), tracker.getLockSet(1));
+        tracker.lockBefore(102, 1, 20);
+        assertSame(LockSet.emptySet.add(20).add(21), tracker.getLockSet(1));
+        tracker.unlockAfter(1);
+        assertSame(LockSet.emptySet.add(20).add(21), tracker.getLockSet(1));
+        tracker.unlockAfter(1);
+        assertSame(LockSet.emptySet.add(20), tracker.getLockSet(1));
+        tracker.unlockAfter(1);
+        assertSame(LockSet.emptySet, tracker.getLockSet(1));
+    }
+
+    @Test
+    public void testLocalTrackerWithConcurrentThreads() throws InterruptedException {
+        final LocalLockSetTracker tracker = new LocalLockSetTracker();
+        final boolean[] ok = new boolean[8];
+        Thread[] ts = new Thread[ok.length];
+        for (int i = 0; i < ts.length; i++) {
+            final int t = i;
+            ts[i] = new Thread() {
+                public void run() {
+                    boolean b = true;
+                    for (int n = 0; n < 1000; n++) {
+                        b &= tracker.lockBefore(n, t, 50 + t);
+                        b &= !tracker.lockBefore(n, t, 50 + t);
+                        b &= tracker.getLockSet(t) == LockSet.emptySet.add(50 + t);
+                        b &= tracker.getLockAcquireIID(t, 50 + t) == n;
+                        b &= !tracker.unlockAfter(t, 50 + t);
+                        b &= tracker.unlockAfter(t, 50 + t);
+                        b &= tracker.getLockSet(t) == LockSet.emptySet;
+                    }
+                    ok[t] = b;
+                }
+            };
+            ts[i].start();
+        }
+        for (Thread t : ts) {
+            t.join();
+        }
+        for (boolean b : ok) {
+            assertTrue(b);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.trace;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javato.activetesting.analysis.EventType;
+import javato.activetesting.analysis.PrimitiveAnalysisImpl;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class TraceReaderTest {
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("javato", ".trace");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static class Recorder extends PrimitiveAnalysisImpl {
+        final List<String> trace = new ArrayList<String>();
+
+        public void lockBefore(int iid, int thread, int lock, Object actualLock) {
+            trace.add("lockBefore(" + iid + "," + thread + "," + lock + "," + actualLock + ")");
+        }
+
+        public void unlockAfter(int iid, int thread, int lock) {
+            trace.add("unlockAfter(" + iid + "," + thread + "," + lock + ")");
+        }
+
+        public void methodEnterBefore(int iid, int thread) {
+            trace.add("methodEnterBefore(" + iid + "," + thread + ")");
+        }
+
+        public void startBefore(int iid, int parent, int child) {
+            trace.add("startBefore(" + iid + "," + parent + "," + child + ")");
+        }
+
+        public void readBefore(int iid, int thread, long memory, boolean isVolatile) {
+            trace.add("readBefore(" + iid + "," + thread + "," + memory + "," + isVolatile + ")");
+        }
+
+        public void writeBefore(int iid, int thread, long memory, boolean isVolatile) {
+            trace.add("writeBefore(" + iid + "," + thread + "," + memory + "," + isVolatile + ")");
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        TraceWriter writer = new TraceWriter(file.getPath());
+        writer.write(EventType.METHOD_ENTER_BEFORE, 1, 7, 0, 0);
+        writer.write(EventType.START_BEFORE, 2, 7, 8, 0);
+        writer.write(EventType.LOCK_BEFORE, 3, 8, 42, 0);
+        writer.write(EventType.VOLATILE_READ_BEFORE, 4, 8, 0, (42L << 32) + 3);
+        writer.write(EventType.WRITE_BEFORE, 5, 7, 0, -1L);
+        writer.write(EventType.UNLOCK_AFTER, 6, 8, 42, 0);
+        writer.close();
+        assertEquals(6, writer.getNumberOfEvents());
+
+        Recorder recorder = new Recorder();
+        TraceReader reader = new TraceReader(file.getPath());
+        assertEquals(6, reader.replay(recorder));
+        reader.close();
+        assertEquals("[methodEnterBefore(1,7), startBefore(2,7,8), lockBefore(3,8,42,null), "
+                + "readBefore(4,8," + ((42L << 32) + 3) + ",true), writeBefore(5,7,-1,false), unlockAfter(6,8,42)]",
+                recorder.trace.toString());
+    }
+
+    @Test
+    public void testRecordsSpanManyRegions() throws Exception {
+        // regions barely larger than a record force a remap every few events
+        TraceWriter writer = new TraceWriter(file.getPath(), 64);
+        int n = 1000;
+        for (int i = 0; i < n; i++) {
+            writer.write(i % 2 == 0 ? EventType.READ_BEFORE : EventType.METHOD_ENTER_BEFORE, i, i % 5, 0, i * 3L);
+        }
+        writer.close();
+
+        Recorder recorder = new Recorder();
+        TraceReader reader = new TraceReader(file.getPath(), 64);
+        assertEquals(n, reader.replay(recorder));
+        reader.close();
+        assertEquals(n, recorder.trace.size());
+        assertEquals("readBefore(998,3,2994,false)", recorder.trace.get(998));
+        assertEquals("methodEnterBefore(999,4)", recorder.trace.get(999));
+    }
+
+    @Test
+    public void testEventsAfterCloseAreDropped() throws Exception {
+        TraceWriter writer = new TraceWriter(file.getPath());
+        writer.write(EventType.METHOD_ENTER_BEFORE, 1, 7, 0, 0);
+        writer.close();
+        // a thread still running while the analysis finishes
+        writer.write(EventType.METHOD_ENTER_BEFORE, 2, 8, 0, 0);
+        writer.close();
+        assertEquals(1, writer.getNumberOfEvents());
+
+        Recorder recorder = new Recorder();
+        TraceReader reader = new TraceReader(file.getPath());
+        assertEquals(1, reader.replay(recorder));
+        reader.close();
+        assertEquals("[methodEnterBefore(1,7)]", recorder.trace.toString());
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.activetesting.vc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class VectorClockTest {
+
+    @Test
+    public void testIncAndCopy() {
+        VectorClock vc = new VectorClock();
+        assertEquals(0, vc.getValue(1001));
+        vc.inc(1001);
+        vc.inc(1001);
+        vc.inc(1002);
+        VectorClock copy = new VectorClock(vc);
+        vc.inc(1002);
+        assertEquals(2, copy.getValue(1001));
+        assertEquals(1, copy.getValue(1002));
+        assertEquals(2, vc.getValue(1002));
+        assertEquals(0, copy.getValue(1003));
+    }
+
+    @Test
+    public void testUpdateMaxAndCompare() {
+        VectorClock vc1 = new VectorClock();
+        VectorClock vc2 = new VectorClock();
+        vc1.inc(2001);
+        vc2.inc(2002);
+        assertEquals(0, vc1.compareVectorClocks(vc1, vc2));
+        assertFalse(VectorClock.isVC1LessThanOrEqualToVC2(vc1, vc2));
+
+        vc2.updateMax(vc1);
+        vc2.inc(2002);
+        assertEquals(1, vc2.getValue(2001));
+        assertEquals(2, vc2.getValue(2002));
+        assertTrue(VectorClock.isVC1LessThanOrEqualToVC2(vc1, vc2));
+        assertFalse(VectorClock.isVC1LessThanVC2(vc1, vc2));
+        assertEquals(-1, vc1.compareVectorClocks(vc1, vc2));
+        VectorClock vc4 = new VectorClock(vc2);
+        vc4.inc(2001);
+        assertEquals(1, vc1.compareVectorClocks(vc4, vc1));
+
+        VectorClock vc3 = new VectorClock(vc2);
+        assertTrue(VectorClock.areVecClocksEqual(vc2, vc3));
+        vc3.copyFrom(vc1);
+        assertTrue(VectorClock.areVecClocksEqual(vc1, vc3));
+        assertEquals(0, vc3.getValue(2002));
+    }
+
+    @Test
+    public void testSerializationKeepsThreadIds() throws Exception {
+        VectorClock vc = new VectorClock();
+        vc.inc(3001);
+        vc.inc(3002);
+        vc.inc(3002);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(vc);
+        out.close();
+        VectorClock read = (VectorClock) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertTrue(VectorClock.areVecClocksEqual(vc, read));
+        assertEquals(1, read.getValue(3001));
+        assertEquals(2, read.getValue(3002));
+    }
+
+    @Test
+    public void testManyThreads() {
+        VectorClock vc = new VectorClock();
+        for (int t = 0; t < 1000; t++) {
+            for (int i = 0; i <= t % 3; i++) {
+                vc.inc(4000 + t);
+            }
+        }
+        for (int t = 0; t < 1000; t++) {
+            assertEquals(t % 3 + 1, vc.getValue(4000 + t));
+            assertEquals(4000 + t, ThreadSlots.thread(ThreadSlots.find(4000 + t)));
+        }
+    }
+}
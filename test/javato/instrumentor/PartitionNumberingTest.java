@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2007-2008,
+ * Koushik Sen    <ksen@cs.berkeley.edu>
+ * All rights reserved.
+ * <p/>
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ * <p/>
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * <p/>
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * <p/>
+ * 3. The names of the contributors may not be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ * <p/>
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER
+ * OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package javato.instrumentor;
+
+import org.junit.*;
+import org.objectweb.asm.ClassAdapter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodAdapter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PartitionNumberingTest implements Opcodes {
+
+    // a class whose run() loads the given constants
+    private static byte[] classWithConstants(Object... constants) {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_5, ACC_PUBLIC, "Worker", null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "run", "()V", null, null);
+        mv.visitCode();
+        for (Object c : constants) {
+            mv.visitLdcInsn(c);
+            mv.visitInsn(POP);
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(1, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static List<Object> constantsOf(byte[] bytes) {
+        final List<Object> ret = new ArrayList<Object>();
+        new ClassReader(bytes).accept(new ClassAdapter(new ClassWriter(0)) {
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                return new MethodAdapter(super.visitMethod(access, name, desc, signature, exceptions)) {
+                    public void visitLdcInsn(Object cst) {
+                        ret.add(cst);
+                        super.visitLdcInsn(cst);
+                    }
+                };
+            }
+        }, 0);
+        return ret;
+    }
+
+    @Test
+    public void testRenumberIidsAndSymbols() {
+        int tag1 = PartitionNumbering.tag(1);
+        byte[] bytes = classWithConstants(tag1 | 5, tag1 | PartitionNumbering.SYMBOL | 2, tag1,
+                PartitionNumbering.tag(0) | 3, 7, "str", 2.5);
+        int[] symbolMap = new int[]{0, 11, 42};
+        List<Object> cs = constantsOf(PartitionNumbering.renumber(bytes, 1, 100, symbolMap));
+        assertEquals(Arrays.<Object>asList(105, 42, 100, PartitionNumbering.tag(0) | 3, 7, "str", 2.5), cs);
+    }
+
+    @Test
+    public void testLastLocalNumbers() {
+        int tag = PartitionNumbering.tag(255);
+        int max = PartitionNumbering.MAX_LOCAL;
+        int[] symbolMap = new int[max + 1];
+        symbolMap[max] = 9;
+        byte[] bytes = classWithConstants(tag | max, tag | PartitionNumbering.SYMBOL | max);
+        List<Object> cs = constantsOf(PartitionNumbering.renumber(bytes, 255, 0, symbolMap));
+        assertEquals(Arrays.<Object>asList(max, 9), cs);
+    }
+}